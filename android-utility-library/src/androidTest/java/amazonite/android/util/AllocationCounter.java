@@ -0,0 +1,28 @@
+package amazonite.android.util;
+
+import android.os.Debug;
+
+/**
+ * Counts the objects allocated by the calling thread while a Runnable runs, for the instrumented benchmarks.
+ */
+@SuppressWarnings("deprecation")
+final class AllocationCounter {
+
+    private AllocationCounter() {
+    }
+
+    /**
+     * @param runnable code to measure, it runs on the calling thread
+     * @return number of objects the calling thread allocated in 'runnable'
+     */
+    static int count(Runnable runnable) {
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        try {
+            runnable.run();
+        } finally {
+            Debug.stopAllocCounting();
+        }
+        return Debug.getThreadAllocCount();
+    }
+}
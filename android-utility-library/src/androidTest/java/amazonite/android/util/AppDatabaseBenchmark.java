@@ -0,0 +1,287 @@
+package amazonite.android.util;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented benchmarks for AppDatabase, timings are written to logcat with tag "AppDatabaseBenchmark".
+ */
+@RunWith(AndroidJUnit4.class)
+public class AppDatabaseBenchmark {
+    private static final String TAG = AppDatabaseBenchmark.class.getSimpleName();
+    private static final int KEY_COUNT = 40;
+    private static final int BLOB_SIZE = 2 * 1024 * 1024;
+    private static final int OPS_PER_THREAD = 2000;
+    private static final int SNAPSHOT_ENTRY_COUNT = 100000;
+    private static final int READS = 100000;
+    private static final TypedKey.IntKey LAUNCH_COUNT = new TypedKey.IntKey("launch_count", 0);
+    private static final TypedKey.LongKey LAST_SYNC = new TypedKey.LongKey("last_sync", -1L);
+    private static final TypedKey.FloatKey FONT_SCALE = new TypedKey.FloatKey("font_scale", 1f);
+    private static final TypedKey.BooleanKey DARK_MODE = new TypedKey.BooleanKey("dark_mode", false);
+
+    private Context mContext;
+    private AppDatabase mDatabase;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        mDatabase = new AppDatabase(mContext);
+        mDatabase.batch().clear().commit();
+    }
+
+    @After
+    public void tearDown() {
+        mDatabase.batch().clear().commit();
+    }
+
+    @Test
+    public void singlePutsVersusBatch() {
+        long start = System.nanoTime();
+        for (int i = 0; i < KEY_COUNT; i++) {
+            assertTrue(mDatabase.put("single_" + i, "value_" + i));
+        }
+        long singleNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        AppDatabase.Batch batch = mDatabase.batch();
+        for (int i = 0; i < KEY_COUNT; i++) {
+            batch.put("batch_" + i, "value_" + i);
+        }
+        assertTrue(batch.commit());
+        long batchNanos = System.nanoTime() - start;
+
+        for (int i = 0; i < KEY_COUNT; i++) {
+            assertEquals("value_" + i, mDatabase.getString("batch_" + i));
+        }
+        Log.i(TAG, KEY_COUNT + " single puts: " + singleNanos / 1000 + "us, one batch: " + batchNanos / 1000 + "us");
+    }
+
+    @Test
+    public void firstReadWithAndWithoutSeparateStores() throws IOException {
+        char[] chars = new char[BLOB_SIZE];
+        Arrays.fill(chars, 'x');
+        String blob = new String(chars);
+        File singleFile = new File(mContext.getFilesDir(), "benchmark_single.db");
+        File settingsFile = new File(mContext.getFilesDir(), "benchmark_settings.db");
+        File cacheFile = new File(mContext.getFilesDir(), "benchmark_cache.db");
+        deleteFiles(singleFile, settingsFile, cacheFile);
+
+        MappedFileEngine single = new MappedFileEngine(singleFile);
+        new AppDatabase(single).batch().put("cached_feed", blob).put("dark_mode", true).commit();
+        single.close();
+        MappedFileEngine settings = new MappedFileEngine(settingsFile);
+        new AppDatabase(settings).put("dark_mode", true);
+        settings.close();
+        MappedFileEngine cache = new MappedFileEngine(cacheFile);
+        new AppDatabase(cache).put("cached_feed", blob);
+        cache.close();
+
+        long start = System.nanoTime();
+        single = new MappedFileEngine(singleFile);
+        assertTrue(new AppDatabase(single).getBoolean("dark_mode"));
+        long singleNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        settings = new MappedFileEngine(settingsFile);
+        assertTrue(new AppDatabase(settings).getBoolean("dark_mode"));
+        long separateNanos = System.nanoTime() - start;
+
+        Log.i(TAG, "first boolean read, blob in the same file: " + singleNanos / 1000
+                + "us, blob in a separate store: " + separateNanos / 1000 + "us");
+        single.close();
+        settings.close();
+        deleteFiles(singleFile, settingsFile, cacheFile);
+    }
+
+    @Test
+    public void plainVersusEncryptedStore() {
+        byte[] secret = "benchmark-secret-0123456789abcdef".getBytes();
+        AppDatabase encrypted = AppDatabase.openEncrypted(mContext, "benchmark_encrypted", secret);
+        encrypted.batch().clear().commit();
+        String token = "eyJhbGciOiJIUzI1NiJ9.benchmark-token-payload.signature";
+
+        long start = System.nanoTime();
+        for (int i = 0; i < KEY_COUNT; i++) {
+            mDatabase.put("token", token + i);
+        }
+        long plainWriteNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < KEY_COUNT; i++) {
+            encrypted.put("token", token + i);
+        }
+        long encryptedWriteNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < KEY_COUNT; i++) {
+            assertNotNull(mDatabase.getString("token"));
+        }
+        long plainReadNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < KEY_COUNT; i++) {
+            assertNotNull(encrypted.getString("token"));
+        }
+        long encryptedReadNanos = System.nanoTime() - start;
+
+        Log.i(TAG, "per write plain: " + plainWriteNanos / KEY_COUNT / 1000 + "us, encrypted: " + encryptedWriteNanos / KEY_COUNT / 1000
+                + "us | per read plain: " + plainReadNanos / KEY_COUNT / 1000 + "us, encrypted: " + encryptedReadNanos / KEY_COUNT / 1000 + "us");
+        encrypted.batch().clear().commit();
+    }
+
+    @Test
+    public void concurrentThroughput() throws InterruptedException {
+        AppDatabase concurrent = AppDatabase.openConcurrent(mContext, "benchmark_concurrent");
+        concurrent.batch().clear().commit();
+
+        StringBuilder result = new StringBuilder("ops/sec (1 put + 3 gets per op)");
+        for (int threads : new int[] {1, 4, 8}) {
+            long plain = measureThroughput(mDatabase, threads);
+            long grouped = measureThroughput(concurrent, threads);
+            result.append(" | ").append(threads).append(" threads plain: ").append(plain)
+                    .append(", group commit: ").append(grouped);
+        }
+        assertTrue(((GroupCommitEngine) concurrent.getEngine()).flush());
+        Log.i(TAG, result.toString());
+        concurrent.batch().clear().commit();
+    }
+
+    @Test
+    public void snapshotExportAndImport() throws IOException {
+        File sourceFile = new File(mContext.getFilesDir(), "benchmark_source.db");
+        File targetFile = new File(mContext.getFilesDir(), "benchmark_target.db");
+        File snapshotFile = new File(mContext.getFilesDir(), "benchmark.snapshot");
+        deleteFiles(sourceFile, targetFile, snapshotFile);
+
+        MappedFileEngine source = new MappedFileEngine(sourceFile);
+        AppDatabase.Batch batch = new AppDatabase(source).batch();
+        for (int i = 0; i < SNAPSHOT_ENTRY_COUNT; i++) {
+            batch.put("key" + i, "value " + i);
+        }
+        assertTrue(batch.commit());
+
+        long start = System.nanoTime();
+        assertEquals(SNAPSHOT_ENTRY_COUNT, new AppDatabase(source).exportSnapshot(snapshotFile));
+        long exported = System.nanoTime();
+        MappedFileEngine target = new MappedFileEngine(targetFile);
+        assertEquals(SNAPSHOT_ENTRY_COUNT, new AppDatabase(target).importSnapshot(snapshotFile, true));
+        long imported = System.nanoTime();
+
+        Log.i(TAG, SNAPSHOT_ENTRY_COUNT + " entries: " + snapshotFile.length() + " bytes, export "
+                + (exported - start) / 1000000 + "ms, import " + (imported - exported) / 1000000 + "ms");
+        source.close();
+        target.close();
+        deleteFiles(sourceFile, targetFile, snapshotFile);
+    }
+
+    @Test
+    public void typedKeyPrimitiveReadsDoNotAllocate() throws IOException {
+        File file = new File(mContext.getFilesDir(), "benchmark_typed.db");
+        deleteFiles(file);
+        MappedFileEngine engine = new MappedFileEngine(file);
+        final AppDatabase database = new AppDatabase(engine);
+        assertTrue(database.batch().put(LAUNCH_COUNT, 100000).put(LAST_SYNC, 1L << 40).put(FONT_SCALE, 2.5f)
+                .put(DARK_MODE, true).commit());
+        // the first reads load the expiry index
+        database.get(LAUNCH_COUNT);
+
+        final long[] sum = new long[1];
+        int allocations = AllocationCounter.count(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < READS; i++) {
+                    sum[0] += database.get(LAUNCH_COUNT) + database.get(LAST_SYNC) + (long) database.get(FONT_SCALE)
+                            + (database.get(DARK_MODE) ? 1 : 0);
+                }
+            }
+        });
+
+        Log.i(TAG, 4 * READS + " primitive TypedKey reads: " + allocations + " allocations");
+        assertTrue(sum[0] != 0);
+        assertEquals(0, allocations);
+        engine.close();
+        deleteFiles(file);
+    }
+
+    @Test
+    public void typedKeyVersusStringKeyReads() {
+        assertTrue(mDatabase.batch().put(LAUNCH_COUNT, 100000).put(LAST_SYNC, 1L << 40).put(FONT_SCALE, 2.5f)
+                .put(DARK_MODE, true).commit());
+        long typedSum = 0;
+        long stringSum = 0;
+        // warm up both paths before measuring
+        for (int i = 0; i < READS / 10; i++) {
+            typedSum += readTyped();
+            stringSum += readByName();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < READS; i++) {
+            typedSum += readTyped();
+        }
+        long typedNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < READS; i++) {
+            stringSum += readByName();
+        }
+        long stringNanos = System.nanoTime() - start;
+
+        Log.i(TAG, 4 * READS + " primitive reads: TypedKey " + typedNanos / (4 * READS) + " ns/read, String key "
+                + stringNanos / (4 * READS) + " ns/read");
+        assertEquals(typedSum, stringSum);
+    }
+
+    private long readTyped() {
+        return mDatabase.get(LAUNCH_COUNT) + mDatabase.get(LAST_SYNC) + (long) mDatabase.get(FONT_SCALE)
+                + (mDatabase.get(DARK_MODE) ? 1 : 0);
+    }
+
+    private long readByName() {
+        return mDatabase.getInt(LAUNCH_COUNT.getName()) + mDatabase.getLong(LAST_SYNC.getName())
+                + (long) (float) mDatabase.getFloat(FONT_SCALE.getName()) + (mDatabase.getBoolean(DARK_MODE.getName()) ? 1 : 0);
+    }
+
+    private static long measureThroughput(final AppDatabase database, int threadCount) throws InterruptedException {
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < threadCount; t++) {
+            final String prefix = "worker" + t + "_";
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < OPS_PER_THREAD; i++) {
+                        database.batch().put(prefix + (i % KEY_COUNT), i).apply();
+                        for (int r = 0; r < 3; r++) {
+                            database.getInt(prefix + ((i + r) % KEY_COUNT));
+                        }
+                    }
+                }
+            }));
+        }
+        long start = System.nanoTime();
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads) thread.join();
+        long nanos = System.nanoTime() - start;
+        return threadCount * OPS_PER_THREAD * 1000000000L / nanos;
+    }
+
+    private static void deleteFiles(File... files) {
+        for (File file : files) {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package amazonite.android.util;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented benchmarks for ImagePipeline, timings are written to logcat with tag "ImagePipelineBenchmark".
+ * Fetch concurrency uses a fetcher with a fixed latency, disk cache hits are compared with HTTP downloads
+ * of a real JPEG from a stub server on the loopback interface, so the numbers do not depend on the network.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ImagePipelineBenchmark {
+    private static final String TAG = ImagePipelineBenchmark.class.getSimpleName();
+    private static final int IMAGE_COUNT = 40;
+    private static final int IMAGE_BYTES = 50 * 1024;
+    private static final int LATENCY_MILLIS = 25;
+    private static final int JPEG_SIZE = 1000;
+    private static final int THUMBNAIL_SIZE = 200;
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+    private static final ImagePipeline.Decoder<Integer> LENGTH = new ImagePipeline.Decoder<Integer>() {
+        @Override
+        public Integer decode(byte[] data, int width, int height) {
+            return data.length;
+        }
+    };
+    private static final ImagePipeline.Fetcher SLOW_NETWORK = new ImagePipeline.Fetcher() {
+        @Override
+        public byte[] fetch(String url) throws IOException {
+            try {
+                Thread.sleep(LATENCY_MILLIS);
+            } catch (InterruptedException ex) {
+                throw new IOException(ex);
+            }
+            return new byte[IMAGE_BYTES];
+        }
+    };
+
+    @Test
+    public void serialVersusConcurrentFetches() throws InterruptedException {
+        long serial = loadAll(new ImagePipeline<Integer>(SLOW_NETWORK, LENGTH, DIRECT, 1, 2), "serial");
+        long concurrent = loadAll(new ImagePipeline<Integer>(SLOW_NETWORK, LENGTH, DIRECT, 4, 2), "concurrent");
+        Log.i(TAG, IMAGE_COUNT + " images: 1 fetch thread " + serial / 1000 + "ms, 4 fetch threads " + concurrent / 1000 + "ms");
+    }
+
+    @Test
+    public void diskCacheHitsVersusNetwork() throws InterruptedException, IOException {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        DiskCache diskCache = new DiskCache(new File(context.getCacheDir(), "benchmark_images"), 10 * 1024 * 1024);
+        diskCache.clear();
+        StubServer server = new StubServer(createJpeg());
+        String baseUrl = "http://127.0.0.1:" + server.getPort() + "/image";
+        ImageLoader.BitmapDecoder decoder = new ImageLoader.BitmapDecoder();
+
+        ImagePipeline<Bitmap> pipeline = new ImagePipeline<Bitmap>(new ImagePipeline.HttpFetcher(), decoder, DIRECT, 4, 2);
+        pipeline.setDiskCache(diskCache);
+        long network = loadOneByOne(pipeline, baseUrl);
+        // a new pipeline has an empty memory cache, like after a restart
+        pipeline = new ImagePipeline<Bitmap>(new ImagePipeline.HttpFetcher(), decoder, DIRECT, 4, 2);
+        pipeline.setDiskCache(diskCache);
+        long disk = loadOneByOne(pipeline, baseUrl);
+        server.close();
+
+        Log.i(TAG, "per " + JPEG_SIZE + "px JPEG decoded to " + THUMBNAIL_SIZE + "px: loopback HTTP "
+                + network / IMAGE_COUNT + "us, disk cache hit " + disk / IMAGE_COUNT + "us");
+        assertEquals(IMAGE_COUNT, server.getRequestCount());
+        assertEquals(IMAGE_COUNT, diskCache.getHitCount());
+        diskCache.clear();
+        diskCache.close();
+    }
+
+    // microseconds to load every image at once
+    private static long loadAll(ImagePipeline<Integer> pipeline, String prefix) throws InterruptedException {
+        Collector<Integer> collector = new Collector<Integer>(IMAGE_COUNT);
+        long start = System.nanoTime();
+        for (int i = 0; i < IMAGE_COUNT; i++) {
+            pipeline.load(prefix + i, 0, 0, ImagePipeline.PRIORITY_NORMAL, collector);
+        }
+        assertTrue(collector.done.await(30, TimeUnit.SECONDS));
+        long micros = (System.nanoTime() - start) / 1000;
+        assertEquals(0, collector.failures.get());
+        pipeline.shutdown();
+        return micros;
+    }
+
+    // total microseconds to load each image after the previous one
+    private static long loadOneByOne(ImagePipeline<Bitmap> pipeline, String baseUrl) throws InterruptedException {
+        long start = System.nanoTime();
+        for (int i = 0; i < IMAGE_COUNT; i++) {
+            Collector<Bitmap> collector = new Collector<Bitmap>(1);
+            pipeline.load(baseUrl + i, THUMBNAIL_SIZE, THUMBNAIL_SIZE, ImagePipeline.PRIORITY_NORMAL, collector);
+            assertTrue(collector.done.await(30, TimeUnit.SECONDS));
+            assertEquals(0, collector.failures.get());
+        }
+        long micros = (System.nanoTime() - start) / 1000;
+        pipeline.shutdown();
+        return micros;
+    }
+
+    private static byte[] createJpeg() {
+        Bitmap bitmap = Bitmap.createBitmap(JPEG_SIZE, JPEG_SIZE, Bitmap.Config.ARGB_8888);
+        for (int y = 0; y < JPEG_SIZE; y += 16) {
+            for (int x = 0; x < JPEG_SIZE; x += 16) {
+                bitmap.setPixel(x, y, Color.rgb(x % 256, y % 256, (x + y) % 256));
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.JPEG, 90, out);
+        bitmap.recycle();
+        return out.toByteArray();
+    }
+
+    /**
+     * HTTP/1.1 server on the loopback interface answering every GET with the same body
+     */
+    private static class StubServer implements Runnable {
+        private final ServerSocket mSocket;
+        private final byte[] mBody;
+        private final AtomicInteger mRequestCount = new AtomicInteger();
+
+        StubServer(byte[] body) throws IOException {
+            mBody = body;
+            mSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+            Thread thread = new Thread(this, "StubServer");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        int getPort() {
+            return mSocket.getLocalPort();
+        }
+
+        int getRequestCount() {
+            return mRequestCount.get();
+        }
+
+        void close() throws IOException {
+            mSocket.close();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                final Socket connection;
+                try {
+                    connection = mSocket.accept();
+                } catch (IOException ex) {
+                    // closed
+                    return;
+                }
+                Thread handler = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(connection);
+                    }
+                });
+                handler.setDaemon(true);
+                handler.start();
+            }
+        }
+
+        private void serve(Socket connection) {
+            try {
+                BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream(), "ISO-8859-1"));
+                String line;
+                // request line and headers end with an empty line
+                while ((line = in.readLine()) != null && !line.isEmpty()) {
+                }
+                mRequestCount.incrementAndGet();
+                OutputStream out = connection.getOutputStream();
+                out.write(("HTTP/1.1 200 OK\r\nContent-Type: image/jpeg\r\nContent-Length: " + mBody.length
+                        + "\r\nConnection: close\r\n\r\n").getBytes("ISO-8859-1"));
+                out.write(mBody);
+                out.flush();
+            } catch (IOException ex) {
+                Log.e(TAG, "serve: ", ex);
+            } finally {
+                try {
+                    connection.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private static class Collector<T> implements ImagePipeline.Callback<T> {
+        final AtomicInteger failures = new AtomicInteger();
+        final CountDownLatch done;
+
+        Collector(int count) {
+            done = new CountDownLatch(count);
+        }
+
+        @Override
+        public void onLoaded(T image) {
+            done.countDown();
+        }
+
+        @Override
+        public void onFailed(Exception error) {
+            failures.incrementAndGet();
+            done.countDown();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package amazonite.android.util;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented benchmarks for ImageUtil, timings are written to logcat with tag "ImageUtilBenchmark".
+ */
+@RunWith(AndroidJUnit4.class)
+public class ImageUtilBenchmark {
+    private static final String TAG = ImageUtilBenchmark.class.getSimpleName();
+    private static final int IMAGE_WIDTH = 3000;
+    private static final int IMAGE_HEIGHT = 2000;
+    private static final int THUMBNAIL_SIZE = 200;
+    private static final int ROUNDS = 5;
+    private static final int SCROLL_DECODES = 200;
+
+    @Test
+    public void fullDecodeVersusSampledDecode() {
+        byte[] jpeg = createJpeg();
+
+        long fullNanos = 0;
+        long fullBytes = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            Bitmap full = ImageUtil.byteToBitmap(jpeg);
+            fullBytes = BitmapCache.getBitmapBytes(full);
+            Bitmap scaled = ImageUtil.scaleImage(full, (float) THUMBNAIL_SIZE / IMAGE_HEIGHT, (float) THUMBNAIL_SIZE / IMAGE_HEIGHT);
+            fullNanos += System.nanoTime() - start;
+            full.recycle();
+            scaled.recycle();
+        }
+
+        long sampledNanos = 0;
+        long sampledBytes = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            Bitmap sampled = ImageUtil.byteToBitmap(jpeg, THUMBNAIL_SIZE, THUMBNAIL_SIZE);
+            sampledNanos += System.nanoTime() - start;
+            assertEquals(THUMBNAIL_SIZE, sampled.getHeight());
+            sampledBytes = BitmapCache.getBitmapBytes(sampled);
+            sampled.recycle();
+        }
+
+        Log.i(TAG, IMAGE_WIDTH + "x" + IMAGE_HEIGHT + " to " + THUMBNAIL_SIZE + "px: full decode + scaleImage "
+                + fullNanos / ROUNDS / 1000 + "us, " + fullBytes + " bytes peak"
+                + " | sampled decode " + sampledNanos / ROUNDS / 1000 + "us, " + sampledBytes + " bytes");
+        assertTrue(sampledBytes * 10 < fullBytes);
+    }
+
+    @Test
+    public void pooledDecodingWhileScrolling() {
+        byte[] jpeg = createJpeg();
+        // a list showing 10 rows, each decode replaces the row that scrolled off
+        BitmapPool pool = new BitmapPool(64L * 1024 * 1024);
+        Bitmap[] rows = new Bitmap[10];
+        long pooledNanos = 0;
+        for (int i = 0; i < SCROLL_DECODES; i++) {
+            int row = i % rows.length;
+            long start = System.nanoTime();
+            Bitmap bitmap = ImageUtil.byteToBitmap(jpeg, THUMBNAIL_SIZE, THUMBNAIL_SIZE, pool);
+            pooledNanos += System.nanoTime() - start;
+            assertNotNull(bitmap);
+            if (rows[row] != null) pool.put(rows[row]);
+            rows[row] = bitmap;
+        }
+
+        long plainNanos = 0;
+        for (int i = 0; i < SCROLL_DECODES; i++) {
+            long start = System.nanoTime();
+            Bitmap bitmap = ImageUtil.byteToBitmap(jpeg, THUMBNAIL_SIZE, THUMBNAIL_SIZE);
+            plainNanos += System.nanoTime() - start;
+            bitmap.recycle();
+        }
+
+        Log.i(TAG, SCROLL_DECODES + " thumbnail decodes: pooled " + pooledNanos / SCROLL_DECODES / 1000 + "us, hit rate "
+                + pool.getHitRate() + " | allocating " + plainNanos / SCROLL_DECODES / 1000 + "us");
+        // once the rows are filled every decode and scale reuses a pooled bitmap,
+        // before KitKat sampled decodes cannot reuse bitmaps and only the scales do
+        assertTrue(pool.getHitRate() > (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT ? 0.8f : 0.4f));
+    }
+
+    private static byte[] createJpeg() {
+        Bitmap bitmap = Bitmap.createBitmap(IMAGE_WIDTH, IMAGE_HEIGHT, Bitmap.Config.ARGB_8888);
+        for (int y = 0; y < IMAGE_HEIGHT; y += 10) {
+            for (int x = 0; x < IMAGE_WIDTH; x += 10) {
+                bitmap.setPixel(x, y, 0xff000000 | (x * 255 / IMAGE_WIDTH) << 16 | (y * 255 / IMAGE_HEIGHT) << 8);
+            }
+        }
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.JPEG, 90, stream);
+        bitmap.recycle();
+        return stream.toByteArray();
+    }
+}
@@ -0,0 +1,110 @@
+package amazonite.android.util;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.google.gson.Gson;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented benchmarks for ObjectSerializer, timings and allocation counts are written to logcat with tag "ObjectSerializerBenchmark".
+ */
+@RunWith(AndroidJUnit4.class)
+public class ObjectSerializerBenchmark {
+    private static final String TAG = ObjectSerializerBenchmark.class.getSimpleName();
+    private static final int ITERATIONS = 2000;
+
+    static class Profile {
+        String name;
+        int age;
+        List<String> tags;
+
+        Profile(String name, int age, List<String> tags) {
+            this.name = name;
+            this.age = age;
+            this.tags = tags;
+        }
+    }
+
+    @Test
+    public void newGsonVersusSharedInstance() {
+        final String json = ObjectSerializer.toJson(new Profile("Ann", 30, Arrays.asList("a", "b")));
+        ObjectSerializer.warmUp(Profile.class);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            new Gson().fromJson(json, Profile.class);
+        }
+        long newGsonNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        Profile profile = null;
+        for (int i = 0; i < ITERATIONS; i++) {
+            profile = ObjectSerializer.fromJson(json, Profile.class);
+        }
+        long sharedNanos = System.nanoTime() - start;
+
+        // counted in separate passes, allocation tracking slows the timed loops down
+        int newGsonAllocations = AllocationCounter.count(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < ITERATIONS; i++) {
+                    new Gson().fromJson(json, Profile.class);
+                }
+            }
+        });
+        int sharedAllocations = AllocationCounter.count(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < ITERATIONS; i++) {
+                    ObjectSerializer.fromJson(json, Profile.class);
+                }
+            }
+        });
+
+        Log.i(TAG, ITERATIONS + " parses: new Gson() " + newGsonNanos / ITERATIONS + " ns/call, "
+                + newGsonAllocations / ITERATIONS + " allocations/call | ObjectSerializer " + sharedNanos / ITERATIONS
+                + " ns/call, " + sharedAllocations / ITERATIONS + " allocations/call");
+        assertEquals("Ann", profile.name);
+        assertTrue(sharedAllocations < newGsonAllocations);
+    }
+
+    @Test
+    public void singleArrayVersusDoubleEncodedList() throws IOException {
+        for (int count : new int[]{1000, 10000}) {
+            List<Profile> profiles = new ArrayList<Profile>();
+            List<String> strings = new ArrayList<String>();
+            for (int i = 0; i < count; i++) {
+                Profile profile = new Profile("name_" + i, i, Arrays.asList("tag_" + i));
+                profiles.add(profile);
+                strings.add(ObjectSerializer.toJson(profile));
+            }
+            String json = ObjectSerializer.toJson(profiles);
+            String legacyJson = ObjectSerializer.toJson(strings);
+
+            long start = System.nanoTime();
+            List<Profile> parsed = ObjectSerializer.fromJsonArray(json, Profile.class);
+            long parseNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (String element : ObjectSerializer.<List<String>>fromJson(legacyJson, ObjectSerializer.STRING_LIST_TYPE)) {
+                ObjectSerializer.fromJson(element, Profile.class);
+            }
+            long legacyParseNanos = System.nanoTime() - start;
+
+            Log.i(TAG, count + " elements: " + json.length() + " chars, " + parseNanos / 1000 + "us | double-encoded: "
+                    + legacyJson.length() + " chars, " + legacyParseNanos / 1000 + "us");
+            assertEquals(count, parsed.size());
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package amazonite.android.util;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented benchmarks for Validator, timings are written to logcat with tag "ValidatorBenchmark".
+ */
+@RunWith(AndroidJUnit4.class)
+public class ValidatorBenchmark {
+    private static final String TAG = ValidatorBenchmark.class.getSimpleName();
+    private static final int CALLS = 1000000;
+    private static final int WARMUP_CALLS = 20000;
+    private static final int BATCH_ROW_COUNT = 200000;
+    private static final String[] INPUTS = {"name@email.co.uk", "John O'Neil", "+94 (11) 234-5678", "user_name@1", "name$%@email.co.uk"};
+
+    @Test
+    public void scannersVersusRegexOnMillionInputs() {
+        // warm up both paths before measuring
+        int regexValid = 0;
+        int scannerValid = 0;
+        for (int i = 0; i < WARMUP_CALLS; i++) {
+            regexValid += legacyValidate(INPUTS[i % INPUTS.length]);
+            scannerValid += validate(INPUTS[i % INPUTS.length]);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < CALLS; i++) {
+            regexValid += legacyValidate(INPUTS[i % INPUTS.length]);
+        }
+        long regexNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < CALLS; i++) {
+            scannerValid += validate(INPUTS[i % INPUTS.length]);
+        }
+        long scannerNanos = System.nanoTime() - start;
+
+        Log.i(TAG, CALLS + " inputs: String.matches/Pattern " + regexNanos / CALLS + " ns/call, TextScanner "
+                + scannerNanos / CALLS + " ns/call");
+        assertEquals(regexValid, scannerValid);
+    }
+
+    @Test
+    public void batchValidationOneThreadVersusAllCores() {
+        List<CharSequence[]> rows = new ArrayList<CharSequence[]>();
+        for (int i = 0; i < BATCH_ROW_COUNT; i++) {
+            rows.add(new CharSequence[] {
+                    "user" + i + (i % 7 == 0 ? "@mail" : "@mail.com"),
+                    (i % 11 == 0 ? "+1" : "077 ") + (1000000 + i)});
+        }
+        int cores = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(cores);
+        BatchValidator sequential = new BatchValidator(executor, 1).field(TextRule.EMAIL).field(TextRule.PHONE_NUMBER);
+        BatchValidator parallel = new BatchValidator(executor, cores).field(TextRule.EMAIL).field(TextRule.PHONE_NUMBER);
+
+        // warm up
+        sequential.validate(rows);
+        parallel.validate(rows);
+
+        long start = System.nanoTime();
+        BatchValidator.Result expected = sequential.validate(rows);
+        long sequentialNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        BatchValidator.Result actual = parallel.validate(rows);
+        long parallelNanos = System.nanoTime() - start;
+        executor.shutdown();
+
+        Log.i(TAG, BATCH_ROW_COUNT + " rows: 1 thread " + sequentialNanos / 1000000 + "ms, "
+                + cores + " threads " + parallelNanos / 1000000 + "ms");
+        assertEquals(expected.getInvalidCount(), actual.getInvalidCount());
+    }
+
+    private static int legacyValidate(String input) {
+        int valid = 0;
+        if (Validator.EMAIL_ADDRESS.matcher(input).matches()) valid++;
+        if (Validator.PHONE.matcher(input).matches()) valid++;
+        if (input.matches(Validator.FORMAT_USER_NAME)) valid++;
+        if (input.matches(Validator.FORMAT_PERSON_NAME)) valid++;
+        return valid;
+    }
+
+    private static int validate(String input) {
+        int valid = 0;
+        if (Validator.isValidEmail(input)) valid++;
+        if (Validator.isValidPhoneNumber(input)) valid++;
+        if (Validator.isValidUserName(input)) valid++;
+        if (Validator.isValidPersonName(input)) valid++;
+        return valid;
+    }
+}
@@ -1,24 +1,195 @@
 package amazonite.android.util;
 
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.util.Log;
 
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
-
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 public class AppDatabase {
     private static final String TAG = AppDatabase.class.getSimpleName();
     private static final String PREFS_NAME = "app";
     private static final int MODE_PRIVATE = 0;
-    private SharedPreferences mPreferences;
+    private final StorageEngine mEngine;
+    private volatile ObjectCache mObjectCache;
+    private final ChangeNotifier mChangeNotifier = new ChangeNotifier();
+    private final Object mListLock = new Object();
+    private final Map<String, ListSize> mListSizes = new HashMap<String, ListSize>();
+    private final ExpiryIndex mExpiryIndex;
+    private ScheduledExecutorService mSweeper;
+
+    /**
+     * Element count of a stored list, valid while the stored String is the same instance.
+     * Dropped by every write of its key
+     */
+    private static class ListSize {
+        final String json;
+        final int size;
+
+        ListSize(String json, int size) {
+            this.json = json;
+            this.size = size;
+        }
+    }
 
     public AppDatabase(Context context) {
-        mPreferences = context.getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+        this(context, PREFS_NAME);
+    }
+
+    /**
+     * Open a named store, every name is a separate preferences file.
+     * Keep large values in their own store so reading small settings does not load them
+     * @param name store name
+     */
+    public AppDatabase(Context context, String name) {
+        this(new SharedPreferencesEngine(context.getSharedPreferences(checkName(name), MODE_PRIVATE)));
+    }
+
+    /**
+     * Open a named store whose keys are spread by hash over 'shardCount' preferences files (name_0 .. name_n-1).
+     * Keep 'shardCount' the same between app launches
+     * @param name store name
+     * @param shardCount number of preferences files
+     */
+    public AppDatabase(Context context, String name, int shardCount) {
+        this(createShardedEngine(context, checkName(name), shardCount));
+    }
+
+    /**
+     * @param engine storage backend (ex. SharedPreferencesEngine or MappedFileEngine)
+     */
+    public AppDatabase(StorageEngine engine) {
+        mEngine = engine;
+        mExpiryIndex = new ExpiryIndex(engine);
+    }
+
+    /**
+     * Start loading the default store on a background thread and return without blocking.
+     * Call it from Application.onCreate, reads wait until loading is done
+     * @return AppDatabase backed by a PreloadingEngine
+     */
+    public static AppDatabase loadAsync(Context context) {
+        return loadAsync(context, PREFS_NAME);
+    }
+
+    /**
+     * Start loading a named store on a background thread and return without blocking.
+     * Use ((PreloadingEngine) getEngine()).getLoadDurationMillis() to report the load time
+     * @param name store name
+     * @return AppDatabase backed by a PreloadingEngine
+     */
+    public static AppDatabase loadAsync(final Context context, final String name) {
+        checkForEmptyValues(name);
+        return new AppDatabase(new PreloadingEngine(new Callable<StorageEngine>() {
+            @Override
+            public StorageEngine call() {
+                SharedPreferencesEngine engine = new SharedPreferencesEngine(context.getSharedPreferences(name, MODE_PRIVATE));
+                // blocks until the preferences file is parsed
+                engine.contains(name);
+                return engine;
+            }
+        }));
+    }
+
+    /**
+     * Open a named store whose values and key names are encrypted at rest, see EncryptedEngine.
+     * Use a store name that never held plain values
+     * @param name store name
+     * @param secret at least 16 random bytes kept outside the store (ex. wrapped by the Android Keystore)
+     * @return AppDatabase backed by an EncryptedEngine
+     */
+    public static AppDatabase openEncrypted(Context context, String name, byte[] secret) {
+        checkForEmptyValues(name);
+        return new AppDatabase(new EncryptedEngine(
+                new SharedPreferencesEngine(context.getSharedPreferences(name, MODE_PRIVATE)), secret, true));
+    }
+
+    /**
+     * Open a named store for many writing threads, see GroupCommitEngine.
+     * Writes are visible at once and saved to disk by one background thread, commit waits for that save
+     * @param name store name
+     * @return AppDatabase backed by a GroupCommitEngine
+     */
+    public static AppDatabase openConcurrent(Context context, String name) {
+        checkForEmptyValues(name);
+        return new AppDatabase(new GroupCommitEngine(
+                new SharedPreferencesEngine(context.getSharedPreferences(name, MODE_PRIVATE))));
+    }
+
+    /**
+     * @return storage backend of this AppDatabase
+     */
+    public StorageEngine getEngine() {
+        return mEngine;
+    }
+
+    /**
+     * Keep up to 'maxSize' deserialized objects in memory so repeated getObject calls skip JSON parsing.
+     * Cached objects are invalidated by every put, remove and clear of this AppDatabase
+     * @param maxSize maximum number of cached objects, 0 to disable the cache
+     */
+    public void setObjectCacheSize(int maxSize) {
+        mObjectCache = maxSize > 0 ? new ObjectCache(maxSize) : null;
+    }
+
+    /**
+     * @return object cache with its hit/miss counters or null if the cache is disabled
+     */
+    public ObjectCache getObjectCache() {
+        return mObjectCache;
+    }
+
+    /**
+     * Call 'listener' on 'executor' when the value at 'key' is changed or removed through this AppDatabase
+     * @param key SharedPreferences key
+     * @param executor executor the listener is called on (ex. the main thread executor)
+     * @param listener listener to be called with the changed keys
+     * @return Subscription, cancel it to stop observing
+     */
+    public ChangeNotifier.Subscription observeKey(String key, Executor executor, ChangeNotifier.Listener listener) {
+        checkForEmptyValues(key);
+        return mChangeNotifier.subscribe(key, null, executor, listener);
+    }
+
+    /**
+     * Call 'listener' on 'executor' when values of keys starting with 'prefix' are changed or removed.
+     * A burst of writes is delivered as one call
+     * @param prefix SharedPreferences key prefix
+     * @param executor executor the listener is called on (ex. the main thread executor)
+     * @param listener listener to be called with the changed keys
+     * @return Subscription, cancel it to stop observing
+     */
+    public ChangeNotifier.Subscription observePrefix(String prefix, Executor executor, ChangeNotifier.Listener listener) {
+        checkForEmptyValues(prefix);
+        return mChangeNotifier.subscribe(null, prefix, executor, listener);
+    }
+
+    /**
+     * Call 'listener' on 'executor' when any value of this store is changed or removed
+     * @param executor executor the listener is called on (ex. the main thread executor)
+     * @param listener listener to be called with the changed keys
+     * @return Subscription, cancel it to stop observing
+     */
+    public ChangeNotifier.Subscription observeAll(Executor executor, ChangeNotifier.Listener listener) {
+        return mChangeNotifier.subscribe(null, null, executor, listener);
     }
 
     /**
@@ -27,8 +198,7 @@ public class AppDatabase {
      * @param intValue int value to be added
      */
     public boolean put(String key, int intValue) {
-        checkForEmptyValues(key);
-        return mPreferences.edit().putInt(key, intValue).commit();
+        return batch().put(key, intValue).commit();
     }
 
     /**
@@ -37,8 +207,7 @@ public class AppDatabase {
      * @param longValue long value to be added
      */
     public boolean put(String key, long longValue) {
-        checkForEmptyValues(key);
-        return mPreferences.edit().putLong(key, longValue).commit();
+        return batch().put(key, longValue).commit();
     }
 
     /**
@@ -47,8 +216,7 @@ public class AppDatabase {
      * @param floatValue float value to be added
      */
     public boolean put(String key, float floatValue) {
-        checkForEmptyValues(key);
-        return mPreferences.edit().putFloat(key, floatValue).commit();
+        return batch().put(key, floatValue).commit();
     }
 
     /**
@@ -57,8 +225,7 @@ public class AppDatabase {
      * @param stringValue String value to be added
      */
     public boolean put(String key, String stringValue) {
-        checkForEmptyValues(key);
-        return mPreferences.edit().putString(key, stringValue).commit();
+        return batch().put(key, stringValue).commit();
     }
 
     /**
@@ -67,8 +234,17 @@ public class AppDatabase {
      * @param booleanValue boolean value to be added
      */
     public boolean put(String key, boolean booleanValue) {
-        checkForEmptyValues(key);
-        return mPreferences.edit().putBoolean(key, booleanValue).commit();
+        return batch().put(key, booleanValue).commit();
+    }
+
+    /**
+     * Put String value into SharedPreferences with 'key' and save, the value is removed 'ttlMillis' later
+     * @param key SharedPreferences key
+     * @param stringValue String value to be added
+     * @param ttlMillis time to live in milliseconds
+     */
+    public boolean put(String key, String stringValue, long ttlMillis) {
+        return batch().put(key, stringValue).expireAfter(key, ttlMillis).commit();
     }
 
 
@@ -79,7 +255,8 @@ public class AppDatabase {
      */
     public int getInt(String key) {
         checkForEmptyValues(key);
-        return mPreferences.getInt(key, -1);
+        if (isExpired(key)) return -1;
+        return mEngine.getInt(key, -1);
     }
 
     /**
@@ -88,7 +265,8 @@ public class AppDatabase {
      */
     public long getLong(String key) {
         checkForEmptyValues(key);
-        return mPreferences.getLong(key, -1);
+        if (isExpired(key)) return -1;
+        return mEngine.getLong(key, -1);
     }
 
     /**
@@ -97,7 +275,8 @@ public class AppDatabase {
      */
     public Float getFloat(String key) {
         checkForEmptyValues(key);
-        return mPreferences.getFloat(key, -1);
+        if (isExpired(key)) return -1f;
+        return mEngine.getFloat(key, -1);
     }
 
     /**
@@ -106,7 +285,8 @@ public class AppDatabase {
      */
     public String getString(String key) {
         checkForEmptyValues(key);
-        return mPreferences.getString(key, null);
+        if (isExpired(key)) return null;
+        return mEngine.getString(key, null);
     }
 
     /**
@@ -115,19 +295,122 @@ public class AppDatabase {
      */
     public Boolean getBoolean(String key) {
         checkForEmptyValues(key);
-        return mPreferences.getBoolean(key, false);
+        if (isExpired(key)) return false;
+        return mEngine.getBoolean(key, false);
     }
 
 
     /**
-     * Get parsed Object from SharedPreferences at 'key'
+     * @param key typed key
+     * @return int value at 'key' or the key's default value if key not found
+     */
+    public int get(TypedKey.IntKey key) {
+        if (isExpired(key.name)) return key.defaultValue;
+        return mEngine.getInt(key.name, key.defaultValue);
+    }
+
+    /**
+     * @param key typed key
+     * @return long value at 'key' or the key's default value if key not found
+     */
+    public long get(TypedKey.LongKey key) {
+        if (isExpired(key.name)) return key.defaultValue;
+        return mEngine.getLong(key.name, key.defaultValue);
+    }
+
+    /**
+     * @param key typed key
+     * @return float value at 'key' or the key's default value if key not found
+     */
+    public float get(TypedKey.FloatKey key) {
+        if (isExpired(key.name)) return key.defaultValue;
+        return mEngine.getFloat(key.name, key.defaultValue);
+    }
+
+    /**
+     * @param key typed key
+     * @return boolean value at 'key' or the key's default value if key not found
+     */
+    public boolean get(TypedKey.BooleanKey key) {
+        if (isExpired(key.name)) return key.defaultValue;
+        return mEngine.getBoolean(key.name, key.defaultValue);
+    }
+
+    /**
+     * @param key typed key
+     * @return String value at 'key' or the key's default value if key not found
+     */
+    public String get(TypedKey.StringKey key) {
+        if (isExpired(key.name)) return key.defaultValue;
+        return mEngine.getString(key.name, key.defaultValue);
+    }
+
+    /**
+     * Put int value into SharedPreferences with typed 'key' and save
+     * @param key typed key
+     * @param intValue int value to be added
+     */
+    public boolean put(TypedKey.IntKey key, int intValue) {
+        return batch().put(key, intValue).commit();
+    }
+
+    /**
+     * Put long value into SharedPreferences with typed 'key' and save
+     * @param key typed key
+     * @param longValue long value to be added
+     */
+    public boolean put(TypedKey.LongKey key, long longValue) {
+        return batch().put(key, longValue).commit();
+    }
+
+    /**
+     * Put float value into SharedPreferences with typed 'key' and save
+     * @param key typed key
+     * @param floatValue float value to be added
+     */
+    public boolean put(TypedKey.FloatKey key, float floatValue) {
+        return batch().put(key, floatValue).commit();
+    }
+
+    /**
+     * Put boolean value into SharedPreferences with typed 'key' and save
+     * @param key typed key
+     * @param booleanValue boolean value to be added
+     */
+    public boolean put(TypedKey.BooleanKey key, boolean booleanValue) {
+        return batch().put(key, booleanValue).commit();
+    }
+
+    /**
+     * Put String value into SharedPreferences with typed 'key' and save
+     * @param key typed key
+     * @param stringValue String value to be added
+     */
+    public boolean put(TypedKey.StringKey key, String stringValue) {
+        return batch().put(key, stringValue).commit();
+    }
+
+
+    /**
+     * Get parsed Object from SharedPreferences at 'key'.
+     * When the object cache is enabled the returned Object is shared, do not modify it
      * @param key SharedPreferences key
      * @param classOfT Object type
      */
+    @SuppressWarnings("unchecked")
     public <T> T getObject(String key, Class<T> classOfT) {
-        String json = getString(key);
-        Object value = new Gson().fromJson(json, classOfT);
-        return (T) value;
+        ObjectCache cache = mObjectCache;
+        if (cache == null || isExpired(key)) {
+            return ObjectSerializer.fromJson(getString(key), classOfT);
+        }
+
+        Object cached = cache.get(key, classOfT);
+        if (cached != null) return (T) cached;
+
+        long generation = cache.generation();
+        T value = ObjectSerializer.fromJson(getString(key), classOfT);
+        cache.put(key, classOfT, value, generation);
+        return value;
     }
 
     /**
@@ -137,11 +420,21 @@ public class AppDatabase {
      */
     public boolean putObject(String key, Object obj) {
         if(key == null || key.isEmpty()) return false;
-        Gson gson = new Gson();
-        put(key, gson.toJson(obj));
+        put(key, ObjectSerializer.toJson(obj));
         return true;
     }
 
+    /**
+     * Put any Object type into SharedPreferences with 'key' and save, the Object is removed 'ttlMillis' later
+     * @param key SharedPreferences key
+     * @param obj Object to be added
+     * @param ttlMillis time to live in milliseconds
+     */
+    public boolean putObject(String key, Object obj, long ttlMillis) {
+        if(key == null || key.isEmpty()) return false;
+        return batch().putObject(key, obj).expireAfter(key, ttlMillis).commit();
+    }
+
 
 
     /**
@@ -152,7 +445,7 @@ public class AppDatabase {
     public ArrayList<String> getStringList(String key) {
         try {
             String json = getString(key);
-            return new Gson().fromJson(json, new TypeToken<List<String>>(){}.getType());
+            return ObjectSerializer.fromJson(json, ObjectSerializer.STRING_LIST_TYPE);
         }
         catch (Exception ex){
             Log.e(TAG, "getStringList: ", ex);
@@ -168,8 +461,7 @@ public class AppDatabase {
     public boolean putStringList(String key, List<String> stringList) {
         if(key == null || key.isEmpty()) return false;
         try {
-            Gson gson = new Gson();
-            put(key, gson.toJson(stringList));
+            put(key, ObjectSerializer.toJson(stringList));
             return true;
         }
         catch (Exception ex){
@@ -185,16 +477,7 @@ public class AppDatabase {
      * @return ArrayList of Objects
      */
     public ArrayList<Object> getObjectList(String key, Class<?> mClass) {
-        Gson gson = new Gson();
-
-        ArrayList<String> objStrings = getStringList(key);
-        ArrayList<Object> objects = new ArrayList<Object>();
-
-        for (String jObjString : objStrings) {
-            Object value = gson.fromJson(jObjString, mClass);
-            objects.add(value);
-        }
-        return objects;
+        return new ArrayList<Object>(getList(key, mClass));
     }
 
     /**
@@ -204,12 +487,159 @@ public class AppDatabase {
      */
     public void putListObject(String key, ArrayList<Object> objArray) {
         checkForEmptyValues(key);
-        Gson gson = new Gson();
-        ArrayList<String> objStrings = new ArrayList<String>();
-        for (Object obj : objArray) {
-            objStrings.add(gson.toJson(obj));
+        putList(key, objArray);
+    }
+
+    /**
+     * Get parsed List from SharedPreferences at 'key'.
+     * Lists saved in the old double-encoded format of putListObject are read transparently
+     * @param key SharedPreferences key
+     * @param classOfT element type
+     * @return ArrayList of 'classOfT', empty if key not found
+     */
+    public <T> ArrayList<T> getList(String key, Class<T> classOfT) {
+        try {
+            return ObjectSerializer.fromJsonArray(getString(key), classOfT);
+        }
+        catch (Exception ex){
+            Log.e(TAG, "getList: ", ex);
+            return new ArrayList<T>();
+        }
+    }
+
+    /**
+     * Open a cursor over the List stored at 'key' that deserializes one element at a time.
+     * Close the cursor when done
+     * @param key SharedPreferences key
+     * @param classOfT element type
+     * @return ListCursor, empty if key not found
+     */
+    public <T> ListCursor<T> openList(String key, Class<T> classOfT) {
+        return new ListCursor<T>(getString(key), classOfT);
+    }
+
+    /**
+     * Get a page of the List stored at 'key', elements before 'offset' are skipped without being deserialized
+     * @param key SharedPreferences key
+     * @param classOfT element type
+     * @param offset index of the first element
+     * @param limit maximum number of elements
+     * @return ArrayList with at most 'limit' elements, empty if key not found
+     */
+    public <T> ArrayList<T> getListPage(String key, Class<T> classOfT, int offset, int limit) {
+        ListCursor<T> cursor = null;
+        try {
+            cursor = openList(key, classOfT);
+            cursor.skip(offset);
+            return cursor.next(limit);
+        }
+        catch (Exception ex){
+            Log.e(TAG, "getListPage: ", ex);
+            return new ArrayList<T>();
+        }
+        finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    /**
+     * Put List of any Object type into SharedPreferences with 'key' as a single JSON array and save
+     * @param key SharedPreferences key
+     * @param list List to be added
+     */
+    public boolean putList(String key, List<?> list) {
+        if(key == null || key.isEmpty()) return false;
+        return batch().putList(key, list).commit();
+    }
+
+    /**
+     * Add an item to the end of the List stored at 'key' and save.
+     * Only the new item is serialized, the stored elements are not parsed
+     * @param key SharedPreferences key
+     * @param item Object to be added
+     */
+    public boolean appendToList(String key, Object item) {
+        return appendToList(key, item, 0);
+    }
+
+    /**
+     * Add an item to the end of the List stored at 'key' and keep only the last 'maxSize' items (ring buffer)
+     * @param key SharedPreferences key
+     * @param item Object to be added
+     * @param maxSize maximum number of items to keep, 0 for no limit
+     */
+    public boolean appendToList(String key, Object item, int maxSize) {
+        checkForEmptyValues(key);
+        String element = ObjectSerializer.toJson(item);
+        synchronized (mListLock) {
+            try {
+                String json = getString(key);
+                int size = getListSize(key, json) + 1;
+                json = JsonArrays.append(json, element);
+                if (maxSize > 0 && size > maxSize) {
+                    json = JsonArrays.removeFirst(json, size - maxSize);
+                    size = maxSize;
+                }
+                return saveList(key, json, size);
+            }
+            catch (Exception ex){
+                Log.e(TAG, "appendToList: ", ex);
+                return false;
+            }
         }
-        putStringList(key, objStrings);
+    }
+
+    /**
+     * Remove the item at 'index' from the List stored at 'key' and save
+     * @param key SharedPreferences key
+     * @param index index of the item to be removed
+     * @return false if 'index' is out of bounds or the List could not be saved
+     */
+    public boolean removeFromList(String key, int index) {
+        checkForEmptyValues(key);
+        synchronized (mListLock) {
+            try {
+                String json = getString(key);
+                int size = getListSize(key, json);
+                String newJson = JsonArrays.remove(json, index);
+                return newJson != null && saveList(key, newJson, size - 1);
+            }
+            catch (Exception ex){
+                Log.e(TAG, "removeFromList: ", ex);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * @param key SharedPreferences key
+     * @return number of items of the List stored at 'key', 0 if key not found
+     */
+    public int getListSize(String key) {
+        synchronized (mListLock) {
+            try {
+                return getListSize(key, getString(key));
+            }
+            catch (Exception ex){
+                Log.e(TAG, "getListSize: ", ex);
+                return 0;
+            }
+        }
+    }
+
+    private int getListSize(String key, String json) {
+        ListSize listSize = mListSizes.get(key);
+        if (listSize != null && listSize.json == json) return listSize.size;
+
+        int size = JsonArrays.size(json);
+        mListSizes.put(key, new ListSize(json, size));
+        return size;
+    }
+
+    private boolean saveList(String key, String json, int size) {
+        if (!batch().put(key, json).commit()) return false;
+        mListSizes.put(key, new ListSize(json, size));
+        return true;
     }
 
 
@@ -218,8 +648,7 @@ public class AppDatabase {
      * @param key SharedPreferences key
      */
     public boolean removeValue(String key) {
-        checkForEmptyValues(key);
-        return mPreferences.edit().remove(key).commit();
+        return batch().remove(key).commit();
     }
 
 
@@ -227,15 +656,472 @@ public class AppDatabase {
      * Clear SharedPreferences (remove everything)
      */
     public void clearAll() {
-        mPreferences.edit().clear().apply();
+        batch().clear().apply();
     }
 
     /**
-     * Retrieve all values from SharedPreferences. Do not modify collection return by method
+     * @param key SharedPreferences key
+     * @return expiry time of 'key' in milliseconds since the epoch or 0 if it does not expire
+     */
+    public long getExpiryTime(String key) {
+        checkForEmptyValues(key);
+        return mExpiryIndex.expiresAt(key);
+    }
+
+    /**
+     * Remove all expired items with a single commit. Expired items are never returned by the get methods,
+     * sweeping only frees their storage
+     * @return number of removed items
+     */
+    public int sweepExpired() {
+        return removeExpired(mExpiryIndex.expiredKeys(System.currentTimeMillis()));
+    }
+
+    /**
+     * Call {@link #sweepExpired()} every 'intervalMillis' on a background thread until {@link #stopExpirySweeper()}
+     * @param intervalMillis time between sweeps in milliseconds
+     */
+    public synchronized void startExpirySweeper(long intervalMillis) {
+        if (intervalMillis <= 0) throw new IllegalArgumentException("intervalMillis <= 0");
+        stopExpirySweeper();
+        mSweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "AppDatabase-sweeper");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        mSweeper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    sweepExpired();
+                }
+                catch (Exception ex){
+                    Log.e(TAG, "sweepExpired: ", ex);
+                }
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop the background sweeper, a sweep that is already running completes
+     */
+    public synchronized void stopExpirySweeper() {
+        if (mSweeper == null) return;
+        mSweeper.shutdown();
+        mSweeper = null;
+    }
+
+    private boolean isExpired(String key) {
+        // expired items read as absent, removing them is left to sweepExpired so reads never write
+        return mExpiryIndex.isExpired(key, System.currentTimeMillis());
+    }
+
+    private int removeExpired(List<String> keys) {
+        if (keys.isEmpty()) return 0;
+        synchronized (mExpiryIndex) {
+            // a put may have replaced the value since the keys were collected
+            long now = System.currentTimeMillis();
+            Batch batch = batch();
+            int count = 0;
+            for (String key : keys) {
+                if (!mExpiryIndex.isExpired(key, now)) continue;
+                batch.remove(key);
+                count++;
+            }
+            if (count == 0) return 0;
+            return batch.commit() ? count : 0;
+        }
+    }
+
+    /**
+     * Retrieve all values from SharedPreferences. Do not modify collection return by method.
+     * Expired items and the expiry times stored under "amazonite.expiry" are left out
      * @return a Map representing a list of key/value pairs from SharedPreferences
      */
     public Map<String, ?> getAll() {
-        return mPreferences.getAll();
+        Map<String, ?> all = mEngine.getAll();
+        List<String> expiredKeys = mExpiryIndex.expiredKeys(System.currentTimeMillis());
+        if (expiredKeys.isEmpty() && !all.containsKey(ExpiryIndex.KEY)) return all;
+        Map<String, Object> visible = new HashMap<String, Object>(all);
+        visible.remove(ExpiryIndex.KEY);
+        for (String key : expiredKeys) {
+            visible.remove(key);
+        }
+        return visible;
+    }
+
+    /**
+     * Write all items with their expiry times to a compact snapshot file, replacing it atomically.
+     * Expired items and String sets are skipped. Snapshots are not encrypted, so a store whose engine
+     * is encrypted (ex. opened with openEncrypted) refuses to export
+     * @param file snapshot file
+     * @return number of items written
+     * @throws IllegalStateException if the store is encrypted
+     */
+    public int exportSnapshot(File file) throws IOException {
+        checkExportable();
+        File tempFile = new File(file.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(tempFile);
+        int count;
+        boolean written = false;
+        try {
+            count = exportSnapshot(out);
+            out.getFD().sync();
+            written = true;
+        } finally {
+            out.close();
+            if (!written) tempFile.delete();
+        }
+        if (!tempFile.renameTo(file)) throw new IOException("Cannot replace " + file);
+        return count;
+    }
+
+    /**
+     * Write all items with their expiry times to 'out' one at a time, see {@link #exportSnapshot(File)}
+     * @param out stream the snapshot is written to, it is not closed
+     * @return number of items written
+     * @throws IllegalStateException if the store is encrypted
+     */
+    public int exportSnapshot(OutputStream out) throws IOException {
+        checkExportable();
+        long now = System.currentTimeMillis();
+        Snapshot snapshot = Snapshot.write(out);
+        for (Map.Entry<String, ?> entry : mEngine.getAll().entrySet()) {
+            String key = entry.getKey();
+            if (key.equals(ExpiryIndex.KEY)) continue;
+            long expiryTime = mExpiryIndex.expiresAt(key);
+            if (expiryTime != 0 && expiryTime <= now) continue;
+            snapshot.add(key, entry.getValue(), expiryTime);
+        }
+        return snapshot.finish();
+    }
+
+    private void checkExportable() {
+        // the decrypted values would be written in plain text, also when the EncryptedEngine is wrapped
+        if (mEngine.isEncrypted()) throw new IllegalStateException("Cannot export an encrypted store");
+    }
+
+    /**
+     * Restore the items of a snapshot file with a single commit.
+     * Nothing is changed if the file is truncated or corrupt
+     * @param file snapshot file written by {@link #exportSnapshot(File)}
+     * @param replace true to remove all current items first
+     * @return number of restored items
+     */
+    public int importSnapshot(File file, boolean replace) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            return importSnapshot(in, replace);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Restore the items of a snapshot with a single commit, see {@link #importSnapshot(File, boolean)}
+     * @param in stream the snapshot is read from, it is not closed
+     * @param replace true to remove all current items first
+     * @return number of restored items
+     */
+    public int importSnapshot(InputStream in, boolean replace) throws IOException {
+        Batch batch = batch();
+        if (replace) batch.clear();
+        int count = Snapshot.read(in, batch);
+        if (!batch.commit()) throw new IOException("Cannot save snapshot");
+        return count;
+    }
+
+    /**
+     * Copy the items whose keys start with 'keyPrefix' to 'target' with a single commit, ex. to move
+     * data to another backend or namespace. The prefix is replaced by 'targetPrefix' and expiry times are kept
+     * @param target AppDatabase the items are copied to
+     * @param keyPrefix prefix of the keys to copy, "" for every key
+     * @param targetPrefix prefix replacing 'keyPrefix' in 'target', "" to remove it
+     * @return number of copied items or -1 if 'target' could not be saved
+     */
+    public int copyTo(AppDatabase target, String keyPrefix, String targetPrefix) {
+        if (keyPrefix == null || targetPrefix == null) throw new NullPointerException();
+        long now = System.currentTimeMillis();
+        Batch batch = target.batch();
+        int count = 0;
+        for (Map.Entry<String, ?> entry : mEngine.getAll().entrySet()) {
+            String key = entry.getKey();
+            if (key.equals(ExpiryIndex.KEY) || !key.startsWith(keyPrefix)) continue;
+            long expiryTime = mExpiryIndex.expiresAt(key);
+            if (expiryTime != 0 && expiryTime <= now) continue;
+
+            String targetKey = targetPrefix + key.substring(keyPrefix.length());
+            if (!Snapshot.put(batch, targetKey, entry.getValue())) continue;
+            if (expiryTime != 0) batch.expireAt(targetKey, expiryTime);
+            count++;
+        }
+        return batch.commit() ? count : -1;
+    }
+
+    /**
+     * Open a batch to put many values and save them with a single commit.
+     * Nothing is written until {@link Batch#commit()} or {@link Batch#apply()} is called
+     * @return new empty Batch
+     */
+    public Batch batch() {
+        return new Batch();
+    }
+
+    /**
+     * Collects puts and removes so a multi-key save costs one disk write instead of one per key
+     */
+    public class Batch {
+        private final Map<String, Object> mChanges = new LinkedHashMap<String, Object>();
+        private Map<String, Long> mExpiryTimes;
+        private boolean mClear;
+
+        private Batch() {
+        }
+
+        /**
+         * Put int value into the batch with 'key'
+         * @param key SharedPreferences key
+         * @param intValue int value to be added
+         */
+        public Batch put(String key, int intValue) {
+            return set(key, intValue);
+        }
+
+        /**
+         * Put long value into the batch with 'key'
+         * @param key SharedPreferences key
+         * @param longValue long value to be added
+         */
+        public Batch put(String key, long longValue) {
+            return set(key, longValue);
+        }
+
+        /**
+         * Put float value into the batch with 'key'
+         * @param key SharedPreferences key
+         * @param floatValue float value to be added
+         */
+        public Batch put(String key, float floatValue) {
+            return set(key, floatValue);
+        }
+
+        /**
+         * Put String value into the batch with 'key'
+         * @param key SharedPreferences key
+         * @param stringValue String value to be added
+         */
+        public Batch put(String key, String stringValue) {
+            return set(key, stringValue);
+        }
+
+        /**
+         * Put boolean value into the batch with 'key'
+         * @param key SharedPreferences key
+         * @param booleanValue boolean value to be added
+         */
+        public Batch put(String key, boolean booleanValue) {
+            return set(key, booleanValue);
+        }
+
+        /**
+         * Put int value into the batch with typed 'key'
+         * @param key typed key
+         * @param intValue int value to be added
+         */
+        public Batch put(TypedKey.IntKey key, int intValue) {
+            mChanges.put(key.name, intValue);
+            return this;
+        }
+
+        /**
+         * Put long value into the batch with typed 'key'
+         * @param key typed key
+         * @param longValue long value to be added
+         */
+        public Batch put(TypedKey.LongKey key, long longValue) {
+            mChanges.put(key.name, longValue);
+            return this;
+        }
+
+        /**
+         * Put float value into the batch with typed 'key'
+         * @param key typed key
+         * @param floatValue float value to be added
+         */
+        public Batch put(TypedKey.FloatKey key, float floatValue) {
+            mChanges.put(key.name, floatValue);
+            return this;
+        }
+
+        /**
+         * Put boolean value into the batch with typed 'key'
+         * @param key typed key
+         * @param booleanValue boolean value to be added
+         */
+        public Batch put(TypedKey.BooleanKey key, boolean booleanValue) {
+            mChanges.put(key.name, booleanValue);
+            return this;
+        }
+
+        /**
+         * Put String value into the batch with typed 'key'
+         * @param key typed key
+         * @param stringValue String value to be added
+         */
+        public Batch put(TypedKey.StringKey key, String stringValue) {
+            mChanges.put(key.name, stringValue);
+            return this;
+        }
+
+        /**
+         * Put any Object type into the batch with 'key'
+         * @param key SharedPreferences key
+         * @param obj Object to be added
+         */
+        public Batch putObject(String key, Object obj) {
+            return set(key, ObjectSerializer.toJson(obj));
+        }
+
+        /**
+         * Put List of String into the batch with 'key'
+         * @param key SharedPreferences key
+         * @param stringList List of String to be added
+         */
+        public Batch putStringList(String key, List<String> stringList) {
+            return set(key, ObjectSerializer.toJson(stringList));
+        }
+
+        /**
+         * Put List of any Object type into the batch with 'key'
+         * @param key SharedPreferences key
+         * @param list List to be added
+         */
+        public Batch putList(String key, List<?> list) {
+            return set(key, ObjectSerializer.toJson(list));
+        }
+
+        /**
+         * Remove item with 'key' when the batch is saved
+         * @param key SharedPreferences key
+         */
+        public Batch remove(String key) {
+            return set(key, null);
+        }
+
+        /**
+         * Remove item with 'key' 'ttlMillis' from now.
+         * Putting or removing 'key' later without a time to live keeps it forever
+         * @param key SharedPreferences key
+         * @param ttlMillis time to live in milliseconds
+         */
+        public Batch expireAfter(String key, long ttlMillis) {
+            if (ttlMillis <= 0) throw new IllegalArgumentException("ttlMillis <= 0");
+            return expireAt(key, System.currentTimeMillis() + ttlMillis);
+        }
+
+        /**
+         * @param key SharedPreferences key
+         * @param expiryTime expiry time in milliseconds since the epoch
+         */
+        Batch expireAt(String key, long expiryTime) {
+            checkForEmptyValues(key);
+            if (mExpiryTimes == null) mExpiryTimes = new HashMap<String, Long>();
+            mExpiryTimes.put(key, expiryTime);
+            return this;
+        }
+
+        /**
+         * Remove everything before the other changes of the batch are saved
+         */
+        public Batch clear() {
+            mClear = true;
+            return this;
+        }
+
+        /**
+         * Save all changes of the batch synchronously with a single commit
+         * @return true if the new values were successfully written to storage
+         */
+        public boolean commit() {
+            return write(true);
+        }
+
+        /**
+         * Save all changes of the batch in memory immediately and write them to storage asynchronously
+         */
+        public void apply() {
+            write(false);
+        }
+
+        private Batch set(String key, Object value) {
+            checkForEmptyValues(key);
+            mChanges.put(key, value);
+            return this;
+        }
+
+        private boolean write(boolean sync) {
+            Set<String> clearedKeys = null;
+            if (mClear && mChangeNotifier.hasSubscriptions()) {
+                clearedKeys = new HashSet<String>(mEngine.getAll().keySet());
+            }
+            boolean result;
+            long sequence = 0;
+            // the index is read, changed and written together with the entries, in the order of the writes
+            synchronized (mExpiryIndex) {
+                Map<String, Long> expiries = mExpiryIndex.update(mChanges.keySet(), mExpiryTimes, mClear);
+                Map<String, Object> changes = mChanges;
+                if (expiries != null) {
+                    changes = new HashMap<String, Object>(mChanges);
+                    changes.put(ExpiryIndex.KEY, ExpiryIndex.toJson(expiries));
+                }
+                if (sync && !mClear && mEngine instanceof GroupCommitEngine) {
+                    // only stage under the lock, so commits of other threads can join the same group commit
+                    sequence = ((GroupCommitEngine) mEngine).stage(changes, true);
+                    result = true;
+                } else {
+                    result = mEngine.write(changes, mClear, sync);
+                }
+                if (result && expiries != null) mExpiryIndex.publish(expiries);
+            }
+            if (sequence != 0) result = ((GroupCommitEngine) mEngine).awaitCommitted(sequence);
+            invalidateCache();
+            if (!result || !mChangeNotifier.hasSubscriptions()) return result;
+
+            Set<String> changedKeys = new LinkedHashSet<String>(mChanges.keySet());
+            if (clearedKeys != null) changedKeys.addAll(clearedKeys);
+            changedKeys.remove(ExpiryIndex.KEY);
+            mChangeNotifier.notifyChanged(changedKeys);
+            return true;
+        }
+
+        private void invalidateCache() {
+            synchronized (mListLock) {
+                // saveList puts the new size back after its own write
+                if (mClear) mListSizes.clear();
+                else if (!mListSizes.isEmpty()) mListSizes.keySet().removeAll(mChanges.keySet());
+            }
+            ObjectCache cache = mObjectCache;
+            if (cache == null) return;
+            if (mClear) cache.invalidateAll();
+            else cache.invalidate(mChanges.keySet());
+        }
+    }
+
+    private static StorageEngine createShardedEngine(Context context, String name, int shardCount) {
+        if (shardCount <= 0) throw new IllegalArgumentException("shardCount <= 0");
+        StorageEngine[] shards = new StorageEngine[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new SharedPreferencesEngine(context.getSharedPreferences(name + "_" + i, MODE_PRIVATE));
+        }
+        return new ShardedEngine(shards);
+    }
+
+    private static String checkName(String name) {
+        checkForEmptyValues(name);
+        return name;
     }
 
     /**
@@ -0,0 +1,58 @@
+package amazonite.android.util;
+
+import java.util.Arrays;
+
+/**
+ * Standard Base64 with padding, android.util.Base64 is not available in local unit tests
+ */
+final class Base64Codec {
+    private static final char[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+    private static final int[] BASE64_VALUES = new int[128];
+
+    static {
+        Arrays.fill(BASE64_VALUES, -1);
+        for (int i = 0; i < BASE64.length; i++) {
+            BASE64_VALUES[BASE64[i]] = i;
+        }
+    }
+
+    private Base64Codec() {
+    }
+
+    static String encode(byte[] data, int offset, int length) {
+        char[] out = new char[(length + 2) / 3 * 4];
+        int o = 0;
+        int end = offset + length;
+        for (int i = offset; i < end; i += 3) {
+            int b = (data[i] & 0xff) << 16;
+            if (i + 1 < end) b |= (data[i + 1] & 0xff) << 8;
+            if (i + 2 < end) b |= data[i + 2] & 0xff;
+            out[o++] = BASE64[b >>> 18];
+            out[o++] = BASE64[(b >>> 12) & 0x3f];
+            out[o++] = i + 1 < end ? BASE64[(b >>> 6) & 0x3f] : '=';
+            out[o++] = i + 2 < end ? BASE64[b & 0x3f] : '=';
+        }
+        return new String(out);
+    }
+
+    static byte[] decode(String text) {
+        int length = text.length();
+        if (length % 4 != 0) throw new IllegalArgumentException("Invalid Base64 length");
+        int padding = length == 0 ? 0 : text.charAt(length - 1) == '=' ? (text.charAt(length - 2) == '=' ? 2 : 1) : 0;
+        byte[] out = new byte[length / 4 * 3 - padding];
+        int o = 0;
+        for (int i = 0; i < length; i += 4) {
+            int b = 0;
+            for (int j = 0; j < 4; j++) {
+                char c = text.charAt(i + j);
+                int value = c == '=' && i + 4 == length && j >= 4 - padding ? 0 : c < 128 ? BASE64_VALUES[c] : -1;
+                if (value < 0) throw new IllegalArgumentException("Invalid Base64 character");
+                b = (b << 6) | value;
+            }
+            if (o < out.length) out[o++] = (byte) (b >>> 16);
+            if (o < out.length) out[o++] = (byte) (b >>> 8);
+            if (o < out.length) out[o++] = (byte) b;
+        }
+        return out;
+    }
+}
@@ -0,0 +1,257 @@
+package amazonite.android.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Validates large sets of records (ex. an imported contact list) against rules declared per field.
+ * Rows are split into chunks that worker threads take one at a time, so the work spreads over all cores.
+ * The Result holds one valid bit per row and the error code of every invalid row, ex.
+ * <pre>
+ * BatchValidator validator = new BatchValidator()
+ *         .field(TextRule.REQUIRED, TextRule.PERSON_NAME)
+ *         .field(TextRule.EMAIL)
+ *         .field(TextRule.PHONE_NUMBER);
+ * BatchValidator.Result result = validator.validate(rows);
+ * </pre>
+ */
+public class BatchValidator {
+    // multiple of 64, so chunks never share a word of the bitmap
+    private static final int CHUNK_SIZE = 1024;
+
+    private static ExecutorService sSharedExecutor;
+
+    private final List<TextRule[]> mFields = new ArrayList<TextRule[]>();
+    private final Executor mExecutor;
+    private final int mParallelism;
+
+    /**
+     * Result of a batch validation, error codes are 0 for valid rows
+     */
+    public static class Result {
+        private final long[] mValidBits;
+        private final int[] mErrorCodes;
+        private final int mRowCount;
+        private final AtomicInteger mInvalidCount = new AtomicInteger();
+
+        private Result(int rowCount) {
+            mRowCount = rowCount;
+            mValidBits = new long[(rowCount + 63) >>> 6];
+            mErrorCodes = new int[rowCount];
+        }
+
+        public int getRowCount() {
+            return mRowCount;
+        }
+
+        public int getInvalidCount() {
+            return mInvalidCount.get();
+        }
+
+        /**
+         * @param row row index
+         * @return true if every field of the row passed its rules
+         */
+        public boolean isValid(int row) {
+            if (row < 0 || row >= mRowCount) throw new IndexOutOfBoundsException("row " + row);
+            return (mValidBits[row >>> 6] & (1L << row)) != 0;
+        }
+
+        /**
+         * @param row row index
+         * @return 0 if the row is valid, else the code of its first failed rule, see {@link #errorField} and {@link #errorRule}
+         */
+        public int getErrorCode(int row) {
+            return mErrorCodes[row];
+        }
+
+        /**
+         * @return copy of the valid bits, bit (row % 64) of word (row / 64) is set for valid rows
+         */
+        public long[] getValidBits() {
+            return mValidBits.clone();
+        }
+    }
+
+    /**
+     * Validate on a shared pool with one thread per core
+     */
+    public BatchValidator() {
+        this(sharedExecutor(), Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param executor executor the chunks are validated on
+     * @param parallelism number of chunks validated at the same time
+     */
+    public BatchValidator(Executor executor, int parallelism) {
+        if (executor == null) throw new NullPointerException();
+        if (parallelism <= 0) throw new IllegalArgumentException("parallelism <= 0");
+        mExecutor = executor;
+        mParallelism = parallelism;
+    }
+
+    /**
+     * Declare the rules of the next field, fields are numbered in the order they are declared
+     * @param rules rules checked in order, checking stops at the first failed rule
+     */
+    public BatchValidator field(TextRule... rules) {
+        mFields.add(rules.clone());
+        return this;
+    }
+
+    /**
+     * @param code error code of an invalid row
+     * @return index of the field that failed
+     */
+    public static int errorField(int code) {
+        return (code >>> 8) - 1;
+    }
+
+    /**
+     * @param code error code of an invalid row
+     * @return rule that failed
+     */
+    public static TextRule errorRule(int code) {
+        return TextRule.values()[(code & 0xff) - 1];
+    }
+
+    /**
+     * Validate single-field rows, ex. a column of email addresses
+     * @param values one value per row
+     */
+    public Result validate(final CharSequence[] values) {
+        if (mFields.size() != 1) throw new IllegalStateException("Declare exactly one field");
+        final TextRule[] rules = mFields.get(0);
+        final Result result = new Result(values.length);
+        run(result, new RowValidator() {
+            @Override
+            public int validate(int row) {
+                return check(rules, 0, values[row]);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * @param rows one array of field values per row, missing fields are treated as empty
+     */
+    public Result validate(final List<? extends CharSequence[]> rows) {
+        final TextRule[][] fields = mFields.toArray(new TextRule[mFields.size()][]);
+        final Result result = new Result(rows.size());
+        run(result, new RowValidator() {
+            @Override
+            public int validate(int row) {
+                CharSequence[] values = rows.get(row);
+                for (int field = 0; field < fields.length; field++) {
+                    int code = check(fields[field], field, field < values.length ? values[field] : null);
+                    if (code != 0) return code;
+                }
+                return 0;
+            }
+        });
+        return result;
+    }
+
+    /**
+     * @param rows one array of field values per row, missing fields are treated as empty
+     */
+    public Result validate(CharSequence[][] rows) {
+        return validate(Arrays.asList(rows));
+    }
+
+    private interface RowValidator {
+        int validate(int row);
+    }
+
+    private static int check(TextRule[] rules, int field, CharSequence value) {
+        for (TextRule rule : rules) {
+            if (!rule.isValid(value)) return ((field + 1) << 8) | (rule.ordinal() + 1);
+        }
+        return 0;
+    }
+
+    private void run(final Result result, final RowValidator validator) {
+        final int chunkCount = (result.mRowCount + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        final AtomicInteger nextChunk = new AtomicInteger();
+        // counts chunks, not workers: a worker that starts after every chunk was taken is not waited for,
+        // so validate may be called from a thread of the same executor (ex. nested) without deadlocking
+        final CountDownLatch done = new CountDownLatch(chunkCount);
+        final RuntimeException[] error = new RuntimeException[1];
+        Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                int chunk;
+                while ((chunk = nextChunk.getAndIncrement()) < chunkCount) {
+                    try {
+                        validateChunk(result, validator, chunk * CHUNK_SIZE, Math.min(result.mRowCount, (chunk + 1) * CHUNK_SIZE));
+                    } catch (RuntimeException ex) {
+                        synchronized (error) {
+                            error[0] = ex;
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }
+        };
+
+        int workers = Math.min(mParallelism, chunkCount) - 1;
+        for (int i = 0; i < workers; i++) {
+            mExecutor.execute(worker);
+        }
+        // the calling thread validates chunks too
+        worker.run();
+
+        boolean interrupted = false;
+        while (true) {
+            try {
+                done.await();
+                break;
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        synchronized (error) {
+            if (error[0] != null) throw error[0];
+        }
+    }
+
+    private static void validateChunk(Result result, RowValidator validator, int from, int to) {
+        int invalid = 0;
+        for (int row = from; row < to; row++) {
+            int code = validator.validate(row);
+            if (code == 0) {
+                result.mValidBits[row >>> 6] |= 1L << row;
+            } else {
+                result.mErrorCodes[row] = code;
+                invalid++;
+            }
+        }
+        result.mInvalidCount.addAndGet(invalid);
+    }
+
+    private static synchronized ExecutorService sharedExecutor() {
+        if (sSharedExecutor == null) {
+            sSharedExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+                private final AtomicInteger mCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "BatchValidator-" + mCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sSharedExecutor;
+    }
+}
@@ -0,0 +1,105 @@
+package amazonite.android.util;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * Memory cache of decoded bitmaps bounded by their allocated bytes. Register it with
+ * Context.registerComponentCallbacks so it shrinks when the system runs low on memory.
+ * With a BitmapPool evicted bitmaps are reused for later decodes. They are handed to the pool on the
+ * main thread, a bitmap retained in the pool (shown by a view or still being delivered by an
+ * ImagePipeline with the pool as its Retainer) is pooled only once released.
+ */
+public class BitmapCache extends MemoryCache<Bitmap> implements ComponentCallbacks2 {
+    private final BitmapPool mPool;
+    private final Handler mMainHandler;
+
+    /**
+     * Cache up to 1/8 of the heap
+     */
+    public BitmapCache() {
+        this(Runtime.getRuntime().maxMemory() / 8);
+    }
+
+    /**
+     * @param maxBytes maximum total bytes of the cached bitmaps
+     */
+    public BitmapCache(long maxBytes) {
+        this(maxBytes, null);
+    }
+
+    /**
+     * @param maxBytes maximum total bytes of the cached bitmaps
+     * @param pool pool for evicted bitmaps, null to leave them to the garbage collector
+     */
+    public BitmapCache(long maxBytes, BitmapPool pool) {
+        super(maxBytes);
+        mPool = pool;
+        mMainHandler = pool == null ? null : new Handler(Looper.getMainLooper());
+    }
+
+    public BitmapPool getPool() {
+        return mPool;
+    }
+
+    /**
+     * @return bytes used by 'bitmap', including reused space larger than its current size
+     */
+    public static int getBitmapBytes(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) return bitmap.getAllocationByteCount();
+        return bitmap.getByteCount();
+    }
+
+    @Override
+    protected int sizeOf(Bitmap value) {
+        return getBitmapBytes(value);
+    }
+
+    @Override
+    protected void onEvicted(String key, final Bitmap value) {
+        if (mPool == null) return;
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mPool.put(value);
+            }
+        });
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            trimToSize(0);
+            trimPool(0);
+        } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            // running low or UI hidden: keep the most recent half
+            trimToSize(getMaxSize() / 2);
+            if (mPool != null) trimPool(mPool.getMaxSize() / 2);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        trimToSize(0);
+        trimPool(0);
+    }
+
+    private void trimPool(final long maxBytes) {
+        if (mPool == null) return;
+        // after the evictions just posted reach the pool
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mPool.trimToSize(maxBytes);
+            }
+        });
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+}
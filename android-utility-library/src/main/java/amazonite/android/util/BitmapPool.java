@@ -0,0 +1,277 @@
+package amazonite.android.util;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+import android.os.Build;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+/**
+ * Pool of mutable bitmaps to decode and draw into instead of allocating new ones, bounded by bytes.
+ * From KitKat any pooled bitmap with enough allocated bytes is reconfigured to the requested size,
+ * before that only a bitmap of the same size and config can be reused and BitmapFactory reuses it
+ * only when inSampleSize is 1. Bitmaps retained by a view go to the pool only once released,
+ * set it as the Retainer of an ImagePipeline so bitmaps are also retained while they are delivered.
+ */
+public class BitmapPool implements ImagePipeline.Retainer<Bitmap> {
+    // a pooled bitmap may be up to this many times larger than the request
+    private static final int MAX_SIZE_MULTIPLE = 4;
+
+    private final long mMaxBytes;
+    private final boolean mReconfigure;
+    // pooled bitmaps by allocation bytes (KitKat) or by width, height and config
+    private final TreeMap<Integer, ArrayDeque<Bitmap>> mBySize = new TreeMap<Integer, ArrayDeque<Bitmap>>();
+    private final Map<String, ArrayDeque<Bitmap>> mByDimensions = new HashMap<String, ArrayDeque<Bitmap>>();
+    // pooled bitmaps, oldest first
+    private final LinkedHashSet<Bitmap> mPooled = new LinkedHashSet<Bitmap>();
+    // retain counts of bitmaps in use, a count below 0 marks a bitmap put while in use
+    private final WeakHashMap<Bitmap, int[]> mRetained = new WeakHashMap<Bitmap, int[]>();
+    private long mBytes;
+    private long mHitCount;
+    private long mMissCount;
+
+    /**
+     * Pool up to 1/16 of the heap
+     */
+    public BitmapPool() {
+        this(Runtime.getRuntime().maxMemory() / 16);
+    }
+
+    /**
+     * @param maxBytes maximum total bytes of the pooled bitmaps
+     */
+    public BitmapPool(long maxBytes) {
+        if (maxBytes <= 0) throw new IllegalArgumentException("maxBytes <= 0");
+        mMaxBytes = maxBytes;
+        mReconfigure = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+    }
+
+    /**
+     * @param width bitmap width
+     * @param height bitmap height
+     * @param config bitmap config, null for ARGB_8888
+     * @return cleared mutable bitmap of the given size and config or null
+     */
+    public Bitmap get(int width, int height, Bitmap.Config config) {
+        if (config == null) config = Bitmap.Config.ARGB_8888;
+        Bitmap bitmap;
+        synchronized (this) {
+            bitmap = take(width, height, config);
+        }
+        if (bitmap == null) return null;
+        if (mReconfigure) bitmap.reconfigure(width, height, config);
+        bitmap.eraseColor(Color.TRANSPARENT);
+        return bitmap;
+    }
+
+    /**
+     * @param width bitmap width
+     * @param height bitmap height
+     * @param config bitmap config, null for ARGB_8888
+     * @return pooled bitmap or a new one
+     */
+    public Bitmap getOrCreate(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = get(width, height, config);
+        return bitmap != null ? bitmap : Bitmap.createBitmap(width, height, config == null ? Bitmap.Config.ARGB_8888 : config);
+    }
+
+    /**
+     * Set inBitmap and inMutable for a decode after a bounds pass, so the decode reuses a pooled bitmap.
+     * If the decode fails with IllegalArgumentException put options.inBitmap back and decode without it
+     * @param options options with outWidth, outHeight and inSampleSize set
+     * @return true if a pooled bitmap was set
+     */
+    public boolean setInBitmap(BitmapFactory.Options options) {
+        options.inMutable = true;
+        options.inBitmap = null;
+        int sampleSize = Math.max(1, options.inSampleSize);
+        if (!mReconfigure && sampleSize != 1) {
+            synchronized (this) {
+                mMissCount++;
+            }
+            return false;
+        }
+        Bitmap.Config config = options.inPreferredConfig == null ? Bitmap.Config.ARGB_8888 : options.inPreferredConfig;
+        // round up, the decoder may round the sampled size up
+        int width = (options.outWidth + sampleSize - 1) / sampleSize;
+        int height = (options.outHeight + sampleSize - 1) / sampleSize;
+        synchronized (this) {
+            options.inBitmap = take(width, height, config);
+        }
+        return options.inBitmap != null;
+    }
+
+    /**
+     * Pool 'bitmap' for reuse, it must not be used anymore. A retained bitmap is pooled once released,
+     * immutable bitmaps and bitmaps larger than the pool are recycled
+     * @param bitmap bitmap no longer in use
+     */
+    public void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) return;
+        synchronized (this) {
+            int[] count = mRetained.get(bitmap);
+            if (count != null && count[0] > 0) {
+                count[0] = -count[0];
+                return;
+            }
+            int bytes = BitmapCache.getBitmapBytes(bitmap);
+            if (bitmap.isMutable() && bytes <= mMaxBytes && mPooled.add(bitmap)) {
+                bucket(bitmap).addLast(bitmap);
+                mBytes += bytes;
+                trim(mMaxBytes);
+                return;
+            }
+        }
+        if (!bitmap.isMutable() || BitmapCache.getBitmapBytes(bitmap) > mMaxBytes) bitmap.recycle();
+    }
+
+    /**
+     * Mark 'bitmap' in use (ex. shown by a view), put defers pooling it until every retain is released
+     */
+    @Override
+    public synchronized void retain(Bitmap bitmap) {
+        int[] count = mRetained.get(bitmap);
+        if (count == null) mRetained.put(bitmap, new int[]{1});
+        else if (count[0] < 0) count[0]--;
+        else count[0]++;
+    }
+
+    /**
+     * @param bitmap bitmap passed to retain
+     */
+    @Override
+    public void release(Bitmap bitmap) {
+        synchronized (this) {
+            int[] count = mRetained.get(bitmap);
+            if (count == null) return;
+            if (count[0] > 0) {
+                if (--count[0] == 0) mRetained.remove(bitmap);
+                return;
+            }
+            // put while in use, pool it after the last release
+            if (++count[0] < 0) return;
+            mRetained.remove(bitmap);
+        }
+        put(bitmap);
+    }
+
+    /**
+     * Recycle the oldest pooled bitmaps until at most 'maxBytes' are pooled, ex. on memory pressure
+     * @param maxBytes bytes to trim to, 0 empties the pool
+     */
+    public synchronized void trimToSize(long maxBytes) {
+        trim(maxBytes);
+    }
+
+    /**
+     * @return total bytes of the pooled bitmaps
+     */
+    public synchronized long getSize() {
+        return mBytes;
+    }
+
+    public long getMaxSize() {
+        return mMaxBytes;
+    }
+
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * @return share of get and setInBitmap calls answered from the pool, 0 before the first call
+     */
+    public synchronized float getHitRate() {
+        long total = mHitCount + mMissCount;
+        return total == 0 ? 0 : (float) mHitCount / total;
+    }
+
+    private Bitmap take(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = null;
+        if (mReconfigure) {
+            int bytes = width * height * bytesPerPixel(config);
+            Map.Entry<Integer, ArrayDeque<Bitmap>> entry = mBySize.ceilingEntry(bytes);
+            if (entry != null && entry.getKey() <= bytes * MAX_SIZE_MULTIPLE) {
+                bitmap = entry.getValue().pollLast();
+                if (entry.getValue().isEmpty()) mBySize.remove(entry.getKey());
+            }
+        } else {
+            String key = dimensionsKey(width, height, config);
+            ArrayDeque<Bitmap> bitmaps = mByDimensions.get(key);
+            if (bitmaps != null) {
+                bitmap = bitmaps.pollLast();
+                if (bitmaps.isEmpty()) mByDimensions.remove(key);
+            }
+        }
+        if (bitmap == null) {
+            mMissCount++;
+            return null;
+        }
+        mHitCount++;
+        mPooled.remove(bitmap);
+        mBytes -= BitmapCache.getBitmapBytes(bitmap);
+        return bitmap;
+    }
+
+    private ArrayDeque<Bitmap> bucket(Bitmap bitmap) {
+        ArrayDeque<Bitmap> bitmaps;
+        if (mReconfigure) {
+            int bytes = BitmapCache.getBitmapBytes(bitmap);
+            bitmaps = mBySize.get(bytes);
+            if (bitmaps == null) mBySize.put(bytes, bitmaps = new ArrayDeque<Bitmap>());
+        } else {
+            String key = dimensionsKey(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+            bitmaps = mByDimensions.get(key);
+            if (bitmaps == null) mByDimensions.put(key, bitmaps = new ArrayDeque<Bitmap>());
+        }
+        return bitmaps;
+    }
+
+    private void trim(long maxBytes) {
+        Iterator<Bitmap> iterator = mPooled.iterator();
+        while (mBytes > maxBytes && iterator.hasNext()) {
+            Bitmap eldest = iterator.next();
+            iterator.remove();
+            if (mReconfigure) {
+                int bytes = BitmapCache.getBitmapBytes(eldest);
+                ArrayDeque<Bitmap> bitmaps = mBySize.get(bytes);
+                bitmaps.remove(eldest);
+                if (bitmaps.isEmpty()) mBySize.remove(bytes);
+            } else {
+                String key = dimensionsKey(eldest.getWidth(), eldest.getHeight(), eldest.getConfig());
+                ArrayDeque<Bitmap> bitmaps = mByDimensions.get(key);
+                bitmaps.remove(eldest);
+                if (bitmaps.isEmpty()) mByDimensions.remove(key);
+            }
+            mBytes -= BitmapCache.getBitmapBytes(eldest);
+            eldest.recycle();
+        }
+    }
+
+    private static String dimensionsKey(int width, int height, Bitmap.Config config) {
+        return width + "x" + height + ":" + config;
+    }
+
+    private static int bytesPerPixel(Bitmap.Config config) {
+        switch (config) {
+            case ALPHA_8:
+                return 1;
+            case RGB_565:
+            case ARGB_4444:
+                return 2;
+            default:
+                return config.name().equals("RGBA_F16") ? 8 : 4;
+        }
+    }
+}
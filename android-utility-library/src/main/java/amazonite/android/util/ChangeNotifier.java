@@ -0,0 +1,115 @@
+package amazonite.android.util;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * Delivers changed keys of an AppDatabase to key, key prefix and store-wide listeners.
+ * Changes made while a delivery is still waiting on its executor are merged into that delivery,
+ * so a burst of writes reaches the listener as one call.
+ */
+public class ChangeNotifier {
+    private final CopyOnWriteArrayList<Subscription> mSubscriptions = new CopyOnWriteArrayList<Subscription>();
+
+    public interface Listener {
+        /**
+         * @param keys keys changed or removed since the last call
+         */
+        void onChange(Set<String> keys);
+    }
+
+    /**
+     * Registration of a listener, cancel it when the listener is no longer needed
+     */
+    public final class Subscription {
+        private final String mKey;
+        private final String mPrefix;
+        private final Executor mExecutor;
+        private final Listener mListener;
+        private Set<String> mPending;
+        private volatile boolean mCancelled;
+
+        private final Runnable mDelivery = new Runnable() {
+            @Override
+            public void run() {
+                Set<String> keys;
+                synchronized (Subscription.this) {
+                    keys = mPending;
+                    mPending = null;
+                }
+                if (!mCancelled && keys != null) {
+                    mListener.onChange(Collections.unmodifiableSet(keys));
+                }
+            }
+        };
+
+        private Subscription(String key, String prefix, Executor executor, Listener listener) {
+            mKey = key;
+            mPrefix = prefix;
+            mExecutor = executor;
+            mListener = listener;
+        }
+
+        /**
+         * Stop delivering changes, a delivery that is already running completes
+         */
+        public void cancel() {
+            mCancelled = true;
+            mSubscriptions.remove(this);
+        }
+
+        private boolean matches(String key) {
+            if (mKey != null) return mKey.equals(key);
+            return mPrefix == null || key.startsWith(mPrefix);
+        }
+
+        private void offer(Collection<String> keys) {
+            boolean schedule = false;
+            synchronized (this) {
+                for (String key : keys) {
+                    if (!matches(key)) continue;
+                    if (mPending == null) {
+                        mPending = new LinkedHashSet<String>();
+                        schedule = true;
+                    }
+                    mPending.add(key);
+                }
+            }
+            if (schedule) mExecutor.execute(mDelivery);
+        }
+    }
+
+    /**
+     * @param key key to observe, null for every key
+     * @param prefix key prefix to observe, ignored when 'key' is set, null for every key
+     * @param executor executor the listener is called on
+     * @param listener listener to be called
+     */
+    public Subscription subscribe(String key, String prefix, Executor executor, Listener listener) {
+        if (executor == null || listener == null) throw new NullPointerException();
+        Subscription subscription = new Subscription(key, prefix, executor, listener);
+        mSubscriptions.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * @return true if at least one listener is registered
+     */
+    public boolean hasSubscriptions() {
+        return !mSubscriptions.isEmpty();
+    }
+
+    /**
+     * @param keys changed or removed keys
+     */
+    public void notifyChanged(Collection<String> keys) {
+        if (keys.isEmpty()) return;
+        for (Subscription subscription : mSubscriptions) {
+            subscription.offer(keys);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package amazonite.android.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * StorageEngine that deflates String values longer than a threshold before handing them to another engine.
+ * Compressed values start with a header so reads detect them, values stored before compression was
+ * enabled are read unchanged. Wrap the EncryptedEngine, not the other way round, encrypted data does not compress.
+ */
+public class CompressingEngine implements StorageEngine {
+    public static final int DEFAULT_THRESHOLD = 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    // U+E000 is a private use character, it does not appear at the start of real values
+    private static final char ESCAPE = '\uE000';
+    private static final String HEADER = ESCAPE + "deflate:";
+    // the rest of a compressed value is Base64, one UTF-8 byte per character
+    private static final int HEADER_BYTES = HEADER.getBytes(UTF_8).length;
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final StorageEngine mEngine;
+    private final int mThreshold;
+    private final AtomicLong mCompressedCount = new AtomicLong();
+    private final AtomicLong mOriginalBytes = new AtomicLong();
+    private final AtomicLong mCompressedBytes = new AtomicLong();
+    private final ThreadLocal<Deflater> mDeflaters = new ThreadLocal<Deflater>();
+    private final ThreadLocal<Inflater> mInflaters = new ThreadLocal<Inflater>();
+
+    /**
+     * @param engine engine that stores the values
+     */
+    public CompressingEngine(StorageEngine engine) {
+        this(engine, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * @param engine engine that stores the values
+     * @param threshold String values with more characters than this are compressed
+     */
+    public CompressingEngine(StorageEngine engine, int threshold) {
+        if (threshold < 0) throw new IllegalArgumentException("threshold < 0");
+        mEngine = engine;
+        mThreshold = threshold;
+    }
+
+    /**
+     * @return number of values written compressed
+     */
+    public long getCompressedCount() {
+        return mCompressedCount.get();
+    }
+
+    /**
+     * @return UTF-8 bytes saved by compression over all compressed writes
+     */
+    public long getBytesSaved() {
+        return mOriginalBytes.get() - mCompressedBytes.get();
+    }
+
+    @Override
+    public int getInt(String key, int defValue) {
+        return mEngine.getInt(key, defValue);
+    }
+
+    @Override
+    public long getLong(String key, long defValue) {
+        return mEngine.getLong(key, defValue);
+    }
+
+    @Override
+    public float getFloat(String key, float defValue) {
+        return mEngine.getFloat(key, defValue);
+    }
+
+    @Override
+    public boolean getBoolean(String key, boolean defValue) {
+        return mEngine.getBoolean(key, defValue);
+    }
+
+    @Override
+    public String getString(String key, String defValue) {
+        String stored = mEngine.getString(key, null);
+        return stored != null ? decode(stored) : defValue;
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return mEngine.contains(key);
+    }
+
+    @Override
+    public boolean isEncrypted() {
+        return mEngine.isEncrypted();
+    }
+
+    @Override
+    public Map<String, ?> getAll() {
+        Map<String, Object> all = new HashMap<String, Object>(mEngine.getAll());
+        for (Map.Entry<String, Object> entry : all.entrySet()) {
+            if (entry.getValue() instanceof String) {
+                entry.setValue(decode((String) entry.getValue()));
+            }
+        }
+        return all;
+    }
+
+    @Override
+    public boolean write(Map<String, ?> changes, boolean clear, boolean sync) {
+        Map<String, Object> encoded = new LinkedHashMap<String, Object>();
+        for (Map.Entry<String, ?> entry : changes.entrySet()) {
+            Object value = entry.getValue();
+            encoded.put(entry.getKey(), value instanceof String ? encode((String) value) : value);
+        }
+        return mEngine.write(encoded, clear, sync);
+    }
+
+    private String encode(String value) {
+        if (value.length() > mThreshold) {
+            byte[] original = value.getBytes(UTF_8);
+            byte[] compressed = deflate(original);
+            String stored = HEADER + Base64Codec.encode(compressed, 0, compressed.length);
+            // both sides in UTF-8 bytes, the size the backing engine stores
+            int storedBytes = HEADER_BYTES + stored.length() - HEADER.length();
+            if (storedBytes < original.length) {
+                mCompressedCount.incrementAndGet();
+                mOriginalBytes.addAndGet(original.length);
+                mCompressedBytes.addAndGet(storedBytes);
+                return stored;
+            }
+        }
+        return !value.isEmpty() && value.charAt(0) == ESCAPE ? ESCAPE + value : value;
+    }
+
+    private String decode(String stored) {
+        if (stored.isEmpty() || stored.charAt(0) != ESCAPE) return stored;
+        if (!stored.startsWith(HEADER)) return stored.substring(1);
+        try {
+            return new String(inflate(Base64Codec.decode(stored.substring(HEADER.length()))), UTF_8);
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalStateException("Corrupt compressed value", ex);
+        } catch (DataFormatException ex) {
+            throw new IllegalStateException("Corrupt compressed value", ex);
+        }
+    }
+
+    private byte[] deflate(byte[] input) {
+        Deflater deflater = mDeflaters.get();
+        if (deflater == null) {
+            deflater = new Deflater();
+            mDeflaters.set(deflater);
+        }
+        deflater.reset();
+        deflater.setInput(input);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(input.length / 4 + 64);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] inflate(byte[] input) throws DataFormatException {
+        Inflater inflater = mInflaters.get();
+        if (inflater == null) {
+            inflater = new Inflater();
+            mInflaters.set(inflater);
+        }
+        inflater.reset();
+        inflater.setInput(input);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(input.length * 4);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        while (!inflater.finished()) {
+            int count = inflater.inflate(buffer);
+            if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                throw new DataFormatException("Truncated compressed value");
+            }
+            out.write(buffer, 0, count);
+        }
+        return out.toByteArray();
+    }
+}
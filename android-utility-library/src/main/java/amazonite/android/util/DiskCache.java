@@ -0,0 +1,340 @@
+package amazonite.android.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LRU cache of byte arrays in a directory, bounded by the total file size. Each value is written to a
+ * temporary file and renamed into place, so readers see the old or the new value, never a partial one.
+ * Reads run without the lock. A journal of puts, reads and removes restores the index and the LRU order
+ * when the cache is opened again, files that do not match the journal are deleted then.
+ * The directory is opened on first use and must not hold other files.
+ */
+public class DiskCache {
+    private static final String JOURNAL = "journal";
+    private static final String JOURNAL_TMP = "journal.tmp";
+    private static final String HEADER = "amazonite.DiskCache 1";
+    private static final String PUT = "P";
+    private static final String READ = "R";
+    private static final String REMOVE = "D";
+    private static final int COMPACT_MIN_OPS = 2000;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final File mDirectory;
+    private final long mMaxSize;
+    // file name -> size, in LRU order
+    private final LinkedHashMap<String, Long> mEntries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+    private final AtomicLong mTmpSequence = new AtomicLong();
+    private Writer mJournal;
+    private int mJournalOps;
+    private boolean mClosed;
+    private long mSize;
+    private long mHitCount;
+    private long mMissCount;
+    private long mEvictionCount;
+
+    /**
+     * @param directory cache directory, ex. new File(context.getCacheDir(), "images")
+     * @param maxSize maximum total bytes of the cached values
+     */
+    public DiskCache(File directory, long maxSize) {
+        if (maxSize <= 0) throw new IllegalArgumentException("maxSize <= 0");
+        mDirectory = directory;
+        mMaxSize = maxSize;
+    }
+
+    public File getDirectory() {
+        return mDirectory;
+    }
+
+    /**
+     * @param key cache key (ex. URL)
+     * @return cached bytes or null
+     */
+    public byte[] get(String key) throws IOException {
+        String name = fileName(key);
+        synchronized (this) {
+            open();
+            if (mEntries.get(name) == null) {
+                mMissCount++;
+                return null;
+            }
+            appendJournal(READ + " " + name);
+            // read lines are flushed with the next change, but a read-mostly cache still has to compact
+            compactJournal();
+        }
+        byte[] data;
+        try {
+            data = readFile(new File(mDirectory, name));
+        } catch (FileNotFoundException ex) {
+            // evicted after the lookup
+            data = null;
+        }
+        synchronized (this) {
+            if (data != null) mHitCount++;
+            else mMissCount++;
+        }
+        return data;
+    }
+
+    /**
+     * Cache 'data', the least recently used values are deleted to make room.
+     * Data larger than the maximum size is not cached
+     * @param key cache key (ex. URL)
+     * @param data bytes to cache
+     */
+    public void put(String key, byte[] data) throws IOException {
+        String name = fileName(key);
+        synchronized (this) {
+            open();
+            if (data.length > mMaxSize) return;
+        }
+        File tmp = new File(mDirectory, name + "." + mTmpSequence.incrementAndGet() + ".tmp");
+        FileOutputStream out = new FileOutputStream(tmp);
+        try {
+            out.write(data);
+        } catch (IOException ex) {
+            out.close();
+            tmp.delete();
+            throw ex;
+        }
+        out.close();
+
+        synchronized (this) {
+            if (mClosed || !tmp.renameTo(new File(mDirectory, name))) {
+                tmp.delete();
+                throw new IOException(mClosed ? "DiskCache is closed" : "Cannot rename " + tmp);
+            }
+            Long previous = mEntries.put(name, (long) data.length);
+            mSize += data.length - (previous == null ? 0 : previous);
+            appendJournal(PUT + " " + name + " " + data.length);
+            trim();
+            mJournal.flush();
+            compactJournal();
+        }
+    }
+
+    /**
+     * @param key cache key (ex. URL)
+     * @return true if a value was removed
+     */
+    public synchronized boolean remove(String key) throws IOException {
+        open();
+        String name = fileName(key);
+        Long size = mEntries.remove(name);
+        if (size == null) return false;
+        delete(name, size);
+        mJournal.flush();
+        return true;
+    }
+
+    /**
+     * Delete every cached value
+     */
+    public synchronized void clear() throws IOException {
+        open();
+        for (Map.Entry<String, Long> entry : mEntries.entrySet()) {
+            new File(mDirectory, entry.getKey()).delete();
+        }
+        mEntries.clear();
+        mSize = 0;
+        writeJournal();
+    }
+
+    /**
+     * Close the journal, later calls throw IOException
+     */
+    public synchronized void close() throws IOException {
+        if (mClosed) return;
+        mClosed = true;
+        if (mJournal != null) mJournal.close();
+        mJournal = null;
+    }
+
+    /**
+     * @return total bytes of the cached values
+     */
+    public synchronized long getSize() throws IOException {
+        open();
+        return mSize;
+    }
+
+    public long getMaxSize() {
+        return mMaxSize;
+    }
+
+    public synchronized int getCount() throws IOException {
+        open();
+        return mEntries.size();
+    }
+
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    private void open() throws IOException {
+        if (mClosed) throw new IOException("DiskCache is closed");
+        if (mJournal != null) return;
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) throw new IOException("Cannot create " + mDirectory);
+        mEntries.clear();
+        mSize = 0;
+        File journal = new File(mDirectory, JOURNAL);
+        if (journal.exists()) readJournal(journal);
+
+        // drop entries whose file is missing or incomplete
+        Iterator<Map.Entry<String, Long>> iterator = mEntries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            File file = new File(mDirectory, entry.getKey());
+            if (file.length() == entry.getValue()) {
+                mSize += entry.getValue();
+            } else {
+                file.delete();
+                iterator.remove();
+            }
+        }
+        // and files the journal does not know, ex. temporary files of interrupted writes
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (!name.equals(JOURNAL) && !mEntries.containsKey(name)) file.delete();
+            }
+        }
+        writeJournal();
+        trim();
+        mJournal.flush();
+    }
+
+    private void readJournal(File journal) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journal), "UTF-8"));
+        try {
+            if (!HEADER.equals(reader.readLine())) return;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(" ");
+                if (parts.length == 3 && PUT.equals(parts[0])) {
+                    try {
+                        mEntries.put(parts[1], Long.parseLong(parts[2]));
+                    } catch (NumberFormatException ex) {
+                        // line cut off by a crash
+                    }
+                } else if (parts.length == 2 && READ.equals(parts[0])) {
+                    mEntries.get(parts[1]);
+                } else if (parts.length == 2 && REMOVE.equals(parts[0])) {
+                    mEntries.remove(parts[1]);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Write a journal with one put per entry in LRU order and replace the current one
+     */
+    private void writeJournal() throws IOException {
+        if (mJournal != null) mJournal.close();
+        mJournal = null;
+        File tmp = new File(mDirectory, JOURNAL_TMP);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8"));
+        try {
+            writer.write(HEADER);
+            writer.write('\n');
+            for (Map.Entry<String, Long> entry : mEntries.entrySet()) {
+                writer.write(PUT + " " + entry.getKey() + " " + entry.getValue() + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+        if (!tmp.renameTo(new File(mDirectory, JOURNAL))) throw new IOException("Cannot replace " + JOURNAL);
+        mJournal = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(mDirectory, JOURNAL), true), "UTF-8"));
+        mJournalOps = 0;
+    }
+
+    private void appendJournal(String line) throws IOException {
+        mJournal.write(line);
+        mJournal.write('\n');
+        mJournalOps++;
+    }
+
+    private void compactJournal() throws IOException {
+        if (mJournalOps >= COMPACT_MIN_OPS && mJournalOps >= 2 * mEntries.size()) writeJournal();
+    }
+
+    private void trim() throws IOException {
+        Iterator<Map.Entry<String, Long>> iterator = mEntries.entrySet().iterator();
+        while (mSize > mMaxSize && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            delete(eldest.getKey(), eldest.getValue());
+            mEvictionCount++;
+        }
+    }
+
+    private void delete(String name, long size) throws IOException {
+        // open readers keep reading the unlinked file
+        new File(mDirectory, name).delete();
+        mSize -= size;
+        appendJournal(REMOVE + " " + name);
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            long length = in.getChannel().size();
+            if (length > Integer.MAX_VALUE) throw new IOException("File too large: " + file);
+            byte[] data = new byte[(int) length];
+            int offset = 0;
+            while (offset < data.length) {
+                int count = in.read(data, offset, data.length - offset);
+                if (count < 0) throw new IOException("Unexpected end of " + file);
+                offset += count;
+            }
+            return data;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return SHA-1 of 'key' in hex, safe as a file name
+     */
+    private static String fileName(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes("UTF-8"));
+            char[] chars = new char[digest.length * 2];
+            for (int i = 0; i < digest.length; i++) {
+                chars[i * 2] = HEX[(digest[i] >> 4) & 0xf];
+                chars[i * 2 + 1] = HEX[digest[i] & 0xf];
+            }
+            return new String(chars);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package amazonite.android.util;
+
+import android.widget.EditText;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Thin adapter between a FormSchema and EditText views. Call readValues and apply on the main thread,
+ * FormSchema.validate in between can run on a background thread.
+ */
+public class EditTextForm {
+    private final Map<String, EditText> mViews = new LinkedHashMap<String, EditText>();
+
+    /**
+     * @param field field name used in the FormSchema
+     * @param editText view holding the value of 'field'
+     */
+    public EditTextForm bind(String field, EditText editText) {
+        if (field == null || editText == null) throw new NullPointerException();
+        mViews.put(field, editText);
+        return this;
+    }
+
+    /**
+     * Copy the current text of every bound view, call it on the main thread
+     * @return values by field name, safe to use on other threads
+     */
+    public Map<String, CharSequence> readValues() {
+        Map<String, CharSequence> values = new LinkedHashMap<String, CharSequence>();
+        for (Map.Entry<String, EditText> entry : mViews.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().getText().toString());
+        }
+        return values;
+    }
+
+    /**
+     * Set the error of every bound view from 'result' and clear it on valid ones, call it on the main thread
+     * @param result result of FormSchema.validate
+     * @return true if the form is valid
+     */
+    public boolean apply(FormSchema.Result result) {
+        for (Map.Entry<String, EditText> entry : mViews.entrySet()) {
+            entry.getValue().setError(result.getError(entry.getKey()));
+        }
+        return result.isValid();
+    }
+
+    /**
+     * Read, validate and apply on the calling thread, for small forms
+     * @param schema rules of the form
+     * @return true if the form is valid
+     */
+    public boolean validate(FormSchema schema) {
+        return apply(schema.validate(readValues()));
+    }
+}
@@ -0,0 +1,355 @@
+package amazonite.android.util;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * StorageEngine that encrypts every value (and optionally every key name) before handing it to another engine.
+ * Values are sealed with AES-256-CBC and an HMAC-SHA256 tag over the whole record (encrypt-then-MAC),
+ * and the key name is sealed inside the record, so a value copied to another key is rejected.
+ * Cipher and MAC keys are derived once from the secret, Cipher/Mac instances are reused per thread
+ * and large strings are encrypted in chunks straight from the String, without a full plaintext copy.
+ * A value that fails authentication throws a SecurityException.
+ */
+public class EncryptedEngine implements StorageEngine {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String KEY_PREFIX = "enc.";
+    private static final byte VERSION = 1;
+    private static final int IV_SIZE = 16;
+    private static final int BLOCK_SIZE = 16;
+    private static final int TAG_SIZE = 32;
+    private static final int CHUNK_SIZE = 8 * 1024;
+    private static final int PBKDF2_ITERATIONS = 10000;
+
+    private static final byte TYPE_INT = 1;
+    private static final byte TYPE_LONG = 2;
+    private static final byte TYPE_FLOAT = 3;
+    private static final byte TYPE_BOOLEAN = 4;
+    private static final byte TYPE_STRING = 5;
+
+    private final StorageEngine mEngine;
+    private final boolean mEncryptKeyNames;
+    private final SecretKeySpec mCipherKey;
+    private final SecretKeySpec mMacKey;
+    private final SecretKeySpec mNameKey;
+    private final SecureRandom mRandom = new SecureRandom();
+    private final ConcurrentHashMap<String, String> mStoredKeys = new ConcurrentHashMap<String, String>();
+    private final ThreadLocal<Cipher> mCiphers = new ThreadLocal<Cipher>();
+    private final ThreadLocal<Mac> mMacs = new ThreadLocal<Mac>();
+
+    /**
+     * @param engine engine that stores the encrypted values
+     * @param secret at least 16 random bytes, keep it outside the store (ex. wrapped by the Android Keystore)
+     * @param encryptKeyNames true: store key names as keyed hashes so they are not readable either
+     */
+    public EncryptedEngine(StorageEngine engine, byte[] secret, boolean encryptKeyNames) {
+        if (secret == null || secret.length < 16) throw new IllegalArgumentException("secret must have at least 16 bytes");
+        mEngine = engine;
+        mEncryptKeyNames = encryptKeyNames;
+        try {
+            mCipherKey = new SecretKeySpec(derive(secret, "cipher"), "AES");
+            mMacKey = new SecretKeySpec(derive(secret, "mac"), "HmacSHA256");
+            mNameKey = new SecretKeySpec(derive(secret, "name"), "HmacSHA256");
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Derive a secret from a user password, this is slow so call it once and keep the result
+     * @param password user password
+     * @param salt random salt stored next to the encrypted store
+     * @return 32 byte secret for the EncryptedEngine constructor
+     */
+    public static byte[] deriveSecret(char[] password, byte[] salt) {
+        try {
+            SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1");
+            return factory.generateSecret(new PBEKeySpec(password, salt, PBKDF2_ITERATIONS, 256)).getEncoded();
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    @Override
+    public int getInt(String key, int defValue) {
+        Object value = read(key);
+        return value != null ? (Integer) value : defValue;
+    }
+
+    @Override
+    public long getLong(String key, long defValue) {
+        Object value = read(key);
+        return value != null ? (Long) value : defValue;
+    }
+
+    @Override
+    public float getFloat(String key, float defValue) {
+        Object value = read(key);
+        return value != null ? (Float) value : defValue;
+    }
+
+    @Override
+    public boolean getBoolean(String key, boolean defValue) {
+        Object value = read(key);
+        return value != null ? (Boolean) value : defValue;
+    }
+
+    @Override
+    public String getString(String key, String defValue) {
+        Object value = read(key);
+        return value != null ? (String) value : defValue;
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return mEngine.contains(storedKey(key));
+    }
+
+    @Override
+    public boolean isEncrypted() {
+        return true;
+    }
+
+    /**
+     * @return decrypted copy of all values, entries that were not written by this engine are skipped
+     */
+    @Override
+    public Map<String, ?> getAll() {
+        Map<String, Object> all = new HashMap<String, Object>();
+        for (Map.Entry<String, ?> entry : mEngine.getAll().entrySet()) {
+            if (!(entry.getValue() instanceof String)) continue;
+            if (mEncryptKeyNames && !entry.getKey().startsWith(KEY_PREFIX)) continue;
+            try {
+                Object[] record = decrypt((String) entry.getValue());
+                all.put((String) record[0], record[1]);
+            } catch (SecurityException ignored) {
+            }
+        }
+        return all;
+    }
+
+    @Override
+    public boolean write(Map<String, ?> changes, boolean clear, boolean sync) {
+        Map<String, Object> encrypted = new LinkedHashMap<String, Object>();
+        for (Map.Entry<String, ?> entry : changes.entrySet()) {
+            Object value = entry.getValue();
+            encrypted.put(storedKey(entry.getKey()), value != null ? encrypt(entry.getKey(), value) : null);
+        }
+        return mEngine.write(encrypted, clear, sync);
+    }
+
+    private Object read(String key) {
+        String stored = mEngine.getString(storedKey(key), null);
+        if (stored == null) return null;
+        Object[] record = decrypt(stored);
+        if (!key.equals(record[0])) throw new SecurityException("Value of '" + key + "' belongs to another key");
+        return record[1];
+    }
+
+    private String storedKey(String key) {
+        if (!mEncryptKeyNames) return key;
+        String storedKey = mStoredKeys.get(key);
+        if (storedKey == null) {
+            try {
+                Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(mNameKey);
+                byte[] hash = mac.doFinal(key.getBytes(UTF_8));
+                storedKey = KEY_PREFIX + Base64Codec.encode(hash, 0, 18);
+            } catch (GeneralSecurityException ex) {
+                throw new IllegalStateException(ex);
+            }
+            mStoredKeys.put(key, storedKey);
+        }
+        return storedKey;
+    }
+
+    /**
+     * Record layout: version | IV | AES-CBC(type | key name length | key name | value) | HMAC of all previous bytes
+     */
+    private String encrypt(String key, Object value) {
+        byte[] name = key.getBytes(UTF_8);
+        String text = null;
+        ByteBuffer header;
+        if (value instanceof String) {
+            text = (String) value;
+            header = ByteBuffer.allocate(3 + name.length).put(TYPE_STRING);
+        } else if (value instanceof Integer) {
+            header = ByteBuffer.allocate(7 + name.length).put(TYPE_INT);
+        } else if (value instanceof Long) {
+            header = ByteBuffer.allocate(11 + name.length).put(TYPE_LONG);
+        } else if (value instanceof Float) {
+            header = ByteBuffer.allocate(7 + name.length).put(TYPE_FLOAT);
+        } else if (value instanceof Boolean) {
+            header = ByteBuffer.allocate(4 + name.length).put(TYPE_BOOLEAN);
+        } else {
+            throw new IllegalArgumentException("Unsupported value type: " + value.getClass());
+        }
+        header.putShort((short) name.length).put(name);
+        if (value instanceof Integer) header.putInt((Integer) value);
+        else if (value instanceof Long) header.putLong((Long) value);
+        else if (value instanceof Float) header.putFloat((Float) value);
+        else if (value instanceof Boolean) header.put((byte) ((Boolean) value ? 1 : 0));
+
+        int plainLength = header.capacity() + (text != null ? utf8Length(text) : 0);
+        byte[] record = new byte[1 + IV_SIZE + (plainLength / BLOCK_SIZE + 1) * BLOCK_SIZE + TAG_SIZE];
+        record[0] = VERSION;
+        byte[] iv = new byte[IV_SIZE];
+        mRandom.nextBytes(iv);
+        System.arraycopy(iv, 0, record, 1, IV_SIZE);
+        try {
+            Cipher cipher = cipher();
+            cipher.init(Cipher.ENCRYPT_MODE, mCipherKey, new IvParameterSpec(iv));
+            int position = 1 + IV_SIZE;
+            position += cipher.update(header.array(), 0, header.capacity(), record, position);
+            if (text != null) {
+                CharsetEncoder encoder = UTF_8.newEncoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+                CharBuffer in = CharBuffer.wrap(text);
+                ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+                CoderResult result;
+                do {
+                    result = encoder.encode(in, chunk, true);
+                    if (result.isUnderflow()) encoder.flush(chunk);
+                    chunk.flip();
+                    position += cipher.update(chunk.array(), 0, chunk.limit(), record, position);
+                    chunk.clear();
+                } while (result.isOverflow());
+            }
+            position += cipher.doFinal(record, position);
+            if (position != record.length - TAG_SIZE) throw new IllegalStateException("Unexpected cipher output size");
+
+            Mac mac = mac();
+            mac.update(record, 0, position);
+            mac.doFinal(record, position);
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return Base64Codec.encode(record, 0, record.length);
+    }
+
+    /**
+     * @return key name and value of the record
+     */
+    private Object[] decrypt(String stored) {
+        byte[] record;
+        try {
+            record = Base64Codec.decode(stored);
+        } catch (IllegalArgumentException ex) {
+            throw new SecurityException("Value is not encrypted");
+        }
+        int cipherLength = record.length - 1 - IV_SIZE - TAG_SIZE;
+        if (cipherLength < BLOCK_SIZE || cipherLength % BLOCK_SIZE != 0 || record[0] != VERSION) {
+            throw new SecurityException("Value is not encrypted");
+        }
+
+        byte[] plain;
+        try {
+            Mac mac = mac();
+            mac.update(record, 0, record.length - TAG_SIZE);
+            byte[] tag = mac.doFinal();
+            byte[] storedTag = new byte[TAG_SIZE];
+            System.arraycopy(record, record.length - TAG_SIZE, storedTag, 0, TAG_SIZE);
+            if (!MessageDigest.isEqual(tag, storedTag)) throw new SecurityException("Value authentication failed");
+
+            Cipher cipher = cipher();
+            cipher.init(Cipher.DECRYPT_MODE, mCipherKey, new IvParameterSpec(record, 1, IV_SIZE));
+            plain = cipher.doFinal(record, 1 + IV_SIZE, cipherLength);
+        } catch (GeneralSecurityException ex) {
+            throw new SecurityException("Value authentication failed");
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(plain);
+        byte type = buffer.get();
+        int nameLength = buffer.getShort() & 0xffff;
+        String name = new String(plain, 3, nameLength, UTF_8);
+        buffer.position(3 + nameLength);
+        Object value;
+        switch (type) {
+            case TYPE_INT:
+                value = buffer.getInt();
+                break;
+            case TYPE_LONG:
+                value = buffer.getLong();
+                break;
+            case TYPE_FLOAT:
+                value = buffer.getFloat();
+                break;
+            case TYPE_BOOLEAN:
+                value = buffer.get() != 0;
+                break;
+            case TYPE_STRING:
+                value = new String(plain, buffer.position(), buffer.remaining(), UTF_8);
+                break;
+            default:
+                throw new SecurityException("Unknown value type: " + type);
+        }
+        return new Object[]{name, value};
+    }
+
+    private Cipher cipher() throws GeneralSecurityException {
+        Cipher cipher = mCiphers.get();
+        if (cipher == null) {
+            cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+            mCiphers.set(cipher);
+        }
+        return cipher;
+    }
+
+    private Mac mac() throws GeneralSecurityException {
+        Mac mac = mMacs.get();
+        if (mac == null) {
+            mac = Mac.getInstance("HmacSHA256");
+            mac.init(mMacKey);
+            mMacs.set(mac);
+        }
+        return mac;
+    }
+
+    private static byte[] derive(byte[] secret, String purpose) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(secret, "HmacSHA256"));
+        return mac.doFinal(purpose.getBytes(UTF_8));
+    }
+
+    /**
+     * @return number of bytes of 'text' in UTF-8, unpaired surrogates count as the 1 byte replacement '?'
+     */
+    private static int utf8Length(String text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,118 @@
+package amazonite.android.util;
+
+import com.google.gson.reflect.TypeToken;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Expiry times of AppDatabase entries, stored as one JSON object under {@link #KEY} so it is saved
+ * in the same write as the entries it describes. Loaded on first use and replaced as a whole
+ * on every change, so reads need no lock and keys without a time-to-live cost one map lookup.
+ */
+class ExpiryIndex {
+    static final String KEY = "amazonite.expiry";
+
+    private static final Type MAP_TYPE = new TypeToken<HashMap<String, Long>>(){}.getType();
+
+    private final StorageEngine mEngine;
+    private volatile Map<String, Long> mExpiries;
+
+    ExpiryIndex(StorageEngine engine) {
+        mEngine = engine;
+    }
+
+    /**
+     * @return true if 'key' has an expiry time that is not after 'now'
+     */
+    boolean isExpired(String key, long now) {
+        Long expiresAt = expiries().get(key);
+        return expiresAt != null && expiresAt <= now;
+    }
+
+    /**
+     * @return keys whose expiry time is not after 'now'
+     */
+    List<String> expiredKeys(long now) {
+        List<String> keys = new ArrayList<String>();
+        for (Map.Entry<String, Long> entry : expiries().entrySet()) {
+            if (entry.getValue() <= now) keys.add(entry.getKey());
+        }
+        return keys;
+    }
+
+    /**
+     * @return expiry time of 'key' in milliseconds since the epoch or 0 if it does not expire
+     */
+    long expiresAt(String key) {
+        Long expiresAt = expiries().get(key);
+        return expiresAt != null ? expiresAt : 0;
+    }
+
+    /**
+     * Apply a write to a copy of the index. Changed keys lose their expiry time unless they are in 'expiresAt'
+     * @param changedKeys keys put or removed by the write
+     * @param expiresAt new expiry times of the write, null for none
+     * @param clear true if the write removes everything first
+     * @return new index or null if the write does not change it
+     */
+    Map<String, Long> update(Collection<String> changedKeys, Map<String, Long> expiresAt, boolean clear) {
+        Map<String, Long> current = expiries();
+        if (expiresAt == null && (current.isEmpty() || (!clear && Collections.disjoint(current.keySet(), changedKeys)))) {
+            return null;
+        }
+        Map<String, Long> updated = clear ? new HashMap<String, Long>() : new HashMap<String, Long>(current);
+        for (String key : changedKeys) {
+            updated.remove(key);
+        }
+        if (expiresAt != null) updated.putAll(expiresAt);
+        return updated;
+    }
+
+    /**
+     * @param expiries index returned by {@link #update} after it was written
+     */
+    void publish(Map<String, Long> expiries) {
+        mExpiries = Collections.unmodifiableMap(expiries);
+    }
+
+    /**
+     * @return value to store under {@link #KEY}, null to remove it
+     */
+    static String toJson(Map<String, Long> expiries) {
+        return expiries.isEmpty() ? null : ObjectSerializer.toJson(expiries);
+    }
+
+    private Map<String, Long> expiries() {
+        Map<String, Long> expiries = mExpiries;
+        if (expiries != null) return expiries;
+        synchronized (this) {
+            if (mExpiries == null) mExpiries = load();
+            return mExpiries;
+        }
+    }
+
+    private Map<String, Long> load() {
+        return Collections.unmodifiableMap(parse(mEngine.getString(KEY, null)));
+    }
+
+    /**
+     * @param json value stored under {@link #KEY}
+     * @return expiry times by key, empty if 'json' is null or unreadable
+     */
+    static Map<String, Long> parse(String json) {
+        if (json == null) return new HashMap<String, Long>();
+        try {
+            Map<String, Long> expiries = ObjectSerializer.fromJson(json, MAP_TYPE);
+            return expiries != null ? expiries : new HashMap<String, Long>();
+        } catch (RuntimeException ex) {
+            // an unreadable index only loses expiry times, the entries themselves are kept
+            return new HashMap<String, Long>();
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package amazonite.android.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Declarative form validation on plain CharSequence values, so a form can be checked off the main thread
+ * and in JVM unit tests. Rules are checked in declaration order on the value without surrounding whitespace,
+ * a field stops at its first failed rule. Use EditTextForm to read the values from and show the errors on views, ex.
+ * <pre>
+ * FormSchema schema = new FormSchema()
+ *         .rule("email", TextRule.REQUIRED, "⚠ Email address field is empty!")
+ *         .rule("email", TextRule.EMAIL, "⚠ Please enter a valid email address!")
+ *         .length("password", 8, 30, "⚠ Password must contain 8 to 30 characters")
+ *         .sameAs("confirmPassword", "password", "⚠ Entered password is mismatched!");
+ * FormSchema.Result result = schema.validate(values);
+ * </pre>
+ */
+public class FormSchema {
+    private final List<FieldRule> mRules = new ArrayList<FieldRule>();
+    private final List<String> mFields = new ArrayList<String>();
+
+    /**
+     * Custom rule, it can read the other values of the form for cross-field checks
+     */
+    public interface Rule {
+        /**
+         * @param value value of the field, never null
+         * @param values all values of the form by field name
+         * @return true if 'value' passes the rule
+         */
+        boolean isValid(CharSequence value, Map<String, ? extends CharSequence> values);
+    }
+
+    /**
+     * Errors of a validated form by field name, in declaration order
+     */
+    public static class Result {
+        private final Map<String, String> mErrors;
+
+        private Result(Map<String, String> errors) {
+            mErrors = Collections.unmodifiableMap(errors);
+        }
+
+        public boolean isValid() {
+            return mErrors.isEmpty();
+        }
+
+        /**
+         * @param field field name
+         * @return error message of 'field' or null if it is valid
+         */
+        public String getError(String field) {
+            return mErrors.get(field);
+        }
+
+        /**
+         * @return error messages of the invalid fields by field name
+         */
+        public Map<String, String> getErrors() {
+            return mErrors;
+        }
+
+        /**
+         * @return name of the first invalid field or null if the form is valid
+         */
+        public String getFirstInvalidField() {
+            return mErrors.isEmpty() ? null : mErrors.keySet().iterator().next();
+        }
+    }
+
+    private static class FieldRule {
+        final String field;
+        final Rule rule;
+        final String message;
+
+        FieldRule(String field, Rule rule, String message) {
+            this.field = field;
+            this.rule = rule;
+            this.message = message;
+        }
+    }
+
+    // checked only when the other field is valid, so a mismatch is not reported on top of the other field's error
+    private static class SameAsRule implements Rule {
+        final String otherField;
+
+        SameAsRule(String otherField) {
+            this.otherField = otherField;
+        }
+
+        @Override
+        public boolean isValid(CharSequence value, Map<String, ? extends CharSequence> values) {
+            CharSequence other = values.get(otherField);
+            if (other == null) other = "";
+            int start = TextScanner.trimStart(value, 0, value.length());
+            int end = TextScanner.trimEnd(value, start, value.length());
+            int otherStart = TextScanner.trimStart(other, 0, other.length());
+            int otherEnd = TextScanner.trimEnd(other, otherStart, other.length());
+            if (end - start != otherEnd - otherStart) return false;
+            for (int i = 0; i < end - start; i++) {
+                if (value.charAt(start + i) != other.charAt(otherStart + i)) return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @param field field name
+     * @param rule rule the field must pass
+     * @param message error message if the rule fails
+     */
+    public FormSchema rule(String field, final TextRule rule, String message) {
+        return rule(field, new Rule() {
+            @Override
+            public boolean isValid(CharSequence value, Map<String, ? extends CharSequence> values) {
+                return rule.isValid(value);
+            }
+        }, message);
+    }
+
+    /**
+     * @param field field name
+     * @param rule rule the field must pass
+     * @param message error message if the rule fails
+     */
+    public FormSchema rule(String field, Rule rule, String message) {
+        if (field == null || rule == null) throw new NullPointerException();
+        if (!mFields.contains(field)) mFields.add(field);
+        mRules.add(new FieldRule(field, rule, message));
+        return this;
+    }
+
+    /**
+     * The field must have 'min' to 'max' characters, surrounding whitespace not counted
+     * @param field field name
+     * @param min minimum length
+     * @param max maximum length
+     * @param message error message if the rule fails
+     */
+    public FormSchema length(String field, final int min, final int max, String message) {
+        if (min < 0 || max < min) throw new IllegalArgumentException("Invalid length range " + min + ".." + max);
+        return rule(field, new Rule() {
+            @Override
+            public boolean isValid(CharSequence value, Map<String, ? extends CharSequence> values) {
+                int start = TextScanner.trimStart(value, 0, value.length());
+                int length = TextScanner.trimEnd(value, start, value.length()) - start;
+                return length >= min && length <= max;
+            }
+        }, message);
+    }
+
+    /**
+     * The field must equal 'otherField', ex. a password confirmation. Declare it after the rules of 'otherField',
+     * it is not checked while 'otherField' is invalid
+     * @param field field name
+     * @param otherField name of the field to compare with
+     * @param message error message if the values differ
+     */
+    public FormSchema sameAs(String field, String otherField, String message) {
+        if (otherField == null) throw new NullPointerException();
+        return rule(field, new SameAsRule(otherField), message);
+    }
+
+    /**
+     * @return field names in declaration order
+     */
+    public List<String> getFields() {
+        return Collections.unmodifiableList(mFields);
+    }
+
+    /**
+     * Check every field, missing values are treated as empty
+     * @param values values by field name
+     * @return errors of all invalid fields
+     */
+    public Result validate(Map<String, ? extends CharSequence> values) {
+        return new Result(check(values, false));
+    }
+
+    /**
+     * Check fields until the first error, cheaper than validate when only the outcome is needed
+     * @param values values by field name
+     * @return true if every field is valid
+     */
+    public boolean isValid(Map<String, ? extends CharSequence> values) {
+        return check(values, true).isEmpty();
+    }
+
+    private Map<String, String> check(Map<String, ? extends CharSequence> values, boolean stopAtFirstError) {
+        Map<String, String> errors = new LinkedHashMap<String, String>();
+        // the rules of a field may be declared apart, so errors are collected first and ordered by field after
+        for (FieldRule fieldRule : mRules) {
+            if (errors.containsKey(fieldRule.field)) continue;
+            if (fieldRule.rule instanceof SameAsRule && errors.containsKey(((SameAsRule) fieldRule.rule).otherField)) continue;
+            CharSequence value = values.get(fieldRule.field);
+            if (!fieldRule.rule.isValid(value != null ? value : "", values)) {
+                errors.put(fieldRule.field, fieldRule.message);
+                if (stopAtFirstError) return errors;
+            }
+        }
+        if (errors.size() < 2) return errors;
+        Map<String, String> ordered = new LinkedHashMap<String, String>();
+        for (String field : mFields) {
+            if (errors.containsKey(field)) ordered.put(field, errors.get(field));
+        }
+        return ordered;
+    }
+}
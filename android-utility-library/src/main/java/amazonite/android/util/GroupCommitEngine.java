@@ -0,0 +1,404 @@
+package amazonite.android.util;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * StorageEngine for many writing threads. Writes are staged in lock-striped in-memory buffers and are
+ * visible to every reader as soon as write returns, a single writer thread then saves everything staged
+ * since its last write with one write to the backing engine (group commit).
+ * Threads writing different keys only contend on a stripe lock, never on the backing engine.
+ * A batch is always saved by one group commit, so it stays atomic on disk.
+ * Synchronous writes wait for the group commit that contains them, asynchronous writes return right away.
+ * When a group commit fails its synchronous writes return false, the changes stay staged (and readable)
+ * and are retried by the next group commit or flush, unless a later write or clear replaces them.
+ * Locks are taken in the order engine lock, stage lock, stripe lock, commit lock.
+ */
+public class GroupCommitEngine implements StorageEngine, Closeable {
+    public static final int DEFAULT_STRIPE_COUNT = 16;
+
+    // staged value of a removed key
+    private static final Object REMOVED = new Object();
+
+    private final StorageEngine mEngine;
+    private final Stripe[] mStripes;
+    // writers stage under the read lock, the writer thread takes the write lock to take whole batches
+    private final ReadWriteLock mStageLock = new ReentrantReadWriteLock();
+    private final Object mCommitLock = new Object();
+    // held while the backing engine is written
+    private final Object mEngineLock = new Object();
+    private final Thread mWriterThread;
+    private long mStagedSequence;
+    private long mCommittedSequence;
+    // (from, to] sequence ranges of failed group commits, kept while a waiter may still read them
+    private final List<long[]> mFailedRanges = new ArrayList<long[]>();
+    // sequence -> number of threads waiting for it
+    private final TreeMap<Long, Integer> mWaiters = new TreeMap<Long, Integer>();
+    // changes of a failed group commit were put back into the stripes
+    private boolean mRequeued;
+    private long mCommitCount;
+    private long mFailedCommitCount;
+    private boolean mClosed;
+
+    private static class Stripe {
+        // staged since the last group commit
+        Map<String, Object> pending = new HashMap<String, Object>();
+        // taken by the running group commit, visible until the backing engine has it
+        Map<String, Object> committing;
+    }
+
+    /**
+     * @param engine engine the staged writes are saved to
+     */
+    public GroupCommitEngine(StorageEngine engine) {
+        this(engine, DEFAULT_STRIPE_COUNT);
+    }
+
+    /**
+     * @param engine engine the staged writes are saved to
+     * @param stripeCount number of staging buffers, about the number of writing threads
+     */
+    public GroupCommitEngine(StorageEngine engine, int stripeCount) {
+        if (stripeCount <= 0) throw new IllegalArgumentException("stripeCount <= 0");
+        mEngine = engine;
+        mStripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            mStripes[i] = new Stripe();
+        }
+        mWriterThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "AppDatabase-writer");
+        mWriterThread.setDaemon(true);
+        mWriterThread.start();
+    }
+
+    /**
+     * @return number of writes to the backing engine so far
+     */
+    public long getCommitCount() {
+        synchronized (mCommitLock) {
+            return mCommitCount;
+        }
+    }
+
+    /**
+     * @return number of failed writes to the backing engine so far
+     */
+    public long getFailedCommitCount() {
+        synchronized (mCommitLock) {
+            return mFailedCommitCount;
+        }
+    }
+
+    @Override
+    public int getInt(String key, int defValue) {
+        Object value = staged(key);
+        if (value == null) return mEngine.getInt(key, defValue);
+        return value == REMOVED ? defValue : (Integer) value;
+    }
+
+    @Override
+    public long getLong(String key, long defValue) {
+        Object value = staged(key);
+        if (value == null) return mEngine.getLong(key, defValue);
+        return value == REMOVED ? defValue : (Long) value;
+    }
+
+    @Override
+    public float getFloat(String key, float defValue) {
+        Object value = staged(key);
+        if (value == null) return mEngine.getFloat(key, defValue);
+        return value == REMOVED ? defValue : (Float) value;
+    }
+
+    @Override
+    public boolean getBoolean(String key, boolean defValue) {
+        Object value = staged(key);
+        if (value == null) return mEngine.getBoolean(key, defValue);
+        return value == REMOVED ? defValue : (Boolean) value;
+    }
+
+    @Override
+    public String getString(String key, String defValue) {
+        Object value = staged(key);
+        if (value == null) return mEngine.getString(key, defValue);
+        return value == REMOVED ? defValue : (String) value;
+    }
+
+    @Override
+    public boolean contains(String key) {
+        Object value = staged(key);
+        if (value == null) return mEngine.contains(key);
+        return value != REMOVED;
+    }
+
+    @Override
+    public boolean isEncrypted() {
+        return mEngine.isEncrypted();
+    }
+
+    @Override
+    public Map<String, ?> getAll() {
+        mStageLock.writeLock().lock();
+        try {
+            Map<String, Object> all = new HashMap<String, Object>(mEngine.getAll());
+            for (Stripe stripe : mStripes) {
+                synchronized (stripe) {
+                    if (stripe.committing != null) overlay(all, stripe.committing);
+                    overlay(all, stripe.pending);
+                }
+            }
+            return all;
+        } finally {
+            mStageLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean write(Map<String, ?> changes, boolean clear, boolean sync) {
+        if (clear) return clear(changes, sync);
+        long sequence = stage(changes, sync);
+        return !sync || awaitCommitted(sequence);
+    }
+
+    /**
+     * Stage 'changes' for the next group commit, readers see them right away
+     * @param sync true to wait for the commit with {@link #awaitCommitted(long)}
+     * @return sequence of the write
+     */
+    long stage(Map<String, ?> changes, boolean sync) {
+        long sequence;
+        mStageLock.readLock().lock();
+        try {
+            for (Map.Entry<String, ?> entry : changes.entrySet()) {
+                Object value = entry.getValue();
+                Stripe stripe = stripeFor(entry.getKey());
+                synchronized (stripe) {
+                    stripe.pending.put(entry.getKey(), value != null ? value : REMOVED);
+                }
+            }
+            synchronized (mCommitLock) {
+                if (mClosed) throw new IllegalStateException("GroupCommitEngine is closed");
+                sequence = ++mStagedSequence;
+                if (sync) addWaiter(sequence);
+                mCommitLock.notifyAll();
+            }
+        } finally {
+            mStageLock.readLock().unlock();
+        }
+        return sequence;
+    }
+
+    /**
+     * Block until every write staged before this call is saved by the backing engine,
+     * changes of failed group commits are retried once
+     * @return false if a group commit failed
+     */
+    public boolean flush() {
+        long sequence;
+        synchronized (mCommitLock) {
+            // a new sequence makes the writer thread retry the requeued changes
+            if (mRequeued && !mClosed) mStagedSequence++;
+            sequence = mStagedSequence;
+            addWaiter(sequence);
+            mCommitLock.notifyAll();
+        }
+        return awaitCommitted(sequence);
+    }
+
+    /**
+     * Save the staged writes and stop the writer thread, the backing engine is not closed
+     */
+    @Override
+    public void close() {
+        flush();
+        synchronized (mCommitLock) {
+            mClosed = true;
+            mCommitLock.notifyAll();
+        }
+    }
+
+    private Stripe stripeFor(String key) {
+        return mStripes[(key.hashCode() & 0x7fffffff) % mStripes.length];
+    }
+
+    /**
+     * @return staged value, REMOVED or null if 'key' is not staged
+     */
+    private Object staged(String key) {
+        Stripe stripe = stripeFor(key);
+        synchronized (stripe) {
+            Object value = stripe.pending.get(key);
+            if (value == null && stripe.committing != null) value = stripe.committing.get(key);
+            return value;
+        }
+    }
+
+    private boolean clear(Map<String, ?> changes, boolean sync) {
+        // a clear replaces everything staged before it, the engine lock makes it wait for the running
+        // group commit to be written, which holds the engine lock from taking its changes to the end of its write
+        synchronized (mEngineLock) {
+            mStageLock.writeLock().lock();
+            try {
+                for (Stripe stripe : mStripes) {
+                    synchronized (stripe) {
+                        stripe.pending.clear();
+                        stripe.committing = null;
+                    }
+                }
+                synchronized (mCommitLock) {
+                    mRequeued = false;
+                }
+                return mEngine.write(changes, true, sync);
+            } finally {
+                mStageLock.writeLock().unlock();
+            }
+        }
+    }
+
+    private void writeLoop() {
+        while (true) {
+            long sequence;
+            synchronized (mCommitLock) {
+                while (mCommittedSequence == mStagedSequence && !mClosed) {
+                    try {
+                        mCommitLock.wait();
+                    } catch (InterruptedException ex) {
+                        // keep writing, the thread only stops on close
+                    }
+                }
+                if (mCommittedSequence == mStagedSequence) return;
+            }
+
+            boolean result = true;
+            boolean written;
+            synchronized (mEngineLock) {
+                Map<String, Object> changes = new HashMap<String, Object>();
+                mStageLock.writeLock().lock();
+                try {
+                    synchronized (mCommitLock) {
+                        sequence = mStagedSequence;
+                        mRequeued = false;
+                    }
+                    for (Stripe stripe : mStripes) {
+                        synchronized (stripe) {
+                            if (stripe.pending.isEmpty()) continue;
+                            stripe.committing = stripe.pending;
+                            stripe.pending = new HashMap<String, Object>();
+                            for (Map.Entry<String, Object> entry : stripe.committing.entrySet()) {
+                                changes.put(entry.getKey(), entry.getValue() == REMOVED ? null : entry.getValue());
+                            }
+                        }
+                    }
+                } finally {
+                    mStageLock.writeLock().unlock();
+                }
+
+                written = !changes.isEmpty();
+                if (written) {
+                    try {
+                        result = mEngine.write(changes, false, true);
+                    } catch (RuntimeException ex) {
+                        result = false;
+                    }
+                }
+                boolean requeued = false;
+                for (Stripe stripe : mStripes) {
+                    synchronized (stripe) {
+                        if (!result && stripe.committing != null) {
+                            // keep the failed changes staged, newer writes of the same keys win
+                            for (Map.Entry<String, Object> entry : stripe.committing.entrySet()) {
+                                if (!stripe.pending.containsKey(entry.getKey())) {
+                                    stripe.pending.put(entry.getKey(), entry.getValue());
+                                    requeued = true;
+                                }
+                            }
+                        }
+                        stripe.committing = null;
+                    }
+                }
+                synchronized (mCommitLock) {
+                    if (requeued) mRequeued = true;
+                }
+            }
+            synchronized (mCommitLock) {
+                if (!result) {
+                    mFailedRanges.add(new long[]{mCommittedSequence, sequence});
+                    mFailedCommitCount++;
+                }
+                mCommittedSequence = sequence;
+                if (written) mCommitCount++;
+                pruneFailedRanges();
+                mCommitLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Wait for 'sequence', returned by stage with sync or registered with addWaiter
+     * @return false if its group commit failed
+     */
+    boolean awaitCommitted(long sequence) {
+        boolean interrupted = false;
+        synchronized (mCommitLock) {
+            try {
+                if (Thread.currentThread() == mWriterThread) return true;
+                while (mCommittedSequence < sequence) {
+                    try {
+                        mCommitLock.wait();
+                    } catch (InterruptedException ex) {
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) Thread.currentThread().interrupt();
+                for (long[] range : mFailedRanges) {
+                    if (sequence > range[0] && sequence <= range[1]) return false;
+                }
+                return true;
+            } finally {
+                removeWaiter(sequence);
+                pruneFailedRanges();
+            }
+        }
+    }
+
+    private void addWaiter(long sequence) {
+        Integer count = mWaiters.get(sequence);
+        mWaiters.put(sequence, count == null ? 1 : count + 1);
+    }
+
+    private void removeWaiter(long sequence) {
+        Integer count = mWaiters.get(sequence);
+        if (count == null) return;
+        if (count == 1) mWaiters.remove(sequence);
+        else mWaiters.put(sequence, count - 1);
+    }
+
+    /**
+     * Drop failed ranges no waiter can read anymore, later sequences are always above every range
+     */
+    private void pruneFailedRanges() {
+        Iterator<long[]> iterator = mFailedRanges.iterator();
+        while (iterator.hasNext()) {
+            long[] range = iterator.next();
+            if (mWaiters.subMap(range[0], false, range[1], true).isEmpty()) iterator.remove();
+        }
+    }
+
+    private static void overlay(Map<String, Object> all, Map<String, Object> staged) {
+        for (Map.Entry<String, Object> entry : staged.entrySet()) {
+            if (entry.getValue() == REMOVED) all.remove(entry.getKey());
+            else all.put(entry.getKey(), entry.getValue());
+        }
+    }
+}
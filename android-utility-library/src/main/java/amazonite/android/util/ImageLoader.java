@@ -0,0 +1,240 @@
+package amazonite.android.util;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+import java.io.File;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Loads images into ImageViews through an ImagePipeline. Each view remembers its pending request:
+ * binding a recycled view to another URL cancels the old request, so a late result never shows in
+ * the wrong row and off screen rows stop using fetch slots. Images in the pipeline's memory cache are
+ * set right away, without a frame of empty view. Images are decoded no larger than needed to cover the view.
+ * With a BitmapPool the bitmap shown by each view is retained, so only bitmaps no view shows are reused.
+ * Call it on the main thread.
+ */
+public class ImageLoader {
+    private static final String TAG = ImageLoader.class.getSimpleName();
+    private static final String DISK_CACHE_DIRECTORY = "images";
+    private static final long DISK_CACHE_BYTES = 50L * 1024 * 1024;
+
+    private static ImageLoader sInstance;
+
+    private final ImagePipeline<Bitmap> mPipeline;
+    private final BitmapPool mPool;
+    // pending request of each view, only used on the main thread
+    private final Map<ImageView, Binding> mBindings = new WeakHashMap<ImageView, Binding>();
+    // bitmap each view shows, retained in mPool
+    private final Map<ImageView, Bitmap> mShown = new WeakHashMap<ImageView, Bitmap>();
+
+    private final class Binding implements ImagePipeline.Callback<Bitmap> {
+        final ImageView imageView;
+        final String url;
+        ImagePipeline<Bitmap>.Request request;
+
+        Binding(ImageView imageView, String url) {
+            this.imageView = imageView;
+            this.url = url;
+        }
+
+        @Override
+        public void onLoaded(Bitmap image) {
+            if (mBindings.get(imageView) != this) return;
+            mBindings.remove(imageView);
+            show(imageView, image);
+        }
+
+        @Override
+        public void onFailed(Exception error) {
+            if (mBindings.get(imageView) == this) mBindings.remove(imageView);
+            Log.e(TAG, "load: " + url, error);
+        }
+    }
+
+    /**
+     * @return shared loader with a BitmapCache of 1/8 of the heap whose evictions go to a BitmapPool of 1/16,
+     * register getMemoryCache() with Context.registerComponentCallbacks to trim both on memory pressure
+     */
+    public static synchronized ImageLoader getInstance() {
+        if (sInstance == null) {
+            BitmapPool pool = new BitmapPool();
+            ImagePipeline<Bitmap> pipeline = new ImagePipeline<Bitmap>(new BitmapDecoder(pool), mainThreadExecutor());
+            pipeline.setMemoryCache(new BitmapCache(Runtime.getRuntime().maxMemory() / 8, pool));
+            sInstance = new ImageLoader(pipeline, pool);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Shared loader that also keeps downloads in a 50MB DiskCache in the app cache directory
+     * @param context any Context of the app
+     * @return shared loader
+     */
+    public static synchronized ImageLoader getInstance(Context context) {
+        ImageLoader loader = getInstance();
+        if (loader.mPipeline.getDiskCache() == null) {
+            File directory = new File(context.getApplicationContext().getCacheDir(), DISK_CACHE_DIRECTORY);
+            loader.mPipeline.setDiskCache(new DiskCache(directory, DISK_CACHE_BYTES));
+        }
+        return loader;
+    }
+
+    /**
+     * @param pipeline pipeline that calls back on the main thread
+     */
+    public ImageLoader(ImagePipeline<Bitmap> pipeline) {
+        this(pipeline, null);
+    }
+
+    /**
+     * @param pipeline pipeline that calls back on the main thread
+     * @param pool pool the pipeline decodes into, set as its Retainer, shown bitmaps are retained in it
+     */
+    public ImageLoader(ImagePipeline<Bitmap> pipeline, BitmapPool pool) {
+        mPipeline = pipeline;
+        mPool = pool;
+        if (pool != null) pipeline.setRetainer(pool);
+    }
+
+    public ImagePipeline<Bitmap> getPipeline() {
+        return mPipeline;
+    }
+
+    /**
+     * @return memory cache of the pipeline or null
+     */
+    public MemoryCache<Bitmap> getMemoryCache() {
+        return mPipeline.getMemoryCache();
+    }
+
+    /**
+     * @return bitmap pool or null
+     */
+    public BitmapPool getPool() {
+        return mPool;
+    }
+
+    /**
+     * Load 'url' into a view that is on screen
+     * @param url image url
+     * @param imageView view to set the image on
+     */
+    public void load(String url, ImageView imageView) {
+        load(url, imageView, ImagePipeline.PRIORITY_HIGH);
+    }
+
+    /**
+     * @param url image url, null clears the view
+     * @param imageView view to set the image on
+     * @param priority ImagePipeline.PRIORITY_HIGH for visible views, lower for prefetching
+     */
+    public void load(String url, ImageView imageView, int priority) {
+        Binding binding = mBindings.get(imageView);
+        if (binding != null) {
+            if (binding.url.equals(url)) return;
+            binding.request.cancel();
+            mBindings.remove(imageView);
+        }
+        int width = targetWidth(imageView);
+        int height = targetHeight(imageView);
+        Bitmap cached = url == null ? null : mPipeline.getCached(url, width, height);
+        if (cached != null) {
+            show(imageView, cached);
+            return;
+        }
+        // the view may still show the image of the row it was recycled from
+        show(imageView, null);
+        if (url == null) return;
+
+        binding = new Binding(imageView, url);
+        mBindings.put(imageView, binding);
+        binding.request = mPipeline.enqueue(url, width, height, priority, binding);
+    }
+
+    /**
+     * Cancel the pending load of 'imageView', ex. when its row is detached
+     * @param imageView view passed to load
+     */
+    public void cancel(ImageView imageView) {
+        Binding binding = mBindings.remove(imageView);
+        if (binding != null) binding.request.cancel();
+    }
+
+    private void show(ImageView imageView, Bitmap bitmap) {
+        Bitmap previous = bitmap == null ? mShown.remove(imageView) : mShown.put(imageView, bitmap);
+        if (mPool != null) {
+            if (bitmap != null) mPool.retain(bitmap);
+            if (previous != null) mPool.release(previous);
+        }
+        if (bitmap == null) imageView.setImageDrawable(null);
+        else imageView.setImageBitmap(bitmap);
+    }
+
+    /**
+     * @return width of the view, its layout width before the first layout or else the screen width
+     */
+    static int targetWidth(ImageView imageView) {
+        if (imageView.getWidth() > 0) return imageView.getWidth();
+        ViewGroup.LayoutParams params = imageView.getLayoutParams();
+        if (params != null && params.width > 0) return params.width;
+        DisplayMetrics metrics = imageView.getResources().getDisplayMetrics();
+        return metrics.widthPixels;
+    }
+
+    /**
+     * @return height of the view, its layout height before the first layout or else the screen height
+     */
+    static int targetHeight(ImageView imageView) {
+        if (imageView.getHeight() > 0) return imageView.getHeight();
+        ViewGroup.LayoutParams params = imageView.getLayoutParams();
+        if (params != null && params.height > 0) return params.height;
+        DisplayMetrics metrics = imageView.getResources().getDisplayMetrics();
+        return metrics.heightPixels;
+    }
+
+    /**
+     * @return executor running tasks on the main thread
+     */
+    public static Executor mainThreadExecutor() {
+        final Handler handler = new Handler(Looper.getMainLooper());
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                handler.post(command);
+            }
+        };
+    }
+
+    /**
+     * Decodes with a power of two inSampleSize and scales down to the target size,
+     * see ImageUtil.byteToBitmap(byte[], int, int, BitmapPool)
+     */
+    public static class BitmapDecoder implements ImagePipeline.Decoder<Bitmap> {
+        private final BitmapPool mPool;
+
+        public BitmapDecoder() {
+            this(null);
+        }
+
+        /**
+         * @param pool bitmaps to decode into, null to allocate
+         */
+        public BitmapDecoder(BitmapPool pool) {
+            mPool = pool;
+        }
+
+        @Override
+        public Bitmap decode(byte[] data, int width, int height) {
+            return ImageUtil.byteToBitmap(data, width, height, mPool);
+        }
+    }
+}
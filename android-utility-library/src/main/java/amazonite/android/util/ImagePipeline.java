@@ -0,0 +1,513 @@
+package amazonite.android.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loads images in two stages, downloads on a bounded fetch pool and decodes on a separate decode pool,
+ * so slow networks do not block decoding and decoding does not use up download slots.
+ * Requests for the same URL and size share one load. Higher priorities run first, within a priority
+ * the newest request runs first (the view bound last is the one on screen). A cancelled request is
+ * dropped, the load is stopped when no request is left. With a MemoryCache decoded images are
+ * kept by URL and size and later loads are answered without fetching. With a DiskCache downloads are
+ * kept by URL, a new load first reads the disk cache on the decode pool so disk hits never wait for
+ * a fetch slot, and only misses are queued for the network. With a Retainer every image is retained
+ * from before it enters the memory cache until its callbacks ran, so an eviction cannot recycle it
+ * before a callback retains it for itself. ImageLoader binds it to ImageViews.
+ * @param <T> decoded image type (ex. Bitmap)
+ */
+public class ImagePipeline<T> {
+    public static final int PRIORITY_LOW = 0;
+    public static final int PRIORITY_NORMAL = 1;
+    public static final int PRIORITY_HIGH = 2;
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 15000;
+    private static final int READ_TIMEOUT_MILLIS = 30000;
+
+    private final Fetcher mFetcher;
+    private final Decoder<T> mDecoder;
+    private final Executor mCallbackExecutor;
+    private final Workers mFetchWorkers;
+    private final Workers mDecodeWorkers;
+    private final Map<String, Job> mJobs = new HashMap<String, Job>();
+    private final AtomicLong mSequence = new AtomicLong();
+    private final AtomicLong mFetchCount = new AtomicLong();
+    private final AtomicLong mSharedCount = new AtomicLong();
+    private volatile MemoryCache<T> mMemoryCache;
+    private volatile DiskCache mDiskCache;
+    private volatile Retainer<T> mRetainer;
+
+    public interface Fetcher {
+        /**
+         * @param url image URL
+         * @return encoded image bytes
+         */
+        byte[] fetch(String url) throws IOException;
+    }
+
+    public interface Decoder<T> {
+        /**
+         * @param data encoded image bytes
+         * @param width target width in pixels, 0 for the full size
+         * @param height target height in pixels, 0 for the full size
+         * @return decoded image or null if 'data' is not an image
+         */
+        T decode(byte[] data, int width, int height) throws IOException;
+    }
+
+    public interface Callback<T> {
+        void onLoaded(T image);
+
+        void onFailed(Exception error);
+    }
+
+    /**
+     * Keeps images in use from being reused, ex. BitmapPool
+     */
+    public interface Retainer<T> {
+        void retain(T image);
+
+        /**
+         * @param image image passed to retain
+         */
+        void release(T image);
+    }
+
+    /**
+     * A pending load for one caller, cancel it when the result is no longer needed
+     */
+    public final class Request {
+        private final Job mJob;
+        private final Callback<T> mCallback;
+        private boolean mCancelled;
+
+        private Request(Job job, Callback<T> callback) {
+            mJob = job;
+            mCallback = callback;
+        }
+
+        public void cancel() {
+            synchronized (ImagePipeline.this) {
+                if (mCancelled) return;
+                mCancelled = true;
+                // answered from the memory cache
+                if (mJob == null) return;
+                mJob.requests.remove(this);
+                if (mJob.requests.isEmpty() && !mJob.finished) {
+                    mJob.cancelled = true;
+                    mJobs.remove(mJob.key);
+                    mJob.workers.remove(mJob.task);
+                }
+            }
+        }
+
+        public boolean isCancelled() {
+            synchronized (ImagePipeline.this) {
+                return mCancelled;
+            }
+        }
+    }
+
+    private final class Job {
+        final String key;
+        final String url;
+        final int width;
+        final int height;
+        final List<Request> requests = new ArrayList<Request>();
+        int priority;
+        boolean cancelled;
+        boolean finished;
+        // queued task and the pool it is queued on
+        Task task;
+        Workers workers;
+        byte[] data;
+
+        Job(String key, String url, int width, int height, int priority) {
+            this.key = key;
+            this.url = url;
+            this.width = width;
+            this.height = height;
+            this.priority = priority;
+        }
+    }
+
+    /**
+     * Load over HTTP with 4 fetch threads and one decode thread per core
+     * @param decoder decodes the downloaded bytes
+     * @param callbackExecutor executor the callbacks are called on (ex. the main thread)
+     */
+    public ImagePipeline(Decoder<T> decoder, Executor callbackExecutor) {
+        this(new HttpFetcher(), decoder, callbackExecutor, 4, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param fetcher downloads the image bytes
+     * @param decoder decodes the downloaded bytes
+     * @param callbackExecutor executor the callbacks are called on (ex. the main thread)
+     * @param fetchThreads number of concurrent downloads
+     * @param decodeThreads number of concurrent decodes
+     */
+    public ImagePipeline(Fetcher fetcher, Decoder<T> decoder, Executor callbackExecutor, int fetchThreads, int decodeThreads) {
+        if (fetcher == null || decoder == null || callbackExecutor == null) throw new NullPointerException();
+        mFetcher = fetcher;
+        mDecoder = decoder;
+        mCallbackExecutor = callbackExecutor;
+        mFetchWorkers = new Workers("ImagePipeline-fetch", fetchThreads);
+        mDecodeWorkers = new Workers("ImagePipeline-decode", decodeThreads);
+    }
+
+    /**
+     * @param memoryCache cache for decoded images, null to disable caching
+     */
+    public void setMemoryCache(MemoryCache<T> memoryCache) {
+        mMemoryCache = memoryCache;
+    }
+
+    public MemoryCache<T> getMemoryCache() {
+        return mMemoryCache;
+    }
+
+    /**
+     * @param diskCache cache for downloaded bytes, null to always fetch
+     */
+    public void setDiskCache(DiskCache diskCache) {
+        mDiskCache = diskCache;
+    }
+
+    public DiskCache getDiskCache() {
+        return mDiskCache;
+    }
+
+    /**
+     * @param retainer retains images while they are delivered, callbacks that keep an image retain it themselves
+     */
+    public void setRetainer(Retainer<T> retainer) {
+        mRetainer = retainer;
+    }
+
+    public Retainer<T> getRetainer() {
+        return mRetainer;
+    }
+
+    /**
+     * @param url image URL
+     * @param width target width passed to load
+     * @param height target height passed to load
+     * @return image in the memory cache or null
+     */
+    public T getCached(String url, int width, int height) {
+        MemoryCache<T> memoryCache = mMemoryCache;
+        return memoryCache == null ? null : memoryCache.get(key(url, width, height));
+    }
+
+    /**
+     * @return number of downloads started
+     */
+    public long getFetchCount() {
+        return mFetchCount.get();
+    }
+
+    /**
+     * @return number of requests that joined a load already running for the same URL and size
+     */
+    public long getSharedCount() {
+        return mSharedCount.get();
+    }
+
+    /**
+     * @param url image URL
+     * @param width target width in pixels, 0 for the full size
+     * @param height target height in pixels, 0 for the full size
+     * @param priority PRIORITY_LOW, PRIORITY_NORMAL or PRIORITY_HIGH
+     * @param callback called on the callback executor unless the request is cancelled first
+     * @return Request, cancel it when the result is no longer needed
+     */
+    public Request load(String url, int width, int height, int priority, Callback<T> callback) {
+        if (url == null || callback == null) throw new NullPointerException();
+        final T cached = getCached(url, width, height);
+        if (cached != null) {
+            final Request request = new Request(null, callback);
+            final Retainer<T> retainer = mRetainer;
+            if (retainer != null) retainer.retain(cached);
+            mCallbackExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (!request.isCancelled()) request.mCallback.onLoaded(cached);
+                    } finally {
+                        if (retainer != null) retainer.release(cached);
+                    }
+                }
+            });
+            return request;
+        }
+        return enqueue(url, width, height, priority, callback);
+    }
+
+    /**
+     * load without the memory cache lookup, for callers that looked it up already
+     */
+    synchronized Request enqueue(String url, int width, int height, int priority, Callback<T> callback) {
+        String key = key(url, width, height);
+        Job job = mJobs.get(key);
+        if (job == null) {
+            job = new Job(key, url, width, height, priority);
+            mJobs.put(key, job);
+            if (mDiskCache != null) submit(job, mDecodeWorkers, new DecodeTask(job));
+            else submit(job, mFetchWorkers, new FetchTask(job));
+        } else {
+            mSharedCount.incrementAndGet();
+            if (priority > job.priority) {
+                job.priority = priority;
+                // queue the task again so the new priority applies
+                if (job.workers.remove(job.task)) submit(job, job.workers, job.task.copy());
+            }
+        }
+        Request request = new Request(job, callback);
+        job.requests.add(request);
+        return request;
+    }
+
+    /**
+     * Stop the worker threads, queued loads are dropped
+     */
+    public void shutdown() {
+        mFetchWorkers.shutdown();
+        mDecodeWorkers.shutdown();
+    }
+
+    private static String key(String url, int width, int height) {
+        return url + "#" + width + "x" + height;
+    }
+
+    private void submit(Job job, Workers workers, Task task) {
+        task.priority = job.priority;
+        task.sequence = mSequence.incrementAndGet();
+        job.task = task;
+        job.workers = workers;
+        workers.submit(task);
+    }
+
+    private void finish(Job job, final T image, Exception error) {
+        final List<Request> requests;
+        // retained before an eviction from the memory cache can hand it on
+        final Retainer<T> retainer = image != null ? mRetainer : null;
+        if (retainer != null) retainer.retain(image);
+        // cached even when every request was cancelled during the decode
+        MemoryCache<T> memoryCache = mMemoryCache;
+        if (image != null && memoryCache != null) memoryCache.put(job.key, image);
+        synchronized (this) {
+            if (job.cancelled) {
+                if (retainer != null) retainer.release(image);
+                return;
+            }
+            job.finished = true;
+            job.data = null;
+            mJobs.remove(job.key);
+            requests = new ArrayList<Request>(job.requests);
+        }
+        final Exception failure = image == null && error == null ? new IOException("Cannot decode " + job.url) : error;
+        mCallbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (Request request : requests) {
+                        if (request.isCancelled()) continue;
+                        if (failure == null) request.mCallback.onLoaded(image);
+                        else request.mCallback.onFailed(failure);
+                    }
+                } finally {
+                    if (retainer != null) retainer.release(image);
+                }
+            }
+        });
+    }
+
+    private abstract static class Task implements Runnable, Comparable<Task> {
+        int priority;
+        long sequence;
+
+        abstract Task copy();
+
+        @Override
+        public int compareTo(Task other) {
+            if (priority != other.priority) return priority > other.priority ? -1 : 1;
+            return sequence > other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+
+    private final class FetchTask extends Task {
+        final Job job;
+
+        FetchTask(Job job) {
+            this.job = job;
+        }
+
+        @Override
+        Task copy() {
+            return new FetchTask(job);
+        }
+
+        @Override
+        public void run() {
+            synchronized (ImagePipeline.this) {
+                if (job.cancelled) return;
+            }
+            byte[] data;
+            try {
+                mFetchCount.incrementAndGet();
+                data = mFetcher.fetch(job.url);
+            } catch (Exception ex) {
+                finish(job, null, ex);
+                return;
+            }
+            DiskCache diskCache = mDiskCache;
+            if (diskCache != null) {
+                try {
+                    diskCache.put(job.url, data);
+                } catch (IOException ex) {
+                    // the downloaded copy is still decoded
+                }
+            }
+            synchronized (ImagePipeline.this) {
+                if (job.cancelled) return;
+                job.data = data;
+                submit(job, mDecodeWorkers, new DecodeTask(job));
+            }
+        }
+    }
+
+    private final class DecodeTask extends Task {
+        final Job job;
+
+        DecodeTask(Job job) {
+            this.job = job;
+        }
+
+        @Override
+        Task copy() {
+            return new DecodeTask(job);
+        }
+
+        @Override
+        public void run() {
+            byte[] data;
+            synchronized (ImagePipeline.this) {
+                if (job.cancelled) return;
+                data = job.data;
+            }
+            if (data == null) {
+                data = readDiskCache(job.url);
+                if (data == null) {
+                    synchronized (ImagePipeline.this) {
+                        if (!job.cancelled) submit(job, mFetchWorkers, new FetchTask(job));
+                    }
+                    return;
+                }
+            }
+            try {
+                finish(job, mDecoder.decode(data, job.width, job.height), null);
+            } catch (Exception ex) {
+                finish(job, null, ex);
+            } catch (OutOfMemoryError ex) {
+                finish(job, null, new IOException("Out of memory decoding " + job.url));
+            }
+        }
+    }
+
+    private byte[] readDiskCache(String url) {
+        DiskCache diskCache = mDiskCache;
+        if (diskCache == null) return null;
+        try {
+            return diskCache.get(url);
+        } catch (IOException ex) {
+            // treated as a miss, the image is fetched again
+            return null;
+        }
+    }
+
+    /**
+     * Fixed number of daemon threads taking tasks from a priority queue
+     */
+    private static final class Workers {
+        private final PriorityBlockingQueue<Task> mQueue = new PriorityBlockingQueue<Task>();
+        private final Thread[] mThreads;
+
+        Workers(String name, int count) {
+            if (count <= 0) throw new IllegalArgumentException("count <= 0");
+            mThreads = new Thread[count];
+            for (int i = 0; i < count; i++) {
+                mThreads[i] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            while (!Thread.currentThread().isInterrupted()) {
+                                mQueue.take().run();
+                            }
+                        } catch (InterruptedException ex) {
+                            // shut down
+                        }
+                    }
+                }, name + "-" + (i + 1));
+                mThreads[i].setDaemon(true);
+                mThreads[i].start();
+            }
+        }
+
+        void submit(Task task) {
+            mQueue.add(task);
+        }
+
+        boolean remove(Task task) {
+            return task != null && mQueue.remove(task);
+        }
+
+        void shutdown() {
+            mQueue.clear();
+            for (Thread thread : mThreads) {
+                thread.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Downloads with HttpURLConnection
+     */
+    public static class HttpFetcher implements Fetcher {
+        @Override
+        public byte[] fetch(String url) throws IOException {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            try {
+                connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+                connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+                int code = connection.getResponseCode();
+                if (code < 200 || code >= 300) throw new IOException("HTTP " + code + " for " + url);
+                InputStream in = connection.getInputStream();
+                try {
+                    int length = connection.getContentLength();
+                    ByteArrayOutputStream out = new ByteArrayOutputStream(length > 0 ? length : 16 * 1024);
+                    byte[] buffer = new byte[16 * 1024];
+                    int count;
+                    while ((count = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, count);
+                    }
+                    return out.toByteArray();
+                } finally {
+                    in.close();
+                }
+            } finally {
+                connection.disconnect();
+            }
+        }
+    }
+}
@@ -3,7 +3,10 @@ package amazonite.android.util;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
 import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.AsyncTask;
@@ -11,6 +14,7 @@ import android.util.Log;
 import android.widget.ImageView;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 
 
@@ -18,12 +22,14 @@ public class ImageUtil {
     private static final String TAG = ImageUtil.class.getSimpleName();
 
     /**
-     * Set image by url using AsyncTask
+     * Set image by url using the shared ImageLoader, call it on the main thread.
+     * Images are cached in memory and in the app cache directory.
+     * A recycled view bound to another url cancels its previous load
      * @param url - image url
      * @param imageView - image view that needs to set image
      */
     public static void loadImage(final String url, final ImageView imageView) {
-        new DownloadImageTask(imageView).execute(url);
+        ImageLoader.getInstance(imageView.getContext()).load(url, imageView);
     }
 
 
@@ -63,6 +69,171 @@ public class ImageUtil {
         }
     }
 
+    /**
+     * convert byte array to Bitmap no smaller than the target size, decoded with a power of two
+     * inSampleSize and scaled down to the target size, so a large image never needs full-size memory
+     *
+     * @param byteArray - image as byte array
+     * @param reqWidth  target width in pixels, 0 for no limit
+     * @param reqHeight target height in pixels, 0 for no limit
+     * @return - image bitmap file
+     */
+    public static Bitmap byteToBitmap(byte[] byteArray, int reqWidth, int reqHeight) {
+        return byteToBitmap(byteArray, reqWidth, reqHeight, null);
+    }
+
+    /**
+     * convert byte array to Bitmap no smaller than the target size like byteToBitmap(byte[], int, int),
+     * decoding and scaling into bitmaps taken from 'pool' where the platform allows
+     *
+     * @param byteArray - image as byte array
+     * @param reqWidth  target width in pixels, 0 for no limit
+     * @param reqHeight target height in pixels, 0 for no limit
+     * @param pool      - bitmaps to reuse, the intermediate bitmap goes back to it, null to allocate
+     * @return - mutable image bitmap file
+     */
+    public static Bitmap byteToBitmap(byte[] byteArray, int reqWidth, int reqHeight, BitmapPool pool) {
+        if (byteArray == null || byteArray.length == 0) return null;
+
+        try {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeByteArray(byteArray, 0, byteArray.length, options);
+            if (!setSampleSize(options, reqWidth, reqHeight)) return null;
+            Bitmap bitmap;
+            if (pool != null && pool.setInBitmap(options)) {
+                try {
+                    bitmap = BitmapFactory.decodeByteArray(byteArray, 0, byteArray.length, options);
+                } catch (IllegalArgumentException ex) {
+                    // the image cannot be decoded into the pooled bitmap
+                    pool.put(options.inBitmap);
+                    options.inBitmap = null;
+                    bitmap = BitmapFactory.decodeByteArray(byteArray, 0, byteArray.length, options);
+                }
+            } else {
+                bitmap = BitmapFactory.decodeByteArray(byteArray, 0, byteArray.length, options);
+            }
+            return scaleToTarget(bitmap, reqWidth, reqHeight, pool);
+        } catch (Exception ex) {
+            Log.e(TAG, "byteToBitmap: ", ex);
+            return null;
+        }
+    }
+
+    /**
+     * read a stream to a Bitmap no smaller than the target size, see byteToBitmap(byte[], int, int)
+     *
+     * @param inputStream - encoded image, read to the end but not closed
+     * @param reqWidth  target width in pixels, 0 for no limit
+     * @param reqHeight target height in pixels, 0 for no limit
+     * @return - image bitmap file
+     */
+    public static Bitmap streamToBitmap(InputStream inputStream, int reqWidth, int reqHeight) {
+        if (inputStream == null) return null;
+
+        try {
+            // the bounds pass needs the data twice, the encoded bytes are small next to the pixels
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[16 * 1024];
+            int count;
+            while ((count = inputStream.read(buffer)) != -1) {
+                stream.write(buffer, 0, count);
+            }
+            return byteToBitmap(stream.toByteArray(), reqWidth, reqHeight);
+        } catch (IOException ex) {
+            Log.e(TAG, "streamToBitmap: ", ex);
+            return null;
+        }
+    }
+
+    /**
+     * decode an image file to a Bitmap no smaller than the target size, see byteToBitmap(byte[], int, int)
+     *
+     * @param path - image file path
+     * @param reqWidth  target width in pixels, 0 for no limit
+     * @param reqHeight target height in pixels, 0 for no limit
+     * @return - image bitmap file
+     */
+    public static Bitmap fileToBitmap(String path, int reqWidth, int reqHeight) {
+        if (path == null) return null;
+
+        try {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeFile(path, options);
+            if (!setSampleSize(options, reqWidth, reqHeight)) return null;
+            return scaleToTarget(BitmapFactory.decodeFile(path, options), reqWidth, reqHeight, null);
+        } catch (Exception ex) {
+            Log.e(TAG, "fileToBitmap: ", ex);
+            return null;
+        }
+    }
+
+    /**
+     * Largest power of two that keeps the decoded image at least as large as the target in both dimensions
+     *
+     * @param width     image width
+     * @param height    image height
+     * @param reqWidth  target width, 0 for no limit
+     * @param reqHeight target height, 0 for no limit
+     * @return inSampleSize for BitmapFactory.Options
+     */
+    public static int calculateInSampleSize(int width, int height, int reqWidth, int reqHeight) {
+        if (reqWidth <= 0 && reqHeight <= 0) return 1;
+        int sampleSize = 1;
+        while ((reqWidth <= 0 || width / (sampleSize * 2) >= reqWidth)
+                && (reqHeight <= 0 || height / (sampleSize * 2) >= reqHeight)) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Scale that makes the image just cover the target, at most 1
+     *
+     * @param width     image width
+     * @param height    image height
+     * @param reqWidth  target width, 0 for no limit
+     * @param reqHeight target height, 0 for no limit
+     * @return scale of both dimensions
+     */
+    public static float calculateScale(int width, int height, int reqWidth, int reqHeight) {
+        float scale = 0;
+        if (reqWidth > 0) scale = (float) reqWidth / width;
+        if (reqHeight > 0) scale = Math.max(scale, (float) reqHeight / height);
+        return scale <= 0 || scale >= 1 ? 1 : scale;
+    }
+
+    private static boolean setSampleSize(BitmapFactory.Options options, int reqWidth, int reqHeight) {
+        if (options.outWidth <= 0 || options.outHeight <= 0) return false;
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, reqWidth, reqHeight);
+        options.inJustDecodeBounds = false;
+        return true;
+    }
+
+    private static Bitmap scaleToTarget(Bitmap bitmap, int reqWidth, int reqHeight, BitmapPool pool) {
+        if (bitmap == null) return null;
+        float scale = calculateScale(bitmap.getWidth(), bitmap.getHeight(), reqWidth, reqHeight);
+        if (scale == 1) return bitmap;
+        int width = Math.max(1, Math.round(bitmap.getWidth() * scale));
+        int height = Math.max(1, Math.round(bitmap.getHeight() * scale));
+        if (pool != null) {
+            Bitmap scaled = drawScaled(bitmap, width, height, pool);
+            pool.put(bitmap);
+            return scaled;
+        }
+        Bitmap scaled = Bitmap.createScaledBitmap(bitmap, width, height, true);
+        if (scaled != bitmap) bitmap.recycle();
+        return scaled;
+    }
+
+    private static Bitmap drawScaled(Bitmap bitmap, int width, int height, BitmapPool pool) {
+        Bitmap.Config config = bitmap.getConfig() == null ? Bitmap.Config.ARGB_8888 : bitmap.getConfig();
+        Bitmap scaled = pool.getOrCreate(width, height, config);
+        new Canvas(scaled).drawBitmap(bitmap, null, new Rect(0, 0, width, height), new Paint(Paint.FILTER_BITMAP_FLAG));
+        return scaled;
+    }
+
     /**
      * convert Drawable to Bitmap
      *
@@ -124,10 +295,33 @@ public class ImageUtil {
         }
     }
 
+    /**
+     * Scale image into a bitmap taken from 'pool', the source bitmap is left as is
+     *
+     * @param bitmap - image bitmap file
+     * @param scaleWidth  positive scale of width
+     * @param scaleHeight positive scale of height
+     * @param pool - bitmaps to reuse
+     * @return - scaled bitmap image
+     */
+    public static Bitmap scaleImage(Bitmap bitmap, float scaleWidth, float scaleHeight, BitmapPool pool) {
+        if (bitmap == null) return null;
+        try {
+            int width = Math.max(1, Math.round(bitmap.getWidth() * scaleWidth));
+            int height = Math.max(1, Math.round(bitmap.getHeight() * scaleHeight));
+            return drawScaled(bitmap, width, height, pool);
+        } catch (Exception ex) {
+            Log.e(TAG, "scaleImage: ", ex);
+            return null;
+        }
+    }
+
     /**
      * AsyncTask
      * Download and set image from url
+     * @deprecated use ImageLoader, which limits concurrent downloads and cancels loads of recycled views
      */
+    @Deprecated
     @SuppressWarnings({"deprecation","StaticFieldLeak"})
     public static class DownloadImageTask extends AsyncTask<String, Void, Bitmap> {
         final ImageView mImageView;
@@ -141,7 +335,8 @@ public class ImageUtil {
             Bitmap bitmap = null;
             try {
                 InputStream inputStream = new java.net.URL(url).openStream();
-                bitmap = BitmapFactory.decodeStream(inputStream);
+                bitmap = streamToBitmap(inputStream, mImageView.getWidth(), mImageView.getHeight());
+                inputStream.close();
             } catch (Exception e) {
                 e.printStackTrace();
             }
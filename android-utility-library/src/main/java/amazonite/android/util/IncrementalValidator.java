@@ -0,0 +1,297 @@
+package amazonite.android.util;
+
+/**
+ * Validates text as it is typed. Each TextRule format runs as a resumable state machine, so appending
+ * characters only feeds the new ones and the result is kept until the text changes again.
+ * Other edits (deletes, inserts in the middle) rescan the text once. Whitespace at either end is ignored
+ * like in TextRule: trailing whitespace is only fed when a later character follows it.
+ * Not thread safe, use one instance per field.
+ */
+public class IncrementalValidator {
+    private static final int DEAD = -1;
+    private static final int START = 0;
+    // email
+    private static final int EMAIL_LABEL_START = 1;
+    private static final int EMAIL_LABEL = 2;
+    // phone: '+' country code, '(' area code ')', number
+    private static final int PHONE_PLUS = 1;
+    private static final int PHONE_COUNTRY_DIGITS = 2;
+    private static final int PHONE_COUNTRY_SEPARATORS = 3;
+    private static final int PHONE_AREA_OPEN = 4;
+    private static final int PHONE_AREA_DIGITS = 5;
+    private static final int PHONE_AREA_SEPARATORS = 6;
+    private static final int PHONE_NUMBER = 7;
+    // integer
+    private static final int INTEGER_SIGN = 1;
+    private static final int INTEGER_DIGITS = 2;
+
+    private final TextRule mRule;
+    private final boolean mRequired;
+    private int mLength;
+    // index of the first non-whitespace character, -1 while the text is blank
+    private int mContentStart = -1;
+    // characters before this index are fed to the state machine
+    private int mFedEnd;
+    private int mState;
+    private int mCount;
+    private int mSecondCount;
+    private boolean mLastDigit;
+    private boolean mNegative;
+    private long mValue;
+    private int mRescanCount;
+
+    /**
+     * @param rule format the text must have
+     * @param required true to treat blank text as invalid
+     */
+    public IncrementalValidator(TextRule rule, boolean required) {
+        if (rule == null) throw new NullPointerException();
+        mRule = rule;
+        mRequired = required;
+    }
+
+    public TextRule getRule() {
+        return mRule;
+    }
+
+    /**
+     * @return true if the text is blank
+     */
+    public boolean isEmpty() {
+        return mContentStart < 0;
+    }
+
+    /**
+     * @return true if the current text passes the rule, no characters are scanned
+     */
+    public boolean isValid() {
+        if (mContentStart < 0) return !mRequired && mRule.check("", 0, 0);
+        return isAccepting();
+    }
+
+    /**
+     * @return number of full rescans so far, appends do not rescan
+     */
+    public int getRescanCount() {
+        return mRescanCount;
+    }
+
+    /**
+     * Report a change with the arguments of TextWatcher.onTextChanged: 'count' characters at 'start'
+     * replaced 'before' characters. Appends are fed incrementally, other changes rescan 'text'
+     * @return true if the new text passes the rule
+     */
+    public boolean onTextChanged(CharSequence text, int start, int before, int count) {
+        if (before == 0 && start == mLength && text.length() == mLength + count) {
+            feed(text, start, start + count);
+            mLength = text.length();
+            return isValid();
+        }
+        return setText(text);
+    }
+
+    /**
+     * Scan 'text' from the beginning
+     * @return true if 'text' passes the rule
+     */
+    public boolean setText(CharSequence text) {
+        mRescanCount++;
+        mLength = 0;
+        mContentStart = -1;
+        mFedEnd = 0;
+        mState = START;
+        mCount = 0;
+        mSecondCount = 0;
+        mLastDigit = false;
+        mNegative = false;
+        mValue = 0;
+        feed(text, 0, text.length());
+        mLength = text.length();
+        return isValid();
+    }
+
+    private void feed(CharSequence text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c <= ' ') continue;
+            if (mContentStart < 0) {
+                mContentStart = i;
+                mFedEnd = i;
+            }
+            // whitespace inside the text is fed once a character follows it
+            for (int j = mFedEnd; j < i; j++) {
+                step(text.charAt(j));
+            }
+            step(c);
+            mFedEnd = i + 1;
+        }
+    }
+
+    private void step(char c) {
+        if (mState == DEAD) return;
+        switch (mRule) {
+            case REQUIRED:
+                break;
+            case EMAIL:
+                stepEmail(c);
+                break;
+            case PHONE_NUMBER:
+                stepPhone(c);
+                break;
+            case USER_NAME:
+                if (!TextScanner.isUserNameChar(c)) mState = DEAD;
+                break;
+            case PERSON_NAME:
+                if (!TextScanner.isPersonNameChar(c)) mState = DEAD;
+                break;
+            case INTEGER:
+                stepInteger(c);
+                break;
+        }
+    }
+
+    private void stepEmail(char c) {
+        // mCount: length of the local part or the current label, mSecondCount: index of the current label
+        switch (mState) {
+            case START:
+                if (c == '@' && mCount > 0) {
+                    mState = EMAIL_LABEL_START;
+                } else if (TextScanner.isEmailLocalChar(c) && mCount < TextScanner.EMAIL_LOCAL_MAX) {
+                    mCount++;
+                } else {
+                    mState = DEAD;
+                }
+                break;
+            case EMAIL_LABEL_START:
+                if (TextScanner.isAsciiLetterOrDigit(c)) {
+                    mState = EMAIL_LABEL;
+                    mCount = 1;
+                } else {
+                    mState = DEAD;
+                }
+                break;
+            case EMAIL_LABEL:
+                if (c == '.') {
+                    mState = EMAIL_LABEL_START;
+                    mSecondCount++;
+                } else if ((TextScanner.isAsciiLetterOrDigit(c) || c == '-')
+                        && mCount < (mSecondCount == 0 ? TextScanner.EMAIL_FIRST_LABEL_MAX : TextScanner.EMAIL_LABEL_MAX)) {
+                    mCount++;
+                } else {
+                    mState = DEAD;
+                }
+                break;
+        }
+    }
+
+    private void stepPhone(char c) {
+        // mCount: country code digits, mSecondCount: length of the number, which may start inside the country code
+        boolean digit = TextScanner.isDigit(c);
+        boolean separator = TextScanner.isPhoneSeparator(c);
+        switch (mState) {
+            case START:
+                if (c == '+') mState = PHONE_PLUS;
+                else if (c == '(') mState = PHONE_AREA_OPEN;
+                else if (digit) startNumber();
+                else mState = DEAD;
+                break;
+            case PHONE_PLUS:
+                if (digit) {
+                    mState = PHONE_COUNTRY_DIGITS;
+                    mCount = 1;
+                } else {
+                    mState = DEAD;
+                }
+                break;
+            case PHONE_COUNTRY_DIGITS:
+                if (digit) {
+                    // the number may start at the second country code digit
+                    mSecondCount++;
+                    mCount++;
+                    mLastDigit = true;
+                } else if (separator) {
+                    mState = PHONE_COUNTRY_SEPARATORS;
+                    if (mSecondCount > 0) mSecondCount++;
+                    mLastDigit = false;
+                } else if (c == '(') {
+                    mState = PHONE_AREA_OPEN;
+                } else {
+                    mState = DEAD;
+                }
+                break;
+            case PHONE_COUNTRY_SEPARATORS:
+                if (separator) {
+                    if (mSecondCount > 0) mSecondCount++;
+                } else if (c == '(') {
+                    mState = PHONE_AREA_OPEN;
+                } else if (digit) {
+                    mState = PHONE_NUMBER;
+                    mSecondCount++;
+                    mLastDigit = true;
+                } else {
+                    mState = DEAD;
+                }
+                break;
+            case PHONE_AREA_OPEN:
+                mState = digit ? PHONE_AREA_DIGITS : DEAD;
+                break;
+            case PHONE_AREA_DIGITS:
+                if (c == ')') mState = PHONE_AREA_SEPARATORS;
+                else if (!digit) mState = DEAD;
+                break;
+            case PHONE_AREA_SEPARATORS:
+                if (digit) startNumber();
+                else if (!separator) mState = DEAD;
+                break;
+            case PHONE_NUMBER:
+                if (digit || separator) {
+                    mSecondCount++;
+                    mLastDigit = digit;
+                } else {
+                    mState = DEAD;
+                }
+                break;
+        }
+    }
+
+    private void startNumber() {
+        mState = PHONE_NUMBER;
+        mSecondCount = 1;
+        mLastDigit = true;
+    }
+
+    private void stepInteger(char c) {
+        boolean digit = TextScanner.isDigit(c);
+        if (mState == START && (c == '+' || c == '-')) {
+            mState = INTEGER_SIGN;
+            mNegative = c == '-';
+            return;
+        }
+        if (!digit) {
+            mState = DEAD;
+            return;
+        }
+        mState = INTEGER_DIGITS;
+        // accumulate negatively, the negative range is one larger
+        long limit = mNegative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        if (mValue < limit / 10 || mValue * 10 < limit + (c - '0')) {
+            mState = DEAD;
+            return;
+        }
+        mValue = mValue * 10 - (c - '0');
+    }
+
+    private boolean isAccepting() {
+        if (mState == DEAD) return false;
+        switch (mRule) {
+            case EMAIL:
+                return mState == EMAIL_LABEL && mSecondCount >= 1;
+            case PHONE_NUMBER:
+                return (mState == PHONE_NUMBER || mState == PHONE_COUNTRY_DIGITS) && mSecondCount >= 3 && mLastDigit;
+            case INTEGER:
+                return mState == INTEGER_DIGITS;
+            default:
+                return true;
+        }
+    }
+}
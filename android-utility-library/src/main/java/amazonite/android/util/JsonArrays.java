@@ -0,0 +1,137 @@
+package amazonite.android.util;
+
+/**
+ * Edits JSON array text in place by locating top-level element boundaries,
+ * so appending or dropping an element never deserializes the other elements.
+ */
+final class JsonArrays {
+    static final String EMPTY = "[]";
+
+    private JsonArrays() {
+    }
+
+    /**
+     * @param json JSON array, null is treated as empty
+     * @return number of top-level elements
+     */
+    static int size(String json) {
+        if (json == null) return 0;
+        int position = firstElement(json);
+        int size = 0;
+        while (json.charAt(position) != ']') {
+            size++;
+            position = nextElement(json, elementEnd(json, position));
+        }
+        return size;
+    }
+
+    /**
+     * @param json JSON array, null is treated as empty
+     * @param element JSON of the element to be added
+     * @return JSON array with 'element' added at the end
+     */
+    static String append(String json, String element) {
+        if (json == null || json.charAt(firstElement(json)) == ']') {
+            return "[" + element + "]";
+        }
+        int end = json.lastIndexOf(']');
+        return new StringBuilder(json.length() + element.length() + 1)
+                .append(json, 0, end)
+                .append(',')
+                .append(element)
+                .append(json, end, json.length())
+                .toString();
+    }
+
+    /**
+     * @param json JSON array, null is treated as empty
+     * @param count number of elements to drop from the start
+     * @return JSON array without its first 'count' elements
+     */
+    static String removeFirst(String json, int count) {
+        if (json == null) return EMPTY;
+        if (count <= 0) return json;
+        int position = firstElement(json);
+        for (int i = 0; i < count; i++) {
+            if (json.charAt(position) == ']') return EMPTY;
+            position = nextElement(json, elementEnd(json, position));
+        }
+        return "[" + json.substring(position);
+    }
+
+    /**
+     * @param json JSON array, null is treated as empty
+     * @param index index of the element to be removed
+     * @return JSON array without the element at 'index' or null if 'index' is out of bounds
+     */
+    static String remove(String json, int index) {
+        if (json == null || index < 0) return null;
+        int previousDelimiter = -1;
+        int position = firstElement(json);
+        for (int i = 0; i < index; i++) {
+            if (json.charAt(position) == ']') return null;
+            previousDelimiter = elementEnd(json, position);
+            position = nextElement(json, previousDelimiter);
+        }
+        if (json.charAt(position) == ']') return null;
+
+        int end = elementEnd(json, position);
+        if (json.charAt(end) == ',') {
+            return json.substring(0, position) + json.substring(nextElement(json, end));
+        }
+        if (previousDelimiter < 0) return EMPTY;
+        return json.substring(0, previousDelimiter) + json.substring(end);
+    }
+
+    private static int firstElement(String json) {
+        int start = json.indexOf('[');
+        if (start < 0) throw new IllegalArgumentException("Not a JSON array");
+        return skipWhitespace(json, start + 1);
+    }
+
+    private static int nextElement(String json, int delimiter) {
+        return json.charAt(delimiter) == ']' ? delimiter : skipWhitespace(json, delimiter + 1);
+    }
+
+    private static int skipWhitespace(String json, int position) {
+        while (position < json.length() && Character.isWhitespace(json.charAt(position))) {
+            position++;
+        }
+        if (position == json.length()) throw new IllegalArgumentException("Unterminated JSON array");
+        return position;
+    }
+
+    /**
+     * @return index of the ',' or ']' that ends the element starting at 'start'
+     */
+    private static int elementEnd(String json, int start) {
+        int depth = 0;
+        boolean inString = false;
+        for (int i = start; i < json.length(); i++) {
+            char c = json.charAt(i);
+            if (inString) {
+                if (c == '\\') i++;
+                else if (c == '"') inString = false;
+                continue;
+            }
+            switch (c) {
+                case '"':
+                    inString = true;
+                    break;
+                case '{':
+                case '[':
+                    depth++;
+                    break;
+                case '}':
+                case ']':
+                    if (depth == 0) return i;
+                    depth--;
+                    break;
+                case ',':
+                    if (depth == 0) return i;
+                    break;
+            }
+        }
+        throw new IllegalArgumentException("Unterminated JSON array");
+    }
+}
@@ -3,8 +3,6 @@ package amazonite.android.util;
 import android.content.Context;
 import android.util.Log;
 
-import com.google.gson.Gson;
-
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -49,8 +47,7 @@ public class JsonUtil {
     public static <T> T getObjectFromAssetJson(Context context, String filePath, Class<T> ObjType) {
         try {
             String json = readJsonFromAsset(context, filePath);
-            Object value = new Gson().fromJson(json, ObjType);
-            return (T) value;
+            return ObjectSerializer.fromJson(json, ObjType);
         } catch (Exception ex) {
             Log.e(TAG, "getObjectFromAssetJson: ", ex);
         }
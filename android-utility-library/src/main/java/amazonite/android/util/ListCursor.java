@@ -0,0 +1,134 @@
+package amazonite.android.util;
+
+import com.google.gson.JsonIOException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates a stored JSON array element by element, only the current element is deserialized.
+ * Skipped elements are scanned without being parsed into objects.
+ * Read errors are thrown as JsonIOException / JsonSyntaxException like Gson does.
+ */
+public class ListCursor<T> implements Iterator<T>, Closeable {
+    private final JsonReader mReader;
+    private final TypeAdapter<T> mAdapter;
+    private final Class<T> mClassOfT;
+    private boolean mDone;
+    private int mPosition;
+
+    /**
+     * @param json JSON array string, null for an empty cursor
+     * @param classOfT element type
+     */
+    public ListCursor(String json, Class<T> classOfT) {
+        this(json != null ? new StringReader(json) : null, classOfT);
+    }
+
+    /**
+     * @param in reader of a JSON array, null for an empty cursor
+     * @param classOfT element type
+     */
+    public ListCursor(Reader in, Class<T> classOfT) {
+        mClassOfT = classOfT;
+        mAdapter = ObjectSerializer.getGson().getAdapter(classOfT);
+        if (in == null) {
+            mReader = null;
+            mDone = true;
+            return;
+        }
+        mReader = new JsonReader(in);
+        try {
+            mReader.beginArray();
+        } catch (IOException ex) {
+            throw new JsonIOException(ex);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (mDone) return false;
+        try {
+            if (mReader.peek() != JsonToken.END_ARRAY) return true;
+            mReader.endArray();
+            mDone = true;
+            return false;
+        } catch (IOException ex) {
+            throw new JsonIOException(ex);
+        }
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        try {
+            T value = ObjectSerializer.readElement(mReader, mAdapter, mClassOfT);
+            mPosition++;
+            return value;
+        } catch (IOException ex) {
+            throw new JsonIOException(ex);
+        }
+    }
+
+    /**
+     * Skip up to 'count' elements without deserializing them
+     * @param count number of elements to skip
+     * @return number of elements skipped
+     */
+    public int skip(int count) {
+        int skipped = 0;
+        try {
+            while (skipped < count && hasNext()) {
+                mReader.skipValue();
+                mPosition++;
+                skipped++;
+            }
+        } catch (IOException ex) {
+            throw new JsonIOException(ex);
+        }
+        return skipped;
+    }
+
+    /**
+     * Read up to 'limit' elements from the current position
+     * @param limit maximum number of elements
+     * @return ArrayList with at most 'limit' elements
+     */
+    public ArrayList<T> next(int limit) {
+        ArrayList<T> page = new ArrayList<T>(Math.max(0, Math.min(limit, 64)));
+        while (page.size() < limit && hasNext()) {
+            page.add(next());
+        }
+        return page;
+    }
+
+    /**
+     * @return index of the next element
+     */
+    public int position() {
+        return mPosition;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+        mDone = true;
+        if (mReader == null) return;
+        try {
+            mReader.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
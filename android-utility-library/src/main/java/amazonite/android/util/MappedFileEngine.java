@@ -0,0 +1,336 @@
+package amazonite.android.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * StorageEngine backed by a memory-mapped, append-only log file.
+ * Every write appends one CRC-checked record holding all changes of a batch, so a write costs
+ * the size of the changes instead of the size of the whole store. On load, a torn or corrupt
+ * record at the end of the log (ex. after a crash) is ignored. When the log is full it is compacted
+ * into a new file holding only the live values, which then replaces the old one atomically.
+ * Asynchronous writes are in the OS page cache right away (they survive a process crash) and reach
+ * the disk when the OS flushes the mapped pages, synchronous writes force them to disk before returning.
+ * A file must not be opened by more than one MappedFileEngine at a time.
+ */
+public class MappedFileEngine implements StorageEngine, Closeable {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int MAGIC = 0x41444231; // "ADB1"
+    private static final int FILE_HEADER_SIZE = 4;
+    // payload length + CRC32 of the payload
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int MIN_CAPACITY = 64 * 1024;
+
+    private static final byte OP_REMOVE = 0;
+    private static final byte OP_INT = 1;
+    private static final byte OP_LONG = 2;
+    private static final byte OP_FLOAT = 3;
+    private static final byte OP_BOOLEAN = 4;
+    private static final byte OP_STRING = 5;
+    private static final byte OP_CLEAR = 6;
+
+    private final File mFile;
+    private final ConcurrentHashMap<String, Object> mValues = new ConcurrentHashMap<String, Object>();
+    private final CRC32 mCrc = new CRC32();
+    private RandomAccessFile mRandomAccessFile;
+    private MappedByteBuffer mBuffer;
+    private int mWritePosition;
+    private int mCompactionCount;
+
+    /**
+     * Open or create the store file and load all values
+     * @param file store file, created if it does not exist
+     */
+    public MappedFileEngine(File file) throws IOException {
+        mFile = file;
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            long length = randomAccessFile.length();
+            if (length > Integer.MAX_VALUE) throw new IOException("File too large: " + file);
+            map(randomAccessFile, Math.max(MIN_CAPACITY, (int) length));
+            if (length == 0) {
+                mBuffer.putInt(0, MAGIC);
+                mWritePosition = FILE_HEADER_SIZE;
+            } else {
+                if (mBuffer.getInt(0) != MAGIC) throw new IOException("Not a MappedFileEngine file: " + file);
+                mWritePosition = load();
+            }
+        } catch (IOException ex) {
+            randomAccessFile.close();
+            throw ex;
+        }
+    }
+
+    @Override
+    public int getInt(String key, int defValue) {
+        Object value = mValues.get(key);
+        return value != null ? (Integer) value : defValue;
+    }
+
+    @Override
+    public long getLong(String key, long defValue) {
+        Object value = mValues.get(key);
+        return value != null ? (Long) value : defValue;
+    }
+
+    @Override
+    public float getFloat(String key, float defValue) {
+        Object value = mValues.get(key);
+        return value != null ? (Float) value : defValue;
+    }
+
+    @Override
+    public boolean getBoolean(String key, boolean defValue) {
+        Object value = mValues.get(key);
+        return value != null ? (Boolean) value : defValue;
+    }
+
+    @Override
+    public String getString(String key, String defValue) {
+        Object value = mValues.get(key);
+        return value != null ? (String) value : defValue;
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return mValues.containsKey(key);
+    }
+
+    @Override
+    public boolean isEncrypted() {
+        return false;
+    }
+
+    @Override
+    public Map<String, ?> getAll() {
+        return new HashMap<String, Object>(mValues);
+    }
+
+    @Override
+    public synchronized boolean write(Map<String, ?> changes, boolean clear, boolean sync) {
+        if (mBuffer == null) throw new IllegalStateException("MappedFileEngine is closed");
+        try {
+            byte[] payload = encode(changes, clear);
+            if (payload.length == 0) return true;
+            if (mWritePosition + RECORD_HEADER_SIZE + payload.length > mBuffer.capacity()) {
+                compact(RECORD_HEADER_SIZE + payload.length);
+            }
+            writeRecord(mBuffer, mWritePosition, payload);
+            mWritePosition += RECORD_HEADER_SIZE + payload.length;
+            apply(changes, clear);
+            if (sync) mBuffer.force();
+            return true;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Rewrite the log so it holds only the live values
+     */
+    public synchronized void compact() throws IOException {
+        compact(0);
+    }
+
+    /**
+     * @return number of compactions since the file was opened
+     */
+    public synchronized int getCompactionCount() {
+        return mCompactionCount;
+    }
+
+    /**
+     * @return bytes used by the log, including overwritten values
+     */
+    public synchronized int getLogSize() {
+        return mWritePosition;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (mBuffer == null) return;
+        mBuffer.force();
+        mBuffer = null;
+        mRandomAccessFile.close();
+    }
+
+    private void map(RandomAccessFile randomAccessFile, int capacity) throws IOException {
+        mBuffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        mRandomAccessFile = randomAccessFile;
+    }
+
+    /**
+     * Replay all valid records and zero out a torn record at the end of the log
+     * @return position after the last valid record
+     */
+    private int load() throws IOException {
+        int position = FILE_HEADER_SIZE;
+        int capacity = mBuffer.capacity();
+        while (position + RECORD_HEADER_SIZE <= capacity) {
+            int length = mBuffer.getInt(position);
+            if (length == 0) return position;
+            if (length < 0 || position + RECORD_HEADER_SIZE + length > capacity) break;
+
+            byte[] payload = new byte[length];
+            ByteBuffer record = mBuffer.duplicate();
+            record.position(position + RECORD_HEADER_SIZE);
+            record.get(payload);
+            mCrc.reset();
+            mCrc.update(payload, 0, length);
+            if ((int) mCrc.getValue() != mBuffer.getInt(position + 4)) break;
+
+            replay(payload);
+            position += RECORD_HEADER_SIZE + length;
+        }
+        for (int i = position; i < capacity; i++) {
+            mBuffer.put(i, (byte) 0);
+        }
+        return position;
+    }
+
+    private void replay(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        while (in.available() > 0) {
+            byte op = in.readByte();
+            if (op == OP_CLEAR) {
+                mValues.clear();
+                continue;
+            }
+            String key = in.readUTF();
+            switch (op) {
+                case OP_REMOVE:
+                    mValues.remove(key);
+                    break;
+                case OP_INT:
+                    mValues.put(key, in.readInt());
+                    break;
+                case OP_LONG:
+                    mValues.put(key, in.readLong());
+                    break;
+                case OP_FLOAT:
+                    mValues.put(key, in.readFloat());
+                    break;
+                case OP_BOOLEAN:
+                    mValues.put(key, in.readBoolean());
+                    break;
+                case OP_STRING:
+                    byte[] bytes = new byte[in.readInt()];
+                    in.readFully(bytes);
+                    mValues.put(key, new String(bytes, UTF_8));
+                    break;
+                default:
+                    throw new IOException("Unknown record operation: " + op);
+            }
+        }
+    }
+
+    private void apply(Map<String, ?> changes, boolean clear) {
+        if (clear) mValues.clear();
+        for (Map.Entry<String, ?> entry : changes.entrySet()) {
+            if (entry.getValue() == null) mValues.remove(entry.getKey());
+            else mValues.put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private static byte[] encode(Map<String, ?> changes, boolean clear) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        if (clear) out.writeByte(OP_CLEAR);
+        for (Map.Entry<String, ?> entry : changes.entrySet()) {
+            Object value = entry.getValue();
+            if (value == null) {
+                out.writeByte(OP_REMOVE);
+                out.writeUTF(entry.getKey());
+            } else if (value instanceof Integer) {
+                out.writeByte(OP_INT);
+                out.writeUTF(entry.getKey());
+                out.writeInt((Integer) value);
+            } else if (value instanceof Long) {
+                out.writeByte(OP_LONG);
+                out.writeUTF(entry.getKey());
+                out.writeLong((Long) value);
+            } else if (value instanceof Float) {
+                out.writeByte(OP_FLOAT);
+                out.writeUTF(entry.getKey());
+                out.writeFloat((Float) value);
+            } else if (value instanceof Boolean) {
+                out.writeByte(OP_BOOLEAN);
+                out.writeUTF(entry.getKey());
+                out.writeBoolean((Boolean) value);
+            } else if (value instanceof String) {
+                byte[] utf8 = ((String) value).getBytes(UTF_8);
+                out.writeByte(OP_STRING);
+                out.writeUTF(entry.getKey());
+                out.writeInt(utf8.length);
+                out.write(utf8);
+            } else {
+                throw new IllegalArgumentException("Unsupported value type: " + value.getClass());
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Write payload and CRC first and the length last, a record with length 0 marks the end of the log
+     */
+    private void writeRecord(MappedByteBuffer buffer, int position, byte[] payload) {
+        mCrc.reset();
+        mCrc.update(payload, 0, payload.length);
+        ByteBuffer record = buffer.duplicate();
+        record.position(position + RECORD_HEADER_SIZE);
+        record.put(payload);
+        buffer.putInt(position + 4, (int) mCrc.getValue());
+        buffer.putInt(position, payload.length);
+    }
+
+    /**
+     * Write all live values into a temporary file with room for 'extraSpace' more bytes
+     * and atomically replace the store file with it
+     */
+    private void compact(int extraSpace) throws IOException {
+        byte[] snapshot = encode(mValues, false);
+        long required = (long) FILE_HEADER_SIZE + RECORD_HEADER_SIZE + snapshot.length + extraSpace;
+        long capacity = MIN_CAPACITY;
+        while (capacity < required * 2) {
+            capacity *= 2;
+        }
+        if (capacity > Integer.MAX_VALUE) throw new IOException("Store too large");
+
+        File tempFile = new File(mFile.getPath() + ".tmp");
+        RandomAccessFile randomAccessFile = new RandomAccessFile(tempFile, "rw");
+        MappedByteBuffer buffer;
+        try {
+            randomAccessFile.setLength(0);
+            buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            buffer.putInt(0, MAGIC);
+            if (snapshot.length > 0) writeRecord(buffer, FILE_HEADER_SIZE, snapshot);
+            buffer.force();
+            if (!tempFile.renameTo(mFile)) throw new IOException("Cannot replace " + mFile);
+        } catch (IOException ex) {
+            randomAccessFile.close();
+            tempFile.delete();
+            throw ex;
+        }
+
+        mRandomAccessFile.close();
+        mRandomAccessFile = randomAccessFile;
+        mBuffer = buffer;
+        mWritePosition = FILE_HEADER_SIZE + (snapshot.length > 0 ? RECORD_HEADER_SIZE + snapshot.length : 0);
+        mCompactionCount++;
+    }
+}
@@ -0,0 +1,178 @@
+package amazonite.android.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LRU cache bounded by the total size of its values rather than their number. Subclasses measure
+ * values with sizeOf and may reuse evicted values in onEvicted, which is called outside the lock.
+ * @param <T> cached value type
+ */
+public abstract class MemoryCache<T> {
+    private final LinkedHashMap<String, T> mEntries = new LinkedHashMap<String, T>(16, 0.75f, true);
+    private long mMaxSize;
+    private long mSize;
+    private long mHitCount;
+    private long mMissCount;
+    private long mEvictionCount;
+
+    /**
+     * @param maxSize maximum total size of the cached values, as measured by sizeOf
+     */
+    protected MemoryCache(long maxSize) {
+        if (maxSize <= 0) throw new IllegalArgumentException("maxSize <= 0");
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * @return size of 'value', must not change while it is cached
+     */
+    protected abstract int sizeOf(T value);
+
+    /**
+     * Called without the lock when 'value' was evicted or replaced, not for remove and clear
+     * @param key cache key
+     * @param value value no longer in the cache
+     */
+    protected void onEvicted(String key, T value) {
+    }
+
+    /**
+     * @param key cache key
+     * @return cached value or null
+     */
+    public synchronized T get(String key) {
+        T value = mEntries.get(key);
+        if (value != null) mHitCount++;
+        else mMissCount++;
+        return value;
+    }
+
+    /**
+     * Cache 'value', the least recently used values are evicted to make room.
+     * A value larger than the maximum size is not cached
+     * @param key cache key
+     * @param value value to cache
+     */
+    public void put(String key, T value) {
+        if (key == null || value == null) throw new NullPointerException();
+        List<Map.Entry<String, T>> evicted = new ArrayList<Map.Entry<String, T>>();
+        synchronized (this) {
+            int size = sizeOf(value);
+            if (size > mMaxSize) return;
+            T previous = mEntries.put(key, value);
+            mSize += size;
+            if (previous != null) {
+                mSize -= sizeOf(previous);
+                if (previous != value) evicted.add(new Entry<T>(key, previous));
+            }
+            trim(mMaxSize, evicted);
+        }
+        notifyEvicted(evicted);
+    }
+
+    /**
+     * @param key cache key
+     * @return removed value or null
+     */
+    public synchronized T remove(String key) {
+        T value = mEntries.remove(key);
+        if (value != null) mSize -= sizeOf(value);
+        return value;
+    }
+
+    /**
+     * Evict least recently used values until the total size is at most 'maxSize', ex. on memory pressure
+     * @param maxSize size to trim to, 0 evicts everything
+     */
+    public void trimToSize(long maxSize) {
+        List<Map.Entry<String, T>> evicted = new ArrayList<Map.Entry<String, T>>();
+        synchronized (this) {
+            trim(maxSize, evicted);
+        }
+        notifyEvicted(evicted);
+    }
+
+    /**
+     * Remove every value without calling onEvicted
+     */
+    public synchronized void clear() {
+        mEntries.clear();
+        mSize = 0;
+    }
+
+    /**
+     * @return total size of the cached values
+     */
+    public synchronized long getSize() {
+        return mSize;
+    }
+
+    public synchronized long getMaxSize() {
+        return mMaxSize;
+    }
+
+    public synchronized int getCount() {
+        return mEntries.size();
+    }
+
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * @return number of values evicted to make room or by trimToSize
+     */
+    public synchronized long getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    private void trim(long maxSize, List<Map.Entry<String, T>> evicted) {
+        Iterator<Map.Entry<String, T>> iterator = mEntries.entrySet().iterator();
+        while (mSize > maxSize && iterator.hasNext()) {
+            Map.Entry<String, T> eldest = iterator.next();
+            iterator.remove();
+            mSize -= sizeOf(eldest.getValue());
+            mEvictionCount++;
+            evicted.add(new Entry<T>(eldest.getKey(), eldest.getValue()));
+        }
+    }
+
+    private void notifyEvicted(List<Map.Entry<String, T>> evicted) {
+        for (Map.Entry<String, T> entry : evicted) {
+            onEvicted(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private static final class Entry<T> implements Map.Entry<String, T> {
+        private final String mKey;
+        private final T mValue;
+
+        Entry(String key, T value) {
+            mKey = key;
+            mValue = value;
+        }
+
+        @Override
+        public String getKey() {
+            return mKey;
+        }
+
+        @Override
+        public T getValue() {
+            return mValue;
+        }
+
+        @Override
+        public T setValue(T value) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
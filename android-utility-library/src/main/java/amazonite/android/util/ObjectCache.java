@@ -0,0 +1,119 @@
+package amazonite.android.util;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of deserialized objects, keyed by AppDatabase key and Object type.
+ * Cached objects are shared between callers, so treat them as read only.
+ */
+public class ObjectCache {
+    private final int mMaxSize;
+    private final LinkedHashMap<String, CachedObject> mEntries;
+    private long mGeneration;
+    private long mHitCount;
+    private long mMissCount;
+
+    private static class CachedObject {
+        final Class<?> type;
+        final Object value;
+
+        CachedObject(Class<?> type, Object value) {
+            this.type = type;
+            this.value = value;
+        }
+    }
+
+    /**
+     * @param maxSize maximum number of cached objects
+     */
+    public ObjectCache(int maxSize) {
+        if (maxSize <= 0) throw new IllegalArgumentException("maxSize <= 0");
+        mMaxSize = maxSize;
+        mEntries = new LinkedHashMap<String, CachedObject>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedObject> eldest) {
+                return size() > mMaxSize;
+            }
+        };
+    }
+
+    /**
+     * @param key AppDatabase key
+     * @param type Object type
+     * @return cached Object or null if not cached with the same type
+     */
+    public synchronized Object get(String key, Class<?> type) {
+        CachedObject entry = mEntries.get(key);
+        if (entry != null && entry.type == type) {
+            mHitCount++;
+            return entry.value;
+        }
+        mMissCount++;
+        return null;
+    }
+
+    /**
+     * Current generation, read it before loading a value and pass it to {@link #put}
+     * @return number of invalidations so far
+     */
+    public synchronized long generation() {
+        return mGeneration;
+    }
+
+    /**
+     * Cache 'value' unless an invalidation happened after 'generation' was read
+     * @param key AppDatabase key
+     * @param type Object type
+     * @param value deserialized Object
+     * @param generation value of {@link #generation()} before the value was loaded
+     */
+    public synchronized void put(String key, Class<?> type, Object value, long generation) {
+        if (value == null || generation != mGeneration) return;
+        mEntries.put(key, new CachedObject(type, value));
+    }
+
+    /**
+     * Remove cached objects of the given keys
+     * @param keys AppDatabase keys
+     */
+    public synchronized void invalidate(Collection<String> keys) {
+        mGeneration++;
+        for (String key : keys) {
+            mEntries.remove(key);
+        }
+    }
+
+    /**
+     * Remove all cached objects
+     */
+    public synchronized void invalidateAll() {
+        mGeneration++;
+        mEntries.clear();
+    }
+
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    public int maxSize() {
+        return mMaxSize;
+    }
+
+    public synchronized long hitCount() {
+        return mHitCount;
+    }
+
+    public synchronized long missCount() {
+        return mMissCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long accesses = mHitCount + mMissCount;
+        int hitPercent = accesses != 0 ? (int) (100 * mHitCount / accesses) : 0;
+        return "ObjectCache[maxSize=" + mMaxSize + ",size=" + mEntries.size() + ",hits=" + mHitCount
+                + ",misses=" + mMissCount + ",hitRate=" + hitPercent + "%]";
+    }
+}
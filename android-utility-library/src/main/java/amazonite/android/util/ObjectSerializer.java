@@ -0,0 +1,159 @@
+package amazonite.android.util;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shared Gson instance used by AppDatabase and JsonUtil.
+ * Gson caches the type adapter of every class it has seen, so reusing one instance avoids
+ * rebuilding the reflective adapters on every call.
+ */
+public class ObjectSerializer {
+    public static final Type STRING_LIST_TYPE = new TypeToken<List<String>>(){}.getType();
+
+    private static final GsonBuilder sBuilder = new GsonBuilder();
+    private static volatile Gson sGson;
+
+    /**
+     * @return shared Gson instance with all registered type adapters
+     */
+    public static Gson getGson() {
+        Gson gson = sGson;
+        if (gson == null) {
+            synchronized (ObjectSerializer.class) {
+                gson = sGson;
+                if (gson == null) {
+                    gson = sBuilder.create();
+                    gson.getAdapter(TypeToken.get(STRING_LIST_TYPE));
+                    sGson = gson;
+                }
+            }
+        }
+        return gson;
+    }
+
+    /**
+     * Register a type adapter (ex. a generated, non-reflective adapter of a hot model class).
+     * Register adapters at application start, before the first object is serialized
+     * @param type type the adapter handles
+     * @param typeAdapter TypeAdapter, JsonSerializer, JsonDeserializer or InstanceCreator
+     */
+    public static synchronized void registerTypeAdapter(Type type, Object typeAdapter) {
+        sBuilder.registerTypeAdapter(type, typeAdapter);
+        sGson = null;
+    }
+
+    /**
+     * Register a type adapter factory (ex. the factory generated by an annotation processor)
+     * @param factory factory to be added
+     */
+    public static synchronized void registerTypeAdapterFactory(TypeAdapterFactory factory) {
+        sBuilder.registerTypeAdapterFactory(factory);
+        sGson = null;
+    }
+
+    /**
+     * Resolve and cache adapters of the given types so the first real call does not pay for it
+     * @param types model types to warm up
+     */
+    public static void warmUp(Type... types) {
+        Gson gson = getGson();
+        for (Type type : types) {
+            gson.getAdapter(TypeToken.get(type));
+        }
+    }
+
+    /**
+     * @param obj Object to be serialized
+     * @return JSON representation of 'obj'
+     */
+    public static String toJson(Object obj) {
+        return getGson().toJson(obj);
+    }
+
+    /**
+     * @param json JSON string
+     * @param classOfT Object type
+     * @return parsed Object or null if 'json' is null
+     */
+    public static <T> T fromJson(String json, Class<T> classOfT) {
+        return getGson().fromJson(json, classOfT);
+    }
+
+    /**
+     * @param json JSON string
+     * @param typeOfT Object type (ex. ObjectSerializer.STRING_LIST_TYPE)
+     * @return parsed Object or null if 'json' is null
+     */
+    public static <T> T fromJson(String json, Type typeOfT) {
+        return getGson().fromJson(json, typeOfT);
+    }
+
+    /**
+     * Parse a JSON array of 'classOfT' elements in a single pass.
+     * Elements stored in the old double-encoded format (a JSON string holding the element's JSON)
+     * are detected and parsed transparently. For lists of String an element is treated as double-encoded
+     * when its value is itself a quoted JSON string, so a String that really starts and ends with '"'
+     * loses its quotes, rewrite such lists once with putListObject to migrate them to the single-array format
+     * @param json JSON array string
+     * @param classOfT element type
+     * @return parsed list, empty if 'json' is null
+     */
+    public static <T> ArrayList<T> fromJsonArray(String json, Class<T> classOfT) throws IOException {
+        ArrayList<T> list = new ArrayList<T>();
+        if (json == null) return list;
+
+        TypeAdapter<T> adapter = getGson().getAdapter(classOfT);
+        JsonReader reader = new JsonReader(new StringReader(json));
+        try {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                list.add(readElement(reader, adapter, classOfT));
+            }
+            reader.endArray();
+        } finally {
+            reader.close();
+        }
+        return list;
+    }
+
+    /**
+     * Read the next array element from 'reader', see {@link #fromJsonArray(String, Class)}
+     */
+    static <T> T readElement(JsonReader reader, TypeAdapter<T> adapter, Class<T> classOfT) throws IOException {
+        if (reader.peek() != JsonToken.STRING) {
+            return adapter.read(reader);
+        }
+
+        String value = reader.nextString();
+        if (classOfT == String.class && !isQuoted(value)) {
+            return classOfT.cast(value);
+        }
+        try {
+            return adapter.fromJson(value);
+        } catch (IOException ex) {
+            return adapter.fromJsonTree(new JsonPrimitive(value));
+        } catch (JsonParseException ex) {
+            return adapter.fromJsonTree(new JsonPrimitive(value));
+        } catch (IllegalStateException ex) {
+            return adapter.fromJsonTree(new JsonPrimitive(value));
+        }
+    }
+
+    private static boolean isQuoted(String value) {
+        return value.length() >= 2 && value.charAt(0) == '"' && value.charAt(value.length() - 1) == '"';
+    }
+}
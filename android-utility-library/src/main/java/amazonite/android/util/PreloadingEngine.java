@@ -0,0 +1,135 @@
+package amazonite.android.util;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * StorageEngine that opens and loads another engine in the background.
+ * Reads and writes wait until loading is done, so start it as early as possible (ex. Application.onCreate)
+ * and the first read on the main thread no longer pays for the disk I/O.
+ */
+public class PreloadingEngine implements StorageEngine {
+    private final CountDownLatch mLoaded = new CountDownLatch(1);
+    private volatile StorageEngine mEngine;
+    private volatile Exception mError;
+    private volatile long mLoadDurationNanos = -1;
+
+    /**
+     * Start loading on a new background thread
+     * @param loader opens the engine and reads it into memory
+     */
+    public PreloadingEngine(Callable<? extends StorageEngine> loader) {
+        this(loader, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                Thread thread = new Thread(command, "AppDatabase-preload");
+                thread.setDaemon(true);
+                thread.start();
+            }
+        });
+    }
+
+    /**
+     * @param loader opens the engine and reads it into memory
+     * @param executor executor that runs 'loader'
+     */
+    public PreloadingEngine(final Callable<? extends StorageEngine> loader, Executor executor) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                try {
+                    mEngine = loader.call();
+                } catch (Exception ex) {
+                    mError = ex;
+                } finally {
+                    mLoadDurationNanos = System.nanoTime() - start;
+                    mLoaded.countDown();
+                }
+            }
+        });
+    }
+
+    /**
+     * @return true if loading is done and reads will not block
+     */
+    public boolean isLoaded() {
+        return mLoaded.getCount() == 0;
+    }
+
+    /**
+     * @return time spent loading in milliseconds or -1 if loading is not done yet
+     */
+    public long getLoadDurationMillis() {
+        long nanos = mLoadDurationNanos;
+        return nanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    /**
+     * Block until loading is done
+     * @return loaded engine
+     * @throws IllegalStateException if loading failed
+     */
+    public StorageEngine await() {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                mLoaded.await();
+                break;
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        if (mError != null) throw new IllegalStateException("Loading storage failed", mError);
+        return mEngine;
+    }
+
+    @Override
+    public int getInt(String key, int defValue) {
+        return await().getInt(key, defValue);
+    }
+
+    @Override
+    public long getLong(String key, long defValue) {
+        return await().getLong(key, defValue);
+    }
+
+    @Override
+    public float getFloat(String key, float defValue) {
+        return await().getFloat(key, defValue);
+    }
+
+    @Override
+    public boolean getBoolean(String key, boolean defValue) {
+        return await().getBoolean(key, defValue);
+    }
+
+    @Override
+    public String getString(String key, String defValue) {
+        return await().getString(key, defValue);
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return await().contains(key);
+    }
+
+    @Override
+    public boolean isEncrypted() {
+        return await().isEncrypted();
+    }
+
+    @Override
+    public Map<String, ?> getAll() {
+        return await().getAll();
+    }
+
+    @Override
+    public boolean write(Map<String, ?> changes, boolean clear, boolean sync) {
+        return await().write(changes, clear, sync);
+    }
+}
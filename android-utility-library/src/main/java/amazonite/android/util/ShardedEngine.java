@@ -0,0 +1,106 @@
+package amazonite.android.util;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * StorageEngine that spreads keys over several backing engines by key hash,
+ * so each backing file stays small and loads quickly.
+ * A batch touching several shards is written shard by shard, it is atomic per shard only.
+ */
+public class ShardedEngine implements StorageEngine {
+    private final StorageEngine[] mShards;
+
+    /**
+     * @param shards backing engines, keep the same order between app launches
+     */
+    public ShardedEngine(StorageEngine... shards) {
+        if (shards.length == 0) throw new IllegalArgumentException("No shards");
+        mShards = shards.clone();
+    }
+
+    /**
+     * @param key SharedPreferences key
+     * @return engine that stores 'key'
+     */
+    public StorageEngine shardFor(String key) {
+        return mShards[(key.hashCode() & 0x7fffffff) % mShards.length];
+    }
+
+    public int getShardCount() {
+        return mShards.length;
+    }
+
+    @Override
+    public int getInt(String key, int defValue) {
+        return shardFor(key).getInt(key, defValue);
+    }
+
+    @Override
+    public long getLong(String key, long defValue) {
+        return shardFor(key).getLong(key, defValue);
+    }
+
+    @Override
+    public float getFloat(String key, float defValue) {
+        return shardFor(key).getFloat(key, defValue);
+    }
+
+    @Override
+    public boolean getBoolean(String key, boolean defValue) {
+        return shardFor(key).getBoolean(key, defValue);
+    }
+
+    @Override
+    public String getString(String key, String defValue) {
+        return shardFor(key).getString(key, defValue);
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return shardFor(key).contains(key);
+    }
+
+    @Override
+    public boolean isEncrypted() {
+        for (StorageEngine shard : mShards) {
+            if (shard.isEncrypted()) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public Map<String, ?> getAll() {
+        Map<String, Object> all = new HashMap<String, Object>();
+        for (StorageEngine shard : mShards) {
+            all.putAll(shard.getAll());
+        }
+        return all;
+    }
+
+    @Override
+    public boolean write(Map<String, ?> changes, boolean clear, boolean sync) {
+        Map<StorageEngine, Map<String, Object>> changesByShard = new LinkedHashMap<StorageEngine, Map<String, Object>>();
+        if (clear) {
+            for (StorageEngine shard : mShards) {
+                changesByShard.put(shard, new LinkedHashMap<String, Object>());
+            }
+        }
+        for (Map.Entry<String, ?> entry : changes.entrySet()) {
+            StorageEngine shard = shardFor(entry.getKey());
+            Map<String, Object> shardChanges = changesByShard.get(shard);
+            if (shardChanges == null) {
+                shardChanges = new LinkedHashMap<String, Object>();
+                changesByShard.put(shard, shardChanges);
+            }
+            shardChanges.put(entry.getKey(), entry.getValue());
+        }
+
+        boolean result = true;
+        for (Map.Entry<StorageEngine, Map<String, Object>> entry : changesByShard.entrySet()) {
+            result &= entry.getKey().write(entry.getValue(), clear, sync);
+        }
+        return result;
+    }
+}
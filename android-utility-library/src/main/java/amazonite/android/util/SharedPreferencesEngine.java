@@ -0,0 +1,75 @@
+package amazonite.android.util;
+
+import android.content.SharedPreferences;
+
+import java.util.Map;
+
+/**
+ * Default StorageEngine of AppDatabase, backed by SharedPreferences
+ */
+public class SharedPreferencesEngine implements StorageEngine {
+    private final SharedPreferences mPreferences;
+
+    public SharedPreferencesEngine(SharedPreferences preferences) {
+        mPreferences = preferences;
+    }
+
+    @Override
+    public int getInt(String key, int defValue) {
+        return mPreferences.getInt(key, defValue);
+    }
+
+    @Override
+    public long getLong(String key, long defValue) {
+        return mPreferences.getLong(key, defValue);
+    }
+
+    @Override
+    public float getFloat(String key, float defValue) {
+        return mPreferences.getFloat(key, defValue);
+    }
+
+    @Override
+    public boolean getBoolean(String key, boolean defValue) {
+        return mPreferences.getBoolean(key, defValue);
+    }
+
+    @Override
+    public String getString(String key, String defValue) {
+        return mPreferences.getString(key, defValue);
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return mPreferences.contains(key);
+    }
+
+    @Override
+    public boolean isEncrypted() {
+        return false;
+    }
+
+    @Override
+    public Map<String, ?> getAll() {
+        return mPreferences.getAll();
+    }
+
+    @Override
+    public boolean write(Map<String, ?> changes, boolean clear, boolean sync) {
+        SharedPreferences.Editor editor = mPreferences.edit();
+        if (clear) editor.clear();
+        for (Map.Entry<String, ?> entry : changes.entrySet()) {
+            String key = entry.getKey();
+            Object value = entry.getValue();
+            if (value == null) editor.remove(key);
+            else if (value instanceof Integer) editor.putInt(key, (Integer) value);
+            else if (value instanceof Long) editor.putLong(key, (Long) value);
+            else if (value instanceof Float) editor.putFloat(key, (Float) value);
+            else if (value instanceof Boolean) editor.putBoolean(key, (Boolean) value);
+            else editor.putString(key, (String) value);
+        }
+        if (sync) return editor.commit();
+        editor.apply();
+        return true;
+    }
+}
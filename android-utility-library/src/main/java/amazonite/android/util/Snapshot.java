@@ -0,0 +1,164 @@
+package amazonite.android.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzipped binary snapshot of AppDatabase entries, written and read one entry at a time.
+ * A snapshot is [magic] then per entry [type][key][value]([expiry time]) and ends with [END][entry count].
+ * The gzip trailer checks the whole file, so a truncated or corrupt snapshot fails before anything is restored.
+ */
+final class Snapshot {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int MAGIC = 0x41445331; // "ADS1"
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final byte TYPE_END = 0;
+    private static final byte TYPE_INT = 1;
+    private static final byte TYPE_LONG = 2;
+    private static final byte TYPE_FLOAT = 3;
+    private static final byte TYPE_BOOLEAN = 4;
+    private static final byte TYPE_STRING = 5;
+    // set on the type when an expiry time follows the value
+    private static final byte FLAG_EXPIRES = (byte) 0x80;
+
+    private final DataOutputStream mOut;
+    private final GZIPOutputStream mGzip;
+    private int mCount;
+
+    private Snapshot(OutputStream out) throws IOException {
+        mGzip = new GZIPOutputStream(out, BUFFER_SIZE);
+        mOut = new DataOutputStream(new BufferedOutputStream(mGzip, BUFFER_SIZE));
+        mOut.writeInt(MAGIC);
+    }
+
+    /**
+     * @param out stream the snapshot is written to, it is not closed
+     * @return Snapshot writer
+     */
+    static Snapshot write(OutputStream out) throws IOException {
+        return new Snapshot(out);
+    }
+
+    /**
+     * @param key AppDatabase key
+     * @param value Integer, Long, Float, Boolean or String
+     * @param expiryTime expiry time in milliseconds since the epoch or 0 if it does not expire
+     * @return false if the value type is not supported (ex. a String set) and was skipped
+     */
+    boolean add(String key, Object value, long expiryTime) throws IOException {
+        byte type = typeOf(value);
+        if (type == TYPE_END) return false;
+        mOut.writeByte(expiryTime != 0 ? type | FLAG_EXPIRES : type);
+        writeString(mOut, key);
+        switch (type) {
+            case TYPE_INT: mOut.writeInt((Integer) value); break;
+            case TYPE_LONG: mOut.writeLong((Long) value); break;
+            case TYPE_FLOAT: mOut.writeFloat((Float) value); break;
+            case TYPE_BOOLEAN: mOut.writeBoolean((Boolean) value); break;
+            default: writeString(mOut, (String) value); break;
+        }
+        if (expiryTime != 0) mOut.writeLong(expiryTime);
+        mCount++;
+        return true;
+    }
+
+    /**
+     * Write the end of the snapshot and the gzip trailer
+     * @return number of entries written
+     */
+    int finish() throws IOException {
+        mOut.writeByte(TYPE_END);
+        mOut.writeInt(mCount);
+        mOut.flush();
+        mGzip.finish();
+        return mCount;
+    }
+
+    /**
+     * Read a snapshot into 'batch', nothing is saved
+     * @param in stream the snapshot is read from, it is not closed
+     * @param batch batch the entries are put into
+     * @return number of entries read
+     * @throws IOException if the snapshot is truncated or corrupt
+     */
+    static int read(InputStream in, AppDatabase.Batch batch) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(new GZIPInputStream(in, BUFFER_SIZE), BUFFER_SIZE));
+        if (data.readInt() != MAGIC) throw new IOException("Not an AppDatabase snapshot");
+        int count = 0;
+        while (true) {
+            byte type = data.readByte();
+            if (type == TYPE_END) break;
+            String key = readString(data);
+            switch (type & ~FLAG_EXPIRES) {
+                case TYPE_INT: batch.put(key, data.readInt()); break;
+                case TYPE_LONG: batch.put(key, data.readLong()); break;
+                case TYPE_FLOAT: batch.put(key, data.readFloat()); break;
+                case TYPE_BOOLEAN: batch.put(key, data.readBoolean()); break;
+                case TYPE_STRING: batch.put(key, readString(data)); break;
+                default: throw new IOException("Corrupt snapshot, unknown type " + type);
+            }
+            if ((type & FLAG_EXPIRES) != 0) batch.expireAt(key, data.readLong());
+            count++;
+        }
+        if (data.readInt() != count) throw new IOException("Corrupt snapshot, entry count mismatch");
+        // reading to the end makes GZIPInputStream check the trailer CRC
+        if (data.read() != -1) throw new IOException("Corrupt snapshot, data after the end");
+        return count;
+    }
+
+    /**
+     * Put 'value' into 'batch' with its own type
+     * @return false if the value type is not supported and was skipped
+     */
+    static boolean put(AppDatabase.Batch batch, String key, Object value) {
+        switch (typeOf(value)) {
+            case TYPE_INT: batch.put(key, (int) (Integer) value); return true;
+            case TYPE_LONG: batch.put(key, (long) (Long) value); return true;
+            case TYPE_FLOAT: batch.put(key, (float) (Float) value); return true;
+            case TYPE_BOOLEAN: batch.put(key, (boolean) (Boolean) value); return true;
+            case TYPE_STRING: batch.put(key, (String) value); return true;
+            default: return false;
+        }
+    }
+
+    private static byte typeOf(Object value) {
+        if (value instanceof Integer) return TYPE_INT;
+        if (value instanceof Long) return TYPE_LONG;
+        if (value instanceof Float) return TYPE_FLOAT;
+        if (value instanceof Boolean) return TYPE_BOOLEAN;
+        if (value instanceof String) return TYPE_STRING;
+        return TYPE_END;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        // writeUTF is limited to 64 KB
+        byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) throw new IOException("Corrupt snapshot, negative length");
+        // the length is not checked by the CRC yet, so the buffer only grows as the bytes arrive
+        byte[] bytes = new byte[Math.min(length, BUFFER_SIZE)];
+        int read = 0;
+        while (true) {
+            in.readFully(bytes, read, bytes.length - read);
+            read = bytes.length;
+            if (read == length) break;
+            bytes = Arrays.copyOf(bytes, (int) Math.min(length, 2L * read));
+        }
+        return new String(bytes, UTF_8);
+    }
+}
@@ -0,0 +1,41 @@
+package amazonite.android.util;
+
+import java.util.Map;
+
+/**
+ * Key/value storage behind AppDatabase.
+ * Values are Integer, Long, Float, Boolean or String, like SharedPreferences.
+ */
+public interface StorageEngine {
+
+    int getInt(String key, int defValue);
+
+    long getLong(String key, long defValue);
+
+    float getFloat(String key, float defValue);
+
+    boolean getBoolean(String key, boolean defValue);
+
+    String getString(String key, String defValue);
+
+    boolean contains(String key);
+
+    /**
+     * @return true if values are encrypted at rest, wrappers answer for the engine they wrap
+     */
+    boolean isEncrypted();
+
+    /**
+     * @return copy of all key/value pairs
+     */
+    Map<String, ?> getAll();
+
+    /**
+     * Apply all changes atomically
+     * @param changes key to new value, a null value removes the key
+     * @param clear remove everything before applying 'changes'
+     * @param sync true: return after the changes are written to storage | false: write asynchronously
+     * @return true if the changes were saved (or queued when 'sync' is false)
+     */
+    boolean write(Map<String, ?> changes, boolean clear, boolean sync);
+}
@@ -0,0 +1,65 @@
+package amazonite.android.util;
+
+/**
+ * Validation rule for one text value, checked on the value without surrounding whitespace and without
+ * allocating. Format rules accept empty text so optional fields can be declared, add REQUIRED to reject it.
+ */
+public enum TextRule {
+    /** not null and not only whitespace */
+    REQUIRED {
+        @Override
+        boolean check(CharSequence text, int start, int end) {
+            return start < end;
+        }
+    },
+    /** Validator.isValidEmail */
+    EMAIL {
+        @Override
+        boolean check(CharSequence text, int start, int end) {
+            return start == end || TextScanner.isEmail(text, start, end);
+        }
+    },
+    /** Validator.isValidPhoneNumber */
+    PHONE_NUMBER {
+        @Override
+        boolean check(CharSequence text, int start, int end) {
+            return start == end || TextScanner.isPhoneNumber(text, start, end);
+        }
+    },
+    /** Validator.isValidUserName */
+    USER_NAME {
+        @Override
+        boolean check(CharSequence text, int start, int end) {
+            return start == end || TextScanner.isUserName(text, start, end);
+        }
+    },
+    /** Validator.isValidPersonName */
+    PERSON_NAME {
+        @Override
+        boolean check(CharSequence text, int start, int end) {
+            return TextScanner.isPersonName(text, start, end);
+        }
+    },
+    /** whole number that fits in a long, as accepted by Long.parseLong */
+    INTEGER {
+        @Override
+        boolean check(CharSequence text, int start, int end) {
+            return start == end || TextScanner.isLong(text, start, end);
+        }
+    };
+
+    /**
+     * @param value text to check, null is treated as empty
+     * @return true if 'value' passes the rule
+     */
+    public boolean isValid(CharSequence value) {
+        if (value == null) return check("", 0, 0);
+        int start = TextScanner.trimStart(value, 0, value.length());
+        return check(value, start, TextScanner.trimEnd(value, start, value.length()));
+    }
+
+    /**
+     * @return true if the trimmed range [start, end) of 'text' passes the rule
+     */
+    abstract boolean check(CharSequence text, int start, int end);
+}
@@ -0,0 +1,175 @@
+package amazonite.android.util;
+
+/**
+ * Single-pass character scanners for the Validator formats. Each scanner accepts exactly the strings
+ * the matching Validator pattern accepts, checks the range [start, end) of a CharSequence in place
+ * and never allocates, so no Pattern, Matcher or trimmed copy is needed.
+ */
+final class TextScanner {
+    static final int EMAIL_LOCAL_MAX = 256;
+    static final int EMAIL_FIRST_LABEL_MAX = 65;
+    static final int EMAIL_LABEL_MAX = 26;
+
+    private TextScanner() {
+    }
+
+    /**
+     * @return index of the first non-whitespace character in [start, end) or 'end', whitespace as in String.trim
+     */
+    static int trimStart(CharSequence text, int start, int end) {
+        while (start < end && text.charAt(start) <= ' ') start++;
+        return start;
+    }
+
+    /**
+     * @return index after the last non-whitespace character in [start, end) or 'start'
+     */
+    static int trimEnd(CharSequence text, int start, int end) {
+        while (end > start && text.charAt(end - 1) <= ' ') end--;
+        return end;
+    }
+
+    /**
+     * Validator.EMAIL_ADDRESS: local part of 1-256 [a-zA-Z0-9+._%-], '@', then at least two dot separated
+     * labels starting with [a-zA-Z0-9] followed by [a-zA-Z0-9-], 1-65 characters for the first label, 1-26 for the others
+     */
+    static boolean isEmail(CharSequence text, int start, int end) {
+        int i = start;
+        while (i < end && isEmailLocalChar(text.charAt(i))) i++;
+        int localLength = i - start;
+        if (localLength == 0 || localLength > EMAIL_LOCAL_MAX || i == end || text.charAt(i) != '@') return false;
+        i++;
+
+        int labels = 0;
+        while (true) {
+            int labelStart = i;
+            if (i == end || !isAsciiLetterOrDigit(text.charAt(i))) return false;
+            i++;
+            while (i < end && (isAsciiLetterOrDigit(text.charAt(i)) || text.charAt(i) == '-')) i++;
+            if (i - labelStart > (labels == 0 ? EMAIL_FIRST_LABEL_MAX : EMAIL_LABEL_MAX)) return false;
+            labels++;
+            if (i == end) return labels >= 2;
+            if (text.charAt(i) != '.') return false;
+            i++;
+        }
+    }
+
+    /**
+     * Validator.PHONE: optional '+' country code, optional '(' area code ')', each followed by any of "- .",
+     * then a number of at least 3 characters from "0-9- ." that starts and ends with a digit
+     */
+    static boolean isPhoneNumber(CharSequence text, int start, int end) {
+        int i = start;
+        if (i < end && text.charAt(i) == '+') {
+            i++;
+            int digitsEnd = skipDigits(text, i, end);
+            if (digitsEnd == i) return false;
+            int separatorsEnd = skipPhoneSeparators(text, digitsEnd, end);
+            if (separatorsEnd == end || text.charAt(separatorsEnd) != '(') {
+                // without an area code the number may start inside the country code digits, take the earliest start
+                if (digitsEnd - i >= 2) return isPhoneBody(text, i + 1, end);
+                return separatorsEnd > digitsEnd && isPhoneBody(text, separatorsEnd, end);
+            }
+            i = separatorsEnd;
+        }
+        if (i < end && text.charAt(i) == '(') {
+            int digitsEnd = skipDigits(text, i + 1, end);
+            if (digitsEnd == i + 1 || digitsEnd == end || text.charAt(digitsEnd) != ')') return false;
+            i = skipPhoneSeparators(text, digitsEnd + 1, end);
+        }
+        return isPhoneBody(text, i, end);
+    }
+
+    /**
+     * Validator user name format: one or more of [a-zA-Z0-9_], the characters from ' ' to '\'', '.', ',' and '@'
+     */
+    static boolean isUserName(CharSequence text, int start, int end) {
+        if (start == end) return false;
+        for (int i = start; i < end; i++) {
+            if (!isUserNameChar(text.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Validator person name format: any number of [a-zA-Z], ' ', '\'', '.' and ','
+     */
+    static boolean isPersonName(CharSequence text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!isPersonNameChar(text.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Long.parseLong format: optional '+' or '-' then digits, within the long range
+     */
+    static boolean isLong(CharSequence text, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (text.charAt(i) == '+' || text.charAt(i) == '-')) {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+        if (i == end) return false;
+        // accumulate negatively, the negative range is one larger
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long value = 0;
+        for (; i < end; i++) {
+            char c = text.charAt(i);
+            if (!isDigit(c)) return false;
+            if (value < limit / 10) return false;
+            value *= 10;
+            if (value < limit + (c - '0')) return false;
+            value -= c - '0';
+        }
+        return true;
+    }
+
+    private static boolean isPhoneBody(CharSequence text, int start, int end) {
+        if (end - start < 3 || !isDigit(text.charAt(start)) || !isDigit(text.charAt(end - 1))) return false;
+        for (int i = start + 1; i < end - 1; i++) {
+            char c = text.charAt(i);
+            if (!isDigit(c) && !isPhoneSeparator(c)) return false;
+        }
+        return true;
+    }
+
+    private static int skipDigits(CharSequence text, int i, int end) {
+        while (i < end && isDigit(text.charAt(i))) i++;
+        return i;
+    }
+
+    private static int skipPhoneSeparators(CharSequence text, int i, int end) {
+        while (i < end && isPhoneSeparator(text.charAt(i))) i++;
+        return i;
+    }
+
+    static boolean isUserNameChar(char c) {
+        return isAsciiLetterOrDigit(c) || c == '_' || (c >= ' ' && c <= '\'') || c == '.' || c == ',' || c == '@';
+    }
+
+    static boolean isPersonNameChar(char c) {
+        return isAsciiLetter(c) || c == ' ' || c == '\'' || c == '.' || c == ',';
+    }
+
+    static boolean isPhoneSeparator(char c) {
+        return c == '-' || c == ' ' || c == '.';
+    }
+
+    static boolean isEmailLocalChar(char c) {
+        return isAsciiLetterOrDigit(c) || c == '+' || c == '.' || c == '_' || c == '%' || c == '-';
+    }
+
+    static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    static boolean isAsciiLetterOrDigit(char c) {
+        return isAsciiLetter(c) || isDigit(c);
+    }
+}
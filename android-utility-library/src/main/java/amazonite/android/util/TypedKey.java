@@ -0,0 +1,98 @@
+package amazonite.android.util;
+
+/**
+ * AppDatabase key declared once with its name, type and default value.
+ * The name is validated when the key is created, and the primitive keys are read
+ * through AppDatabase without boxing. Declare keys as static final fields, ex.
+ * <pre>
+ * static final TypedKey.BooleanKey DARK_MODE = new TypedKey.BooleanKey("dark_mode", false);
+ * boolean darkMode = appDatabase.get(DARK_MODE);
+ * </pre>
+ */
+public abstract class TypedKey {
+    final String name;
+
+    TypedKey(String name) {
+        if (name == null || name.isEmpty()) {
+            throw new NullPointerException();
+        }
+        this.name = name;
+    }
+
+    /**
+     * @return SharedPreferences key
+     */
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    public static final class IntKey extends TypedKey {
+        final int defaultValue;
+
+        public IntKey(String name, int defaultValue) {
+            super(name);
+            this.defaultValue = defaultValue;
+        }
+
+        public int getDefaultValue() {
+            return defaultValue;
+        }
+    }
+
+    public static final class LongKey extends TypedKey {
+        final long defaultValue;
+
+        public LongKey(String name, long defaultValue) {
+            super(name);
+            this.defaultValue = defaultValue;
+        }
+
+        public long getDefaultValue() {
+            return defaultValue;
+        }
+    }
+
+    public static final class FloatKey extends TypedKey {
+        final float defaultValue;
+
+        public FloatKey(String name, float defaultValue) {
+            super(name);
+            this.defaultValue = defaultValue;
+        }
+
+        public float getDefaultValue() {
+            return defaultValue;
+        }
+    }
+
+    public static final class BooleanKey extends TypedKey {
+        final boolean defaultValue;
+
+        public BooleanKey(String name, boolean defaultValue) {
+            super(name);
+            this.defaultValue = defaultValue;
+        }
+
+        public boolean getDefaultValue() {
+            return defaultValue;
+        }
+    }
+
+    public static final class StringKey extends TypedKey {
+        final String defaultValue;
+
+        public StringKey(String name, String defaultValue) {
+            super(name);
+            this.defaultValue = defaultValue;
+        }
+
+        public String getDefaultValue() {
+            return defaultValue;
+        }
+    }
+}
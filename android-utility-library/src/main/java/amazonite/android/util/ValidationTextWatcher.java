@@ -0,0 +1,91 @@
+package amazonite.android.util;
+
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.widget.EditText;
+
+/**
+ * Validates an EditText as the user types. Every change is fed to an IncrementalValidator right away,
+ * the error is shown once typing pauses for the debounce delay. isValid returns the cached result.
+ */
+public class ValidationTextWatcher implements TextWatcher {
+    public static final long DEFAULT_DEBOUNCE_MILLIS = 300;
+
+    private final EditText mEditText;
+    private final IncrementalValidator mValidator;
+    private final String mEmptyMessage;
+    private final String mInvalidMessage;
+    private final long mDebounceMillis;
+
+    private final Runnable mShowError = new Runnable() {
+        @Override
+        public void run() {
+            showError();
+        }
+    };
+
+    /**
+     * Validate 'editText' as it is typed, call it on the main thread
+     * @param rule format the text must have
+     * @param emptyMessage error for blank text, null if the field is optional
+     * @param invalidMessage error for text that fails 'rule'
+     * @return attached watcher, remove it with editText.removeTextChangedListener
+     */
+    public static ValidationTextWatcher attach(EditText editText, TextRule rule, String emptyMessage, String invalidMessage) {
+        ValidationTextWatcher watcher = new ValidationTextWatcher(editText, rule, emptyMessage, invalidMessage, DEFAULT_DEBOUNCE_MILLIS);
+        editText.addTextChangedListener(watcher);
+        return watcher;
+    }
+
+    /**
+     * @param editText view to validate
+     * @param rule format the text must have
+     * @param emptyMessage error for blank text, null if the field is optional
+     * @param invalidMessage error for text that fails 'rule'
+     * @param debounceMillis time without changes before the error is shown
+     */
+    public ValidationTextWatcher(EditText editText, TextRule rule, String emptyMessage, String invalidMessage, long debounceMillis) {
+        mEditText = editText;
+        mValidator = new IncrementalValidator(rule, emptyMessage != null);
+        mEmptyMessage = emptyMessage;
+        mInvalidMessage = invalidMessage;
+        mDebounceMillis = debounceMillis;
+        mValidator.setText(editText.getText());
+    }
+
+    /**
+     * @return true if the current text is valid, no characters are scanned
+     */
+    public boolean isValid() {
+        return mValidator.isValid();
+    }
+
+    /**
+     * Show the error of the current text now, ex. when the form is submitted
+     * @return true if the current text is valid
+     */
+    public boolean showError() {
+        mEditText.removeCallbacks(mShowError);
+        if (mValidator.isValid()) {
+            mEditText.setError(null);
+            return true;
+        }
+        mEditText.setError(mValidator.isEmpty() ? mEmptyMessage : mInvalidMessage);
+        return false;
+    }
+
+    @Override
+    public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+    }
+
+    @Override
+    public void onTextChanged(CharSequence s, int start, int before, int count) {
+        mValidator.onTextChanged(s, start, before, count);
+    }
+
+    @Override
+    public void afterTextChanged(Editable s) {
+        mEditText.removeCallbacks(mShowError);
+        mEditText.postDelayed(mShowError, mDebounceMillis);
+    }
+}
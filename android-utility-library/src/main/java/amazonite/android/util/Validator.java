@@ -7,8 +7,9 @@ import java.util.regex.Pattern;
 public class Validator {
     private static final String TAG = Validator.class.getSimpleName();
     // \w = [a-zA-Z_0-9] || \d = [0-9] || \s = whitespace[\t\n\x0B\f\r] || \Q : Quote all characters up to \E
-    private static final String FORMAT_USER_NAME = "[\\w_ -'.,@]+";
-    private static final String FORMAT_PERSON_NAME = "^[a-zA-Z '.,]*$";
+    // the formats document TextScanner, which checks them without compiling a Pattern
+    static final String FORMAT_USER_NAME = "[\\w_ -'.,@]+";
+    static final String FORMAT_PERSON_NAME = "^[a-zA-Z '.,]*$";
 
     public static final Pattern EMAIL_ADDRESS = Pattern.compile(
             "[a-zA-Z0-9\\+\\.\\_\\%\\-\\+]{1,256}" + "\\@" + "[a-zA-Z0-9][a-zA-Z0-9\\-]{0,64}" +
@@ -22,7 +23,7 @@ public class Validator {
      * @return true - not empty | false - null or empty
      */
     public static boolean isEmptyString(String stringValue){
-        return stringValue == null || stringValue.trim().isEmpty();
+        return stringValue == null || TextScanner.trimStart(stringValue, 0, stringValue.length()) == stringValue.length();
     }
 
     /**
@@ -30,7 +31,7 @@ public class Validator {
      * @return string value which is not null
      */
     public static String getStringValue(String stringValue){
-        return (stringValue == null || stringValue.trim().isEmpty())? "" : stringValue.trim();
+        return stringValue == null ? "" : stringValue.trim();
     }
 
     /**
@@ -38,7 +39,7 @@ public class Validator {
      * @return boolean email format validation
      */
     public static boolean isValidEmail(String email) {
-        return EMAIL_ADDRESS.matcher(email).matches();
+        return TextScanner.isEmail(email, 0, email.length());
     }
 
     /**
@@ -46,7 +47,7 @@ public class Validator {
      * @return boolean - format validation
      */
     public static boolean isValidPersonName(String name) {
-        return name.matches(FORMAT_PERSON_NAME);
+        return TextScanner.isPersonName(name, 0, name.length());
     }
 
     /**
@@ -54,7 +55,7 @@ public class Validator {
      * @return boolean - format validation
      */
     public static boolean isValidUserName(String userName) {
-        return userName.matches(FORMAT_USER_NAME);
+        return TextScanner.isUserName(userName, 0, userName.length());
     }
 
     /**
@@ -64,7 +65,7 @@ public class Validator {
      * @return boolean - format validation
      */
     public static boolean isValidPhoneNumber(String number) {
-        return PHONE.matcher(number).matches();
+        return TextScanner.isPhoneNumber(number, 0, number.length());
     }
 
 
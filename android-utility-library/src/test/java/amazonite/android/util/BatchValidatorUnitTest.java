@@ -0,0 +1,109 @@
+package amazonite.android.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+
+public class BatchValidatorUnitTest {
+    private static final int ROW_COUNT = 200000;
+
+    @Test
+    public void rulesAndErrorCodes() {
+        BatchValidator validator = new BatchValidator()
+                .field(TextRule.REQUIRED, TextRule.PERSON_NAME)
+                .field(TextRule.EMAIL)
+                .field(TextRule.PHONE_NUMBER);
+        BatchValidator.Result result = validator.validate(new CharSequence[][] {
+                {"Ann Smith", "ann@email.com", "+94 11 234 5678"},
+                {"  Bob  ", " ", null},
+                {"", "bob@email.com", "0771234567"},
+                {"Bob", "bob@email", "0771234567"},
+                {"Bob", "bob@email.com"},
+                {"Bob", "bob@email.com", "12"},
+        });
+
+        assertEquals(6, result.getRowCount());
+        assertEquals(3, result.getInvalidCount());
+        assertTrue(result.isValid(0));
+        assertTrue(result.isValid(1));
+        assertTrue(result.isValid(4));
+        assertEquals(0, result.getErrorCode(0));
+
+        assertFalse(result.isValid(2));
+        assertEquals(0, BatchValidator.errorField(result.getErrorCode(2)));
+        assertEquals(TextRule.REQUIRED, BatchValidator.errorRule(result.getErrorCode(2)));
+        assertEquals(1, BatchValidator.errorField(result.getErrorCode(3)));
+        assertEquals(TextRule.EMAIL, BatchValidator.errorRule(result.getErrorCode(3)));
+        assertEquals(2, BatchValidator.errorField(result.getErrorCode(5)));
+        assertEquals(TextRule.PHONE_NUMBER, BatchValidator.errorRule(result.getErrorCode(5)));
+        assertEquals(0x13L, result.getValidBits()[0]);
+    }
+
+    @Test
+    public void integerRule() {
+        assertTrue(TextRule.INTEGER.isValid(" -9223372036854775808 "));
+        assertTrue(TextRule.INTEGER.isValid("+9223372036854775807"));
+        assertFalse(TextRule.INTEGER.isValid("9223372036854775808"));
+        assertFalse(TextRule.INTEGER.isValid("-"));
+        assertFalse(TextRule.INTEGER.isValid("1.5"));
+        assertTrue(TextRule.INTEGER.isValid(""));
+    }
+
+    @Test
+    public void parallelResultsMatchSequential() {
+        List<CharSequence[]> rows = new ArrayList<CharSequence[]>();
+        for (int i = 0; i < ROW_COUNT; i++) {
+            rows.add(new CharSequence[] {
+                    "user" + i + (i % 7 == 0 ? "@mail" : "@mail.com"),
+                    (i % 11 == 0 ? "+1" : "077 ") + (1000000 + i)});
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        BatchValidator sequential = new BatchValidator(executor, 1).field(TextRule.EMAIL).field(TextRule.PHONE_NUMBER);
+        BatchValidator parallel = new BatchValidator(executor, 4).field(TextRule.EMAIL).field(TextRule.PHONE_NUMBER);
+        BatchValidator.Result expected = sequential.validate(rows);
+        BatchValidator.Result actual = parallel.validate(rows);
+        executor.shutdown();
+
+        assertEquals(expected.getInvalidCount(), actual.getInvalidCount());
+        assertArrayEquals(expected.getValidBits(), actual.getValidBits());
+        for (int row = 0; row < ROW_COUNT; row++) {
+            assertEquals(expected.getErrorCode(row), actual.getErrorCode(row));
+            boolean valid = Validator.isValidEmail(rows.get(row)[0].toString())
+                    && Validator.isValidPhoneNumber(rows.get(row)[1].toString());
+            assertEquals(valid, actual.isValid(row));
+        }
+    }
+
+    @Test
+    public void nestedValidationOnTheSamePoolCompletes() throws Exception {
+        final List<CharSequence[]> rows = new ArrayList<CharSequence[]>();
+        for (int i = 0; i < 20 * 1024; i++) {
+            rows.add(new CharSequence[] {"user" + i + "@mail.com"});
+        }
+        // every pool thread runs an outer validation that starts an inner one on the same pool
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        final BatchValidator validator = new BatchValidator(executor, 2).field(TextRule.EMAIL);
+        List<Future<Integer>> outer = new ArrayList<Future<Integer>>();
+        for (int i = 0; i < 2; i++) {
+            outer.add(executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return validator.validate(rows).getInvalidCount();
+                }
+            }));
+        }
+        for (Future<Integer> result : outer) {
+            assertEquals(0, (int) result.get(10, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+    }
+}
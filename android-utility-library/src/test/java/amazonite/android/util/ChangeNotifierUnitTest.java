@@ -0,0 +1,98 @@
+package amazonite.android.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+
+public class ChangeNotifierUnitTest {
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final List<Runnable> mQueue = new ArrayList<Runnable>();
+    private final Executor mExecutor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            mQueue.add(command);
+        }
+    };
+
+    private static class RecordingListener implements ChangeNotifier.Listener {
+        final List<Set<String>> calls = new ArrayList<Set<String>>();
+
+        @Override
+        public void onChange(Set<String> keys) {
+            calls.add(new HashSet<String>(keys));
+        }
+    }
+
+    @Test
+    public void listenersReceiveMatchingKeys() throws IOException {
+        AppDatabase database = new AppDatabase(new MappedFileEngine(new File(mFolder.getRoot(), "observe.db")));
+        RecordingListener keyListener = new RecordingListener();
+        RecordingListener prefixListener = new RecordingListener();
+        RecordingListener allListener = new RecordingListener();
+        database.observeKey("user", mExecutor, keyListener);
+        database.observePrefix("settings.", mExecutor, prefixListener);
+        database.observeAll(mExecutor, allListener);
+
+        database.batch().put("user", "Ann").put("settings.theme", "dark").put("other", 1).commit();
+        runQueue();
+
+        assertEquals(Arrays.asList(set("user")), keyListener.calls);
+        assertEquals(Arrays.asList(set("settings.theme")), prefixListener.calls);
+        assertEquals(Arrays.asList(set("user", "settings.theme", "other")), allListener.calls);
+    }
+
+    @Test
+    public void burstOfWritesIsCoalesced() throws IOException {
+        AppDatabase database = new AppDatabase(new MappedFileEngine(new File(mFolder.getRoot(), "burst.db")));
+        RecordingListener listener = new RecordingListener();
+        database.observePrefix("feed.", mExecutor, listener);
+
+        for (int i = 0; i < 10; i++) {
+            database.put("feed." + (i % 3), i);
+        }
+        assertEquals(1, mQueue.size());
+        runQueue();
+        assertEquals(Arrays.asList(set("feed.0", "feed.1", "feed.2")), listener.calls);
+    }
+
+    @Test
+    public void clearAndCancel() throws IOException {
+        AppDatabase database = new AppDatabase(new MappedFileEngine(new File(mFolder.getRoot(), "clear.db")));
+        database.put("a", 1);
+        RecordingListener listener = new RecordingListener();
+        ChangeNotifier.Subscription subscription = database.observeKey("a", mExecutor, listener);
+
+        database.batch().clear().commit();
+        runQueue();
+        assertEquals(Arrays.asList(set("a")), listener.calls);
+
+        subscription.cancel();
+        database.put("a", 2);
+        runQueue();
+        assertEquals(1, listener.calls.size());
+    }
+
+    private void runQueue() {
+        while (!mQueue.isEmpty()) {
+            mQueue.remove(0).run();
+        }
+    }
+
+    private static Set<String> set(String... keys) {
+        return new HashSet<String>(Arrays.asList(keys));
+    }
+}
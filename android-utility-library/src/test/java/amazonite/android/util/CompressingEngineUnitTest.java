@@ -0,0 +1,71 @@
+package amazonite.android.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+
+public class CompressingEngineUnitTest {
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void largeValuesAreCompressedTransparently() throws IOException {
+        MappedFileEngine plain = new MappedFileEngine(new File(mFolder.getRoot(), "compressed.db"));
+        CompressingEngine engine = new CompressingEngine(plain, 64);
+        AppDatabase database = new AppDatabase(engine);
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 1000; i++) {
+            json.append("{\"id\":").append(i).append(",\"title\":\"Feed item ").append(i).append("\"},");
+        }
+        json.setCharAt(json.length() - 1, ']');
+
+        database.batch().put("feed", json.toString()).put("small", "short value").put("count", 3).commit();
+        assertEquals(json.toString(), database.getString("feed"));
+        assertEquals("short value", database.getString("small"));
+        assertEquals(3, database.getInt("count"));
+        assertEquals(json.toString(), database.getAll().get("feed"));
+
+        assertTrue(plain.getString("feed", null).length() < json.length() / 4);
+        assertEquals("short value", plain.getString("small", null));
+        assertEquals(1, engine.getCompressedCount());
+        assertTrue(engine.getBytesSaved() > json.length() / 2);
+        plain.close();
+    }
+
+    @Test
+    public void bytesSavedAreCountedInUtf8() throws IOException {
+        MappedFileEngine plain = new MappedFileEngine(new File(mFolder.getRoot(), "compressed.db"));
+        CompressingEngine engine = new CompressingEngine(plain, 64);
+        char[] chars = new char[2000];
+        Arrays.fill(chars, 'é');
+        String value = new String(chars);
+
+        engine.write(Collections.singletonMap("accents", value), false, true);
+        assertEquals(value, engine.getString("accents", null));
+        int originalBytes = value.getBytes("UTF-8").length;
+        int storedBytes = plain.getString("accents", null).getBytes("UTF-8").length;
+        assertEquals(originalBytes - storedBytes, engine.getBytesSaved());
+        plain.close();
+    }
+
+    @Test
+    public void plainValuesAreReadUnchanged() throws IOException {
+        MappedFileEngine plain = new MappedFileEngine(new File(mFolder.getRoot(), "legacy.db"));
+        plain.write(Collections.singletonMap("legacy", "written before compression"), false, true);
+        CompressingEngine engine = new CompressingEngine(plain, 4);
+        assertEquals("written before compression", engine.getString("legacy", null));
+
+        String escaped = "deflate:not compressed";
+        engine.write(Collections.singletonMap("escaped", escaped), false, true);
+        assertEquals(escaped, engine.getString("escaped", null));
+        plain.close();
+    }
+}
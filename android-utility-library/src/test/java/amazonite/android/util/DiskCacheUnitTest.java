@@ -0,0 +1,234 @@
+package amazonite.android.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+
+public class DiskCacheUnitTest {
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void putAndGet() throws Exception {
+        DiskCache cache = new DiskCache(new File(mFolder.getRoot(), "images"), 1000);
+        assertNull(cache.get("http://example.com/a.png"));
+        cache.put("http://example.com/a.png", data("a", 100));
+        assertArrayEquals(data("a", 100), cache.get("http://example.com/a.png"));
+        cache.put("http://example.com/a.png", data("b", 200));
+        assertArrayEquals(data("b", 200), cache.get("http://example.com/a.png"));
+        assertEquals(200, cache.getSize());
+        assertEquals(1, cache.getCount());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        assertTrue(cache.remove("http://example.com/a.png"));
+        assertNull(cache.get("http://example.com/a.png"));
+        assertEquals(0, cache.getSize());
+        cache.close();
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() throws Exception {
+        DiskCache cache = new DiskCache(mFolder.getRoot(), 1000);
+        cache.put("a", data("a", 400));
+        cache.put("b", data("b", 400));
+        cache.get("a");
+        cache.put("c", data("c", 400));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertEquals(800, cache.getSize());
+        assertEquals(1, cache.getEvictionCount());
+        // journal plus two values
+        assertEquals(3, mFolder.getRoot().list().length);
+
+        // larger than the cache
+        cache.put("big", data("big", 1001));
+        assertNull(cache.get("big"));
+        assertNotNull(cache.get("c"));
+        cache.close();
+    }
+
+    @Test
+    public void journalRestoresOrder() throws Exception {
+        File directory = mFolder.getRoot();
+        DiskCache cache = new DiskCache(directory, 1000);
+        cache.put("a", data("a", 300));
+        cache.put("b", data("b", 300));
+        cache.put("c", data("c", 300));
+        cache.get("a");
+        cache.close();
+
+        cache = new DiskCache(directory, 1000);
+        assertEquals(900, cache.getSize());
+        // 'b' is the least recently used after the restore
+        cache.put("d", data("d", 300));
+        assertNull(cache.get("b"));
+        assertArrayEquals(data("a", 300), cache.get("a"));
+        assertArrayEquals(data("d", 300), cache.get("d"));
+        cache.close();
+
+        // a smaller limit evicts on open
+        cache = new DiskCache(directory, 350);
+        assertEquals(1, cache.getCount());
+        assertNotNull(cache.get("d"));
+        cache.close();
+    }
+
+    @Test
+    public void openDropsIncompleteFiles() throws Exception {
+        File directory = mFolder.getRoot();
+        DiskCache cache = new DiskCache(directory, 10000);
+        cache.put("a", data("a", 300));
+        cache.put("b", data("b", 300));
+        cache.close();
+
+        // a leftover temporary file, an unknown file and a file cut short outside the cache
+        new FileOutputStream(new File(directory, "0123.7.tmp")).close();
+        new FileOutputStream(new File(directory, "unknown")).close();
+        for (String name : directory.list()) {
+            File file = new File(directory, name);
+            if (file.length() == 300 && Arrays.equals(readAll(file), data("b", 300))) {
+                RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+                randomAccessFile.setLength(100);
+                randomAccessFile.close();
+            }
+        }
+
+        cache = new DiskCache(directory, 10000);
+        assertArrayEquals(data("a", 300), cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals(300, cache.getSize());
+        assertEquals(2, directory.list().length);
+        cache.close();
+    }
+
+    @Test
+    public void corruptJournalStartsEmpty() throws Exception {
+        File directory = mFolder.getRoot();
+        DiskCache cache = new DiskCache(directory, 10000);
+        cache.put("a", data("a", 300));
+        cache.close();
+        FileOutputStream out = new FileOutputStream(new File(directory, "journal"));
+        out.write("garbage\n".getBytes("UTF-8"));
+        out.close();
+
+        cache = new DiskCache(directory, 10000);
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.getSize());
+        assertEquals(1, directory.list().length);
+        cache.close();
+    }
+
+    @Test
+    public void journalIsCompacted() throws Exception {
+        File directory = mFolder.getRoot();
+        DiskCache cache = new DiskCache(directory, 100000);
+        for (int i = 0; i < 10; i++) {
+            cache.put("k" + i, data("k" + i, 10));
+        }
+        for (int i = 0; i < 5000; i++) {
+            cache.get("k" + (i % 10));
+            if (i % 100 == 0) cache.put("k" + (i % 10), data("k" + (i % 10), 10));
+        }
+        cache.close();
+        // compacting keeps roughly one line per read since the last rewrite
+        assertTrue(new File(directory, "journal").length() < 2000 * 50);
+
+        cache = new DiskCache(directory, 100000);
+        assertEquals(10, cache.getCount());
+        cache.close();
+    }
+
+    @Test
+    public void readsAloneCompactTheJournal() throws Exception {
+        File directory = mFolder.getRoot();
+        DiskCache cache = new DiskCache(directory, 100000);
+        for (int i = 0; i < 10; i++) {
+            cache.put("k" + i, data("k" + i, 10));
+        }
+        for (int i = 0; i < 10000; i++) {
+            assertNotNull(cache.get("k" + (i % 10)));
+        }
+        cache.close();
+        assertTrue(new File(directory, "journal").length() < 2000 * 50);
+
+        cache = new DiskCache(directory, 100000);
+        assertEquals(10, cache.getCount());
+        cache.close();
+    }
+
+    @Test
+    public void concurrentReadersAndWriters() throws Exception {
+        final DiskCache cache = new DiskCache(mFolder.getRoot(), 20000);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final AtomicInteger hits = new AtomicInteger();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            final int seed = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random(seed);
+                    try {
+                        for (int i = 0; i < 500; i++) {
+                            String key = "k" + random.nextInt(100);
+                            // the value is a function of the key, a reader must never see another value or a partial one
+                            if (random.nextInt(3) == 0) {
+                                cache.put(key, data(key, 500));
+                            } else {
+                                byte[] value = cache.get(key);
+                                if (value != null) {
+                                    assertArrayEquals(data(key, 500), value);
+                                    hits.incrementAndGet();
+                                }
+                            }
+                        }
+                    } catch (Throwable ex) {
+                        failure.compareAndSet(null, ex);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() != null) throw new AssertionError(failure.get());
+        assertTrue(hits.get() > 0);
+        assertTrue(cache.getSize() <= 20000);
+        // every indexed file exists with its size
+        long size = cache.getSize();
+        cache.close();
+        DiskCache reopened = new DiskCache(mFolder.getRoot(), 20000);
+        assertEquals(size, reopened.getSize());
+        reopened.close();
+    }
+
+    private static byte[] data(String key, int length) {
+        byte[] data = new byte[length];
+        byte[] keyBytes = key.getBytes();
+        for (int i = 0; i < length; i++) {
+            data[i] = keyBytes[i % keyBytes.length];
+        }
+        return data;
+    }
+
+    private static byte[] readAll(File file) throws Exception {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        byte[] data = new byte[(int) randomAccessFile.length()];
+        randomAccessFile.readFully(data);
+        randomAccessFile.close();
+        return data;
+    }
+}
@@ -0,0 +1,74 @@
+package amazonite.android.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+
+public class EncryptedEngineUnitTest {
+    private static final byte[] SECRET = "0123456789abcdef0123456789abcdef".getBytes();
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void valuesRoundTripAndAreNotStoredInPlainText() throws IOException {
+        MappedFileEngine plain = new MappedFileEngine(new File(mFolder.getRoot(), "encrypted.db"));
+        AppDatabase database = new AppDatabase(new EncryptedEngine(plain, SECRET, true));
+        char[] chars = new char[100000];
+        Arrays.fill(chars, 'é');
+        String large = new String(chars) + "😀";
+
+        assertTrue(database.batch().put("token", "secret-token").put("count", 7).put("since", 9L)
+                .put("ratio", 0.5f).put("enabled", true).put("profile", large).commit());
+        assertEquals("secret-token", database.getString("token"));
+        assertEquals(7, database.getInt("count"));
+        assertEquals(9L, database.getLong("since"));
+        assertEquals(0.5f, database.getFloat("ratio"), 0f);
+        assertTrue(database.getBoolean("enabled"));
+        assertEquals(large, database.getString("profile"));
+        assertNull(database.getString("missing"));
+
+        Map<String, ?> stored = plain.getAll();
+        assertEquals(6, stored.size());
+        for (Map.Entry<String, ?> entry : stored.entrySet()) {
+            assertFalse(entry.getKey().contains("token"));
+            assertFalse(entry.getValue().toString().contains("secret-token"));
+        }
+        assertEquals("secret-token", database.getAll().get("token"));
+
+        database.removeValue("token");
+        assertNull(database.getString("token"));
+        plain.close();
+    }
+
+    @Test
+    public void wrongSecretAndMovedValuesAreRejected() throws IOException {
+        MappedFileEngine plain = new MappedFileEngine(new File(mFolder.getRoot(), "tamper.db"));
+        EncryptedEngine engine = new EncryptedEngine(plain, SECRET, false);
+        engine.write(Collections.singletonMap("a", "value"), false, true);
+
+        EncryptedEngine otherSecret = new EncryptedEngine(plain, "fedcba9876543210".getBytes(), false);
+        try {
+            otherSecret.getString("a", null);
+            fail();
+        } catch (SecurityException expected) {
+        }
+
+        plain.write(Collections.singletonMap("b", plain.getString("a", null)), false, true);
+        try {
+            engine.getString("b", null);
+            fail();
+        } catch (SecurityException expected) {
+        }
+        plain.close();
+    }
+}
@@ -0,0 +1,121 @@
+package amazonite.android.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+
+public class ExpiryUnitTest {
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static final TypedKey.IntKey COUNT = new TypedKey.IntKey("count", 7);
+
+    @Test
+    public void expiredValuesAreNotReturned() throws Exception {
+        MappedFileEngine engine = new MappedFileEngine(new File(mFolder.getRoot(), "expiry.db"));
+        AppDatabase database = new AppDatabase(engine);
+
+        assertTrue(database.put("response", "cached", 1));
+        assertTrue(database.batch().put(COUNT, 3).expireAfter(COUNT.getName(), 1).commit());
+        assertTrue(database.put("setting", "kept"));
+        Thread.sleep(20);
+
+        assertNull(database.getString("response"));
+        assertEquals(7, database.get(COUNT));
+        assertEquals("kept", database.getString("setting"));
+        assertFalse(database.getAll().containsKey("response"));
+        assertFalse(database.getAll().containsKey(ExpiryIndex.KEY));
+        // reads leave the removal to the sweeper
+        assertTrue(engine.contains("response"));
+        assertEquals(2, database.sweepExpired());
+        assertFalse(engine.contains("response"));
+        assertFalse(engine.contains("count"));
+        assertFalse(engine.contains(ExpiryIndex.KEY));
+    }
+
+    @Test
+    public void commitDoesNotChangeTheBatch() throws Exception {
+        AppDatabase database = new AppDatabase(new MappedFileEngine(new File(mFolder.getRoot(), "expiry.db")));
+        AppDatabase.Batch batch = database.batch().put("response", "cached").expireAfter("response", 60000);
+        assertTrue(batch.commit());
+        // the expiry index is written with a copy of the changes, committing again writes the same keys
+        assertTrue(batch.commit());
+        assertEquals("cached", database.getString("response"));
+        assertTrue(database.getExpiryTime("response") > System.currentTimeMillis());
+        assertEquals(Collections.singleton("response"), database.getAll().keySet());
+    }
+
+    @Test
+    public void plainPutKeepsValueForever() throws IOException {
+        AppDatabase database = new AppDatabase(new MappedFileEngine(new File(mFolder.getRoot(), "expiry.db")));
+
+        long before = System.currentTimeMillis();
+        database.putObject("user", "Ann", 60000);
+        assertTrue(database.getExpiryTime("user") >= before + 60000);
+        assertEquals("Ann", database.getObject("user", String.class));
+
+        database.putObject("user", "Bob");
+        assertEquals(0, database.getExpiryTime("user"));
+        assertEquals("Bob", database.getObject("user", String.class));
+        assertNull(database.getAll().get(ExpiryIndex.KEY));
+    }
+
+    @Test
+    public void sweepRemovesExpiredValuesWithOneWrite() throws Exception {
+        File file = new File(mFolder.getRoot(), "expiry.db");
+        final MappedFileEngine engine = new MappedFileEngine(file);
+        final AtomicInteger writes = new AtomicInteger();
+        AppDatabase database = new AppDatabase(new StorageEngine() {
+            public int getInt(String key, int defValue) { return engine.getInt(key, defValue); }
+            public long getLong(String key, long defValue) { return engine.getLong(key, defValue); }
+            public float getFloat(String key, float defValue) { return engine.getFloat(key, defValue); }
+            public boolean getBoolean(String key, boolean defValue) { return engine.getBoolean(key, defValue); }
+            public String getString(String key, String defValue) { return engine.getString(key, defValue); }
+            public boolean contains(String key) { return engine.contains(key); }
+            public boolean isEncrypted() { return engine.isEncrypted(); }
+            public Map<String, ?> getAll() { return engine.getAll(); }
+            public boolean write(Map<String, ?> changes, boolean clear, boolean sync) {
+                writes.incrementAndGet();
+                return engine.write(changes, clear, sync);
+            }
+        });
+
+        AppDatabase.Batch batch = database.batch();
+        for (int i = 0; i < 100; i++) {
+            batch.put("short" + i, i).expireAfter("short" + i, 1);
+        }
+        batch.put("long", 1).expireAfter("long", 60000).commit();
+        Thread.sleep(20);
+
+        writes.set(0);
+        assertEquals(100, database.sweepExpired());
+        assertEquals(1, writes.get());
+        assertEquals(0, database.sweepExpired());
+        assertEquals(1, writes.get());
+        assertEquals(1, database.getInt("long"));
+        assertEquals(2, engine.getAll().size());
+    }
+
+    @Test
+    public void expiryTimesSurviveReopening() throws IOException {
+        File file = new File(mFolder.getRoot(), "expiry.db");
+        MappedFileEngine engine = new MappedFileEngine(file);
+        new AppDatabase(engine).put("response", "cached", 60000);
+        engine.close();
+
+        engine = new MappedFileEngine(file);
+        AppDatabase database = new AppDatabase(engine);
+        assertTrue(database.getExpiryTime("response") > System.currentTimeMillis());
+        assertEquals("cached", database.getString("response"));
+        engine.close();
+    }
+}
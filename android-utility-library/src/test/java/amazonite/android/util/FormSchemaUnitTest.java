@@ -0,0 +1,78 @@
+package amazonite.android.util;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+
+public class FormSchemaUnitTest {
+    private static final FormSchema SIGN_UP = new FormSchema()
+            .rule("name", TextRule.REQUIRED, "Name field is empty!")
+            .rule("name", TextRule.PERSON_NAME, "Invalid name!")
+            .rule("email", TextRule.REQUIRED, "Email address field is empty!")
+            .rule("email", TextRule.EMAIL, "Please enter a valid email address!")
+            .rule("phone", TextRule.PHONE_NUMBER, "Please enter a valid phone number!")
+            .length("phone", 0, 15, "Please enter a valid phone number!")
+            .rule("password", TextRule.REQUIRED, "Please enter a valid password!")
+            .length("password", 8, 30, "Password must contain 8 to 30 characters")
+            .sameAs("confirmPassword", "password", "Entered password is mismatched!");
+
+    private static Map<String, CharSequence> values(String name, String email, String phone, String password, String confirmPassword) {
+        Map<String, CharSequence> values = new HashMap<String, CharSequence>();
+        values.put("name", name);
+        values.put("email", email);
+        values.put("phone", phone);
+        values.put("password", password);
+        values.put("confirmPassword", confirmPassword);
+        return values;
+    }
+
+    @Test
+    public void validFormHasNoErrors() {
+        FormSchema.Result result = SIGN_UP.validate(values(" Ann Smith ", "ann@email.com", "", "secret123", " secret123 "));
+        assertTrue(result.isValid());
+        assertNull(result.getFirstInvalidField());
+        assertTrue(SIGN_UP.isValid(values("Ann", "ann@email.com", "077 123 4567", "secret123", "secret123")));
+    }
+
+    @Test
+    public void fieldsStopAtFirstFailedRule() {
+        FormSchema.Result result = SIGN_UP.validate(values("", "ann@email", "+94 11 234 5678 99", "short", "other"));
+        assertEquals("Name field is empty!", result.getError("name"));
+        assertEquals("Please enter a valid email address!", result.getError("email"));
+        assertEquals("Please enter a valid phone number!", result.getError("phone"));
+        assertEquals("Password must contain 8 to 30 characters", result.getError("password"));
+        // not compared while the password itself is invalid
+        assertNull(result.getError("confirmPassword"));
+        assertEquals("name", result.getFirstInvalidField());
+        assertArrayEquals(new String[] {"name", "email", "phone", "password"}, result.getErrors().keySet().toArray());
+    }
+
+    @Test
+    public void crossFieldRule() {
+        FormSchema.Result result = SIGN_UP.validate(values("Ann", "ann@email.com", null, "secret123", "secret124"));
+        assertFalse(result.isValid());
+        assertEquals("confirmPassword", result.getFirstInvalidField());
+        assertEquals("Entered password is mismatched!", result.getError("confirmPassword"));
+        assertFalse(SIGN_UP.isValid(values("Ann", "ann@email.com", null, "secret123", "secret124")));
+    }
+
+    @Test
+    public void customRuleReadsOtherValues() {
+        FormSchema schema = new FormSchema().rule("to", new FormSchema.Rule() {
+            @Override
+            public boolean isValid(CharSequence value, Map<String, ? extends CharSequence> values) {
+                return Integer.parseInt(value.toString()) > Integer.parseInt(values.get("from").toString());
+            }
+        }, "End must be after start");
+        Map<String, CharSequence> values = new HashMap<String, CharSequence>();
+        values.put("from", "10");
+        values.put("to", "5");
+        assertEquals("End must be after start", schema.validate(values).getError("to"));
+        values.put("to", "15");
+        assertTrue(schema.validate(values).isValid());
+    }
+}
@@ -0,0 +1,214 @@
+package amazonite.android.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+
+public class GroupCommitEngineUnitTest {
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static final int THREAD_COUNT = 8;
+    private static final int WRITES_PER_THREAD = 500;
+
+    @Test
+    public void readersSeeStagedWrites() throws IOException {
+        MappedFileEngine backing = new MappedFileEngine(new File(mFolder.getRoot(), "group.db"));
+        GroupCommitEngine engine = new GroupCommitEngine(backing);
+        AppDatabase database = new AppDatabase(engine);
+
+        for (int i = 0; i < 1000; i++) {
+            database.batch().put("key" + i, i).apply();
+            assertEquals(i, database.getInt("key" + i));
+        }
+        database.batch().remove("key0").apply();
+        assertEquals(-1, database.getInt("key0"));
+        assertFalse(engine.contains("key0"));
+        assertEquals(999, engine.getAll().size());
+
+        assertTrue(engine.flush());
+        assertEquals(999, backing.getAll().size());
+        assertEquals(999, backing.getInt("key999", -1));
+        assertTrue("writes were not grouped", engine.getCommitCount() < 1000);
+        engine.close();
+        backing.close();
+    }
+
+    @Test
+    public void concurrentCommitsAreAllSaved() throws Exception {
+        MappedFileEngine backing = new MappedFileEngine(new File(mFolder.getRoot(), "group.db"));
+        GroupCommitEngine engine = new GroupCommitEngine(backing);
+        final AppDatabase database = new AppDatabase(engine);
+        final AtomicInteger failures = new AtomicInteger();
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < THREAD_COUNT; t++) {
+            final int thread = t;
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < WRITES_PER_THREAD; i++) {
+                        String key = "t" + thread + "_" + i;
+                        if (!database.batch().put(key, i).put("last" + thread, i).commit()) failures.incrementAndGet();
+                        if (database.getInt(key) != i) failures.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads) thread.join();
+
+        assertEquals(0, failures.get());
+        // a commit returns after its group commit, so everything is in the backing engine
+        assertEquals(THREAD_COUNT * (WRITES_PER_THREAD + 1), backing.getAll().size());
+        for (int t = 0; t < THREAD_COUNT; t++) {
+            assertEquals(WRITES_PER_THREAD - 1, backing.getInt("last" + t, -1));
+        }
+        engine.close();
+        backing.close();
+    }
+
+    @Test
+    public void clearDropsStagedWrites() throws IOException {
+        MappedFileEngine backing = new MappedFileEngine(new File(mFolder.getRoot(), "group.db"));
+        GroupCommitEngine engine = new GroupCommitEngine(backing);
+        AppDatabase database = new AppDatabase(engine);
+
+        database.put("saved", 1);
+        database.batch().put("staged", 2).apply();
+        assertTrue(database.batch().clear().put("after", 3).commit());
+        assertTrue(engine.flush());
+
+        assertEquals(-1, database.getInt("saved"));
+        assertEquals(-1, database.getInt("staged"));
+        assertEquals(3, database.getInt("after"));
+        assertEquals(1, backing.getAll().size());
+        engine.close();
+        backing.close();
+    }
+
+    @Test
+    public void clearsRacingGroupCommitsStayCleared() throws Exception {
+        MappedFileEngine backing = new MappedFileEngine(new File(mFolder.getRoot(), "group.db"));
+        final GroupCommitEngine engine = new GroupCommitEngine(backing);
+        final AppDatabase database = new AppDatabase(engine);
+
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 2000; i++) {
+                    database.batch().put("key" + (i % 50), i).apply();
+                }
+            }
+        });
+        writer.start();
+        for (int i = 0; i < 50; i++) {
+            database.batch().clear().put("cleared", i).commit();
+        }
+        writer.join();
+
+        assertTrue(engine.flush());
+        // a group commit taken before a clear must not be written after it
+        assertEquals(engine.getAll(), backing.getAll());
+        engine.close();
+        backing.close();
+    }
+
+    @Test
+    public void failedGroupCommitIsRetried() throws IOException {
+        MappedFileEngine backing = new MappedFileEngine(new File(mFolder.getRoot(), "group.db"));
+        FailingEngine failing = new FailingEngine(backing);
+        GroupCommitEngine engine = new GroupCommitEngine(failing);
+        AppDatabase database = new AppDatabase(engine);
+
+        failing.failures.set(1);
+        assertFalse(database.batch().put("a", 1).commit());
+        assertEquals(1, engine.getFailedCommitCount());
+        // the failed changes stay staged
+        assertEquals(1, database.getInt("a"));
+        assertFalse(backing.contains("a"));
+
+        // a later write replaces the failed value, the retry saves both keys
+        assertTrue(database.batch().put("b", 2).commit());
+        assertEquals(1, backing.getInt("a", -1));
+        assertEquals(2, backing.getInt("b", -1));
+
+        failing.failures.set(1);
+        database.batch().put("a", 3).apply();
+        database.batch().put("a", 4).apply();
+        // the first flush may wait for the failed group commit, the second retries it
+        engine.flush();
+        assertTrue(engine.flush());
+        assertEquals(4, backing.getInt("a", -1));
+        assertEquals(4, database.getInt("a"));
+        engine.close();
+        backing.close();
+    }
+
+    // fails the next 'failures' writes
+    private static class FailingEngine implements StorageEngine {
+        final AtomicInteger failures = new AtomicInteger();
+        private final StorageEngine mEngine;
+
+        FailingEngine(StorageEngine engine) {
+            mEngine = engine;
+        }
+
+        @Override
+        public int getInt(String key, int defValue) {
+            return mEngine.getInt(key, defValue);
+        }
+
+        @Override
+        public long getLong(String key, long defValue) {
+            return mEngine.getLong(key, defValue);
+        }
+
+        @Override
+        public float getFloat(String key, float defValue) {
+            return mEngine.getFloat(key, defValue);
+        }
+
+        @Override
+        public boolean getBoolean(String key, boolean defValue) {
+            return mEngine.getBoolean(key, defValue);
+        }
+
+        @Override
+        public String getString(String key, String defValue) {
+            return mEngine.getString(key, defValue);
+        }
+
+        @Override
+        public boolean contains(String key) {
+            return mEngine.contains(key);
+        }
+
+        @Override
+        public boolean isEncrypted() {
+            return mEngine.isEncrypted();
+        }
+
+        @Override
+        public Map<String, ?> getAll() {
+            return new HashMap<String, Object>(mEngine.getAll());
+        }
+
+        @Override
+        public boolean write(Map<String, ?> changes, boolean clear, boolean sync) {
+            if (failures.getAndDecrement() > 0) return false;
+            return mEngine.write(changes, clear, sync);
+        }
+    }
+}
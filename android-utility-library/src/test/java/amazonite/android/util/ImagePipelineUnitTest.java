@@ -0,0 +1,360 @@
+package amazonite.android.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+
+public class ImagePipelineUnitTest {
+    private static final int SERVER_DELAY_MILLIS = 25;
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+    // "decodes" to the payload size
+    private static final ImagePipeline.Decoder<Integer> LENGTH = new ImagePipeline.Decoder<Integer>() {
+        @Override
+        public Integer decode(byte[] data, int width, int height) {
+            return data.length;
+        }
+    };
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private HttpServer mServer;
+    private String mBaseUrl;
+    private final AtomicInteger mServerHits = new AtomicInteger();
+    private final AtomicInteger mInFlight = new AtomicInteger();
+    private final AtomicInteger mMaxInFlight = new AtomicInteger();
+
+    @Before
+    public void startServer() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                mServerHits.incrementAndGet();
+                int inFlight = mInFlight.incrementAndGet();
+                while (true) {
+                    int max = mMaxInFlight.get();
+                    if (inFlight <= max || mMaxInFlight.compareAndSet(max, inFlight)) break;
+                }
+                try {
+                    Thread.sleep(SERVER_DELAY_MILLIS);
+                } catch (InterruptedException ignored) {
+                } finally {
+                    mInFlight.decrementAndGet();
+                }
+                String path = exchange.getRequestURI().getPath();
+                if (path.startsWith("/missing")) {
+                    exchange.sendResponseHeaders(404, -1);
+                    exchange.close();
+                    return;
+                }
+                byte[] body = new byte[1000 + path.length()];
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        mServer.setExecutor(Executors.newCachedThreadPool());
+        mServer.start();
+        mBaseUrl = "http://127.0.0.1:" + mServer.getAddress().getPort() + "/";
+    }
+
+    @After
+    public void stopServer() {
+        mServer.stop(0);
+    }
+
+    @Test
+    public void fetchThreadsBoundConcurrentDownloads() throws Exception {
+        int count = 40;
+        fetchAll(1, "serial", count);
+        assertEquals(1, mMaxInFlight.get());
+
+        mMaxInFlight.set(0);
+        fetchAll(4, "concurrent", count);
+        assertEquals(2 * count, mServerHits.get());
+        // the server delay keeps several downloads open at once, never more than the fetch threads
+        assertTrue(mMaxInFlight.get() > 1);
+        assertTrue(mMaxInFlight.get() <= 4);
+    }
+
+    private void fetchAll(int fetchThreads, String prefix, int count) throws Exception {
+        ImagePipeline<Integer> pipeline = new ImagePipeline<Integer>(new ImagePipeline.HttpFetcher(), LENGTH, DIRECT, fetchThreads, 2);
+        Collector collector = new Collector(count);
+        for (int i = 0; i < count; i++) {
+            pipeline.load(mBaseUrl + prefix + i, 0, 0, ImagePipeline.PRIORITY_NORMAL, collector);
+        }
+        assertTrue(collector.await());
+        assertEquals(count, collector.loaded.size());
+        assertEquals(0, collector.failures.get());
+        pipeline.shutdown();
+    }
+
+    @Test
+    public void identicalUrlsShareOneFetch() throws Exception {
+        ImagePipeline<Integer> pipeline = new ImagePipeline<Integer>(new ImagePipeline.HttpFetcher(), LENGTH, DIRECT, 4, 2);
+        Collector collector = new Collector(10);
+        for (int i = 0; i < 10; i++) {
+            pipeline.load(mBaseUrl + "same", 0, 0, ImagePipeline.PRIORITY_NORMAL, collector);
+        }
+        assertTrue(collector.await());
+        assertEquals(10, collector.loaded.size());
+        assertEquals(1, mServerHits.get());
+        assertEquals(1, pipeline.getFetchCount());
+        assertEquals(9, pipeline.getSharedCount());
+
+        // a different size is a separate load
+        Collector other = new Collector(1);
+        pipeline.load(mBaseUrl + "same", 100, 100, ImagePipeline.PRIORITY_NORMAL, other);
+        assertTrue(other.await());
+        assertEquals(2, mServerHits.get());
+        pipeline.shutdown();
+    }
+
+    @Test
+    public void memoryCacheAnswersRepeatLoads() throws Exception {
+        ImagePipeline<Integer> pipeline = new ImagePipeline<Integer>(new ImagePipeline.HttpFetcher(), LENGTH, DIRECT, 2, 1);
+        MemoryCache<Integer> cache = new MemoryCache<Integer>(10) {
+            @Override
+            protected int sizeOf(Integer value) {
+                return 1;
+            }
+        };
+        pipeline.setMemoryCache(cache);
+        Collector first = new Collector(1);
+        pipeline.load(mBaseUrl + "cached", 50, 50, ImagePipeline.PRIORITY_NORMAL, first);
+        assertTrue(first.await());
+
+        Collector second = new Collector(1);
+        pipeline.load(mBaseUrl + "cached", 50, 50, ImagePipeline.PRIORITY_NORMAL, second);
+        assertTrue(second.await());
+        assertEquals(first.loaded, second.loaded);
+        assertEquals(first.loaded.get(0), pipeline.getCached(mBaseUrl + "cached", 50, 50));
+        assertNull(pipeline.getCached(mBaseUrl + "cached", 100, 100));
+        assertEquals(1, mServerHits.get());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        pipeline.shutdown();
+    }
+
+    @Test
+    public void diskCacheAnswersLoadsAfterRestart() throws Exception {
+        int count = 40;
+        DiskCache diskCache = new DiskCache(mFolder.getRoot(), 10 * 1024 * 1024);
+        loadOneByOne(diskCache, "image", count);
+        assertEquals(count, mServerHits.get());
+
+        // a new pipeline has an empty memory cache, like after a restart
+        loadOneByOne(diskCache, "image", count);
+        assertEquals(count, mServerHits.get());
+        assertEquals(count, diskCache.getHitCount());
+        diskCache.close();
+    }
+
+    private void loadOneByOne(DiskCache diskCache, String prefix, int count) throws Exception {
+        ImagePipeline<Integer> pipeline = new ImagePipeline<Integer>(new ImagePipeline.HttpFetcher(), LENGTH, DIRECT, 4, 2);
+        pipeline.setDiskCache(diskCache);
+        for (int i = 0; i < count; i++) {
+            Collector collector = new Collector(1);
+            pipeline.load(mBaseUrl + prefix + i, 0, 0, ImagePipeline.PRIORITY_NORMAL, collector);
+            assertTrue(collector.await());
+            assertEquals(1000 + ("/" + prefix + i).length(), (int) collector.loaded.get(0));
+        }
+        pipeline.shutdown();
+    }
+
+    @Test
+    public void httpErrorFails() throws Exception {
+        ImagePipeline<Integer> pipeline = new ImagePipeline<Integer>(new ImagePipeline.HttpFetcher(), LENGTH, DIRECT, 1, 1);
+        Collector collector = new Collector(1);
+        pipeline.load(mBaseUrl + "missing", 0, 0, ImagePipeline.PRIORITY_NORMAL, collector);
+        assertTrue(collector.await());
+        assertEquals(1, collector.failures.get());
+        pipeline.shutdown();
+    }
+
+    @Test
+    public void cancelledRequestsAreNotFetched() throws Exception {
+        BlockingFetcher fetcher = new BlockingFetcher();
+        ImagePipeline<Integer> pipeline = new ImagePipeline<Integer>(fetcher, LENGTH, DIRECT, 1, 1);
+        Collector first = new Collector(1);
+        Collector recycled = new Collector(1);
+        pipeline.load("a", 0, 0, ImagePipeline.PRIORITY_HIGH, first);
+        fetcher.started.await();
+        ImagePipeline<Integer>.Request request = pipeline.load("b", 0, 0, ImagePipeline.PRIORITY_HIGH, recycled);
+        // a shared load keeps running while another request still wants it
+        ImagePipeline<Integer>.Request shared = pipeline.load("a", 0, 0, ImagePipeline.PRIORITY_HIGH, first);
+        request.cancel();
+        shared.cancel();
+        assertTrue(request.isCancelled());
+        fetcher.release.countDown();
+
+        assertTrue(first.await());
+        Collector last = new Collector(1);
+        pipeline.load("c", 0, 0, ImagePipeline.PRIORITY_LOW, last);
+        assertTrue(last.await());
+        assertEquals(Collections.singletonList("a"), fetcher.fetched.subList(0, 1));
+        assertFalse(fetcher.fetched.contains("b"));
+        assertEquals(0, recycled.loaded.size());
+        assertEquals(1, first.loaded.size());
+        pipeline.shutdown();
+    }
+
+    @Test
+    public void higherPriorityRunsFirst() throws Exception {
+        BlockingFetcher fetcher = new BlockingFetcher();
+        ImagePipeline<Integer> pipeline = new ImagePipeline<Integer>(fetcher, LENGTH, DIRECT, 1, 1);
+        Collector collector = new Collector(6);
+        pipeline.load("blocker", 0, 0, ImagePipeline.PRIORITY_HIGH, collector);
+        fetcher.started.await();
+        pipeline.load("low1", 0, 0, ImagePipeline.PRIORITY_LOW, collector);
+        pipeline.load("normal", 0, 0, ImagePipeline.PRIORITY_NORMAL, collector);
+        pipeline.load("high", 0, 0, ImagePipeline.PRIORITY_HIGH, collector);
+        pipeline.load("low2", 0, 0, ImagePipeline.PRIORITY_LOW, collector);
+        // the view showing low2 scrolled into view
+        pipeline.load("low2", 0, 0, ImagePipeline.PRIORITY_HIGH, collector);
+        fetcher.release.countDown();
+
+        assertTrue(collector.await());
+        assertEquals(Arrays.asList("blocker", "low2", "high", "normal", "low1"), fetcher.fetched);
+        pipeline.shutdown();
+    }
+
+    @Test
+    public void imagesAreRetainedUntilDelivered() throws Exception {
+        ExecutorService callbackExecutor = Executors.newSingleThreadExecutor();
+        ImagePipeline<Integer> pipeline = new ImagePipeline<Integer>(new ImagePipeline.HttpFetcher(), LENGTH, callbackExecutor, 2, 1);
+        // holds one image, every load evicts the previous one
+        pipeline.setMemoryCache(new MemoryCache<Integer>(1) {
+            @Override
+            protected int sizeOf(Integer value) {
+                return 1;
+            }
+        });
+        final Map<Integer, Integer> retained = new HashMap<Integer, Integer>();
+        pipeline.setRetainer(new ImagePipeline.Retainer<Integer>() {
+            @Override
+            public void retain(Integer image) {
+                synchronized (retained) {
+                    Integer count = retained.get(image);
+                    retained.put(image, count == null ? 1 : count + 1);
+                }
+            }
+
+            @Override
+            public void release(Integer image) {
+                synchronized (retained) {
+                    retained.put(image, retained.get(image) - 1);
+                }
+            }
+        });
+        final AtomicInteger unretained = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(4);
+        ImagePipeline.Callback<Integer> callback = new ImagePipeline.Callback<Integer>() {
+            @Override
+            public void onLoaded(Integer image) {
+                synchronized (retained) {
+                    if (retained.get(image) == null || retained.get(image) <= 0) unretained.incrementAndGet();
+                }
+                done.countDown();
+            }
+
+            @Override
+            public void onFailed(Exception error) {
+                done.countDown();
+            }
+        };
+        pipeline.load(mBaseUrl + "a", 0, 0, ImagePipeline.PRIORITY_NORMAL, callback);
+        pipeline.load(mBaseUrl + "bb", 0, 0, ImagePipeline.PRIORITY_NORMAL, callback);
+        pipeline.load(mBaseUrl + "ccc", 0, 0, ImagePipeline.PRIORITY_NORMAL, callback);
+        pipeline.load(mBaseUrl + "ccc", 0, 0, ImagePipeline.PRIORITY_NORMAL, callback);
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        pipeline.shutdown();
+        // the releases run after the callbacks
+        callbackExecutor.shutdown();
+        assertTrue(callbackExecutor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(0, unretained.get());
+        // every retain was released after the delivery
+        assertEquals(3, retained.size());
+        for (int count : retained.values()) {
+            assertEquals(0, count);
+        }
+    }
+
+    private static class Collector implements ImagePipeline.Callback<Integer> {
+        final List<Integer> loaded = Collections.synchronizedList(new ArrayList<Integer>());
+        final AtomicInteger failures = new AtomicInteger();
+        final CountDownLatch done;
+
+        Collector(int count) {
+            done = new CountDownLatch(count);
+        }
+
+        boolean await() throws InterruptedException {
+            return done.await(10, TimeUnit.SECONDS);
+        }
+
+        @Override
+        public void onLoaded(Integer image) {
+            loaded.add(image);
+            done.countDown();
+        }
+
+        @Override
+        public void onFailed(Exception error) {
+            failures.incrementAndGet();
+            done.countDown();
+        }
+    }
+
+    // holds the first fetch until released, records the fetch order
+    private static class BlockingFetcher implements ImagePipeline.Fetcher {
+        final List<String> fetched = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public byte[] fetch(String url) throws IOException {
+            fetched.add(url);
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                throw new IOException(ex);
+            }
+            return new byte[url.length()];
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package amazonite.android.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+public class ImageUtilUnitTest {
+
+    @Test
+    public void inSampleSize() {
+        // 12MP photo in a 100px thumbnail: 250x187 decoded instead of 4000x3000
+        assertEquals(16, ImageUtil.calculateInSampleSize(4000, 3000, 100, 100));
+        assertEquals(1, ImageUtil.calculateInSampleSize(4000, 3000, 0, 0));
+        assertEquals(1, ImageUtil.calculateInSampleSize(100, 100, 200, 200));
+        assertEquals(2, ImageUtil.calculateInSampleSize(200, 200, 100, 100));
+        assertEquals(1, ImageUtil.calculateInSampleSize(199, 200, 100, 100));
+        // one limited dimension
+        assertEquals(8, ImageUtil.calculateInSampleSize(4000, 3000, 500, 0));
+        assertEquals(4, ImageUtil.calculateInSampleSize(4000, 3000, 0, 500));
+        // a wide target keeps the height
+        assertEquals(2, ImageUtil.calculateInSampleSize(4000, 3000, 1000, 1000));
+    }
+
+    @Test
+    public void scaleCoversTarget() {
+        assertEquals(1f, ImageUtil.calculateScale(100, 100, 200, 200), 0f);
+        assertEquals(1f, ImageUtil.calculateScale(100, 100, 0, 0), 0f);
+        assertEquals(0.5f, ImageUtil.calculateScale(200, 100, 100, 10), 0f);
+        assertEquals(0.5f, ImageUtil.calculateScale(100, 200, 10, 100), 0f);
+        float scale = ImageUtil.calculateScale(250, 187, 100, 100);
+        assertTrue(Math.round(250 * scale) >= 100 && Math.round(187 * scale) == 100);
+    }
+}
@@ -0,0 +1,72 @@
+package amazonite.android.util;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+
+public class IncrementalValidatorUnitTest {
+    private static final String ALPHABET = "ab9.-_+%@() '\t";
+
+    @Test
+    public void typingMatchesFullScan() {
+        Random random = new Random(7);
+        for (TextRule rule : TextRule.values()) {
+            for (int round = 0; round < 3000; round++) {
+                IncrementalValidator validator = new IncrementalValidator(rule, round % 2 == 0);
+                StringBuilder text = new StringBuilder();
+                int length = random.nextInt(16);
+                for (int i = 0; i < length; i++) {
+                    text.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+                    boolean expected = rule.isValid(text) && (round % 2 != 0 || !Validator.isEmptyString(text.toString()));
+                    assertEquals(rule + " '" + text + "'", expected, validator.onTextChanged(text, text.length() - 1, 0, 1));
+                    assertEquals(expected, validator.isValid());
+                }
+                assertTrue(validator.getRescanCount() == 0);
+            }
+        }
+    }
+
+    @Test
+    public void typingFormattedValues() {
+        assertTyped(TextRule.EMAIL, "name@email.co.uk", true);
+        assertTyped(TextRule.EMAIL, "name@email", false);
+        assertTyped(TextRule.PHONE_NUMBER, " +94 (11) 234-5678 ", true);
+        assertTyped(TextRule.PHONE_NUMBER, "+1234", true);
+        assertTyped(TextRule.PHONE_NUMBER, "+1 23", false);
+        assertTyped(TextRule.INTEGER, "-9223372036854775808", true);
+        assertTyped(TextRule.INTEGER, "9223372036854775808", false);
+        assertTyped(TextRule.PERSON_NAME, "John O'Neil", true);
+        assertTyped(TextRule.USER_NAME, "user_name@1", true);
+    }
+
+    @Test
+    public void editsRescan() {
+        IncrementalValidator validator = new IncrementalValidator(TextRule.EMAIL, true);
+        assertFalse(validator.setText(""));
+        assertTrue(validator.isEmpty());
+        StringBuilder text = new StringBuilder("name@email.com");
+        validator.onTextChanged(text, 0, 0, text.length());
+        assertTrue(validator.isValid());
+
+        // delete the last character, then insert in the middle
+        text.setLength(text.length() - 1);
+        assertTrue(validator.onTextChanged(text, text.length(), 1, 0));
+        text.insert(4, '$');
+        assertFalse(validator.onTextChanged(text, 4, 0, 1));
+        assertEquals(3, validator.getRescanCount());
+    }
+
+    private static void assertTyped(TextRule rule, String value, boolean valid) {
+        IncrementalValidator validator = new IncrementalValidator(rule, true);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < value.length(); i++) {
+            text.append(value.charAt(i));
+            validator.onTextChanged(text, i, 0, 1);
+        }
+        assertEquals(value, valid, validator.isValid());
+        assertEquals(0, validator.getRescanCount());
+    }
+}
@@ -0,0 +1,40 @@
+package amazonite.android.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+public class JsonArraysUnitTest {
+
+    @Test
+    public void sizeCountsTopLevelElements() {
+        assertEquals(0, JsonArrays.size(null));
+        assertEquals(0, JsonArrays.size("[ ]"));
+        assertEquals(3, JsonArrays.size("[{\"a\":[1,2]},\"x,]\\\"\",3]"));
+    }
+
+    @Test
+    public void appendAddsElementAtTheEnd() {
+        assertEquals("[1]", JsonArrays.append(null, "1"));
+        assertEquals("[1]", JsonArrays.append("[]", "1"));
+        assertEquals("[1,{\"b\":2}]", JsonArrays.append("[1]", "{\"b\":2}"));
+    }
+
+    @Test
+    public void removeFirstDropsLeadingElements() {
+        assertEquals("[\"c\"]", JsonArrays.removeFirst("[\"a\",{\"b\":\"]\"},\"c\"]", 2));
+        assertEquals("[]", JsonArrays.removeFirst("[1,2]", 5));
+        assertEquals("[1,2]", JsonArrays.removeFirst("[1,2]", 0));
+    }
+
+    @Test
+    public void removeDropsElementAtIndex() {
+        assertEquals("[2,3]", JsonArrays.remove("[1,2,3]", 0));
+        assertEquals("[1,3]", JsonArrays.remove("[1,2,3]", 1));
+        assertEquals("[1,2]", JsonArrays.remove("[1,2,3]", 2));
+        assertEquals("[]", JsonArrays.remove("[1]", 0));
+        assertNull(JsonArrays.remove("[1,2,3]", 3));
+        assertNull(JsonArrays.remove("[]", 0));
+    }
+}
@@ -0,0 +1,53 @@
+package amazonite.android.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+
+public class ListCursorUnitTest {
+    private static final String JSON = "[{\"x\":0},{\"x\":1},{\"x\":2},{\"x\":3},{\"x\":4}]";
+
+    static class Item {
+        int x;
+    }
+
+    @Test
+    public void iteratesAllElements() {
+        ListCursor<Item> cursor = new ListCursor<Item>(JSON, Item.class);
+        int expected = 0;
+        while (cursor.hasNext()) {
+            assertEquals(expected++, cursor.next().x);
+        }
+        assertEquals(5, expected);
+        assertEquals(5, cursor.position());
+        cursor.close();
+    }
+
+    @Test
+    public void skipAndPage() {
+        ListCursor<Item> cursor = new ListCursor<Item>(JSON, Item.class);
+        assertEquals(3, cursor.skip(3));
+        assertEquals(3, cursor.next(10).get(0).x);
+        assertFalse(cursor.hasNext());
+        assertEquals(0, cursor.skip(1));
+        cursor.close();
+    }
+
+    @Test
+    public void readsDoubleEncodedElements() {
+        ListCursor<Item> cursor = new ListCursor<Item>("[\"{\\\"x\\\":7}\",\"{\\\"x\\\":8}\"]", Item.class);
+        assertEquals(8, cursor.next(2).get(1).x);
+        cursor.close();
+    }
+
+    @Test
+    public void nullJsonIsEmpty() {
+        ListCursor<String> cursor = new ListCursor<String>((String) null, String.class);
+        assertFalse(cursor.hasNext());
+        assertTrue(cursor.next(5).isEmpty());
+        assertEquals(Arrays.asList("a"), new ListCursor<String>("[\"a\"]", String.class).next(5));
+    }
+}
@@ -0,0 +1,105 @@
+package amazonite.android.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+
+public class MappedFileEngineUnitTest {
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void valuesSurviveReopen() throws IOException {
+        File file = mFolder.newFile("store.db");
+        file.delete();
+        MappedFileEngine engine = new MappedFileEngine(file);
+        Map<String, Object> changes = new HashMap<String, Object>();
+        changes.put("int", 1);
+        changes.put("long", 2L);
+        changes.put("float", 3.5f);
+        changes.put("boolean", true);
+        changes.put("string", "héllo");
+        assertTrue(engine.write(changes, false, true));
+        assertTrue(engine.write(Collections.singletonMap("int", (Object) null), false, false));
+        engine.close();
+
+        engine = new MappedFileEngine(file);
+        assertFalse(engine.contains("int"));
+        assertEquals(-1, engine.getInt("int", -1));
+        assertEquals(2L, engine.getLong("long", -1));
+        assertEquals(3.5f, engine.getFloat("float", -1), 0f);
+        assertTrue(engine.getBoolean("boolean", false));
+        assertEquals("héllo", engine.getString("string", null));
+        assertEquals(4, engine.getAll().size());
+        engine.close();
+    }
+
+    @Test
+    public void clearRemovesEverything() throws IOException {
+        File file = new File(mFolder.getRoot(), "clear.db");
+        MappedFileEngine engine = new MappedFileEngine(file);
+        engine.write(Collections.singletonMap("a", "1"), false, false);
+        engine.write(Collections.singletonMap("b", "2"), true, false);
+        engine.close();
+
+        engine = new MappedFileEngine(file);
+        assertFalse(engine.contains("a"));
+        assertEquals("2", engine.getString("b", null));
+        engine.close();
+    }
+
+    @Test
+    public void tornRecordIsIgnored() throws IOException {
+        File file = new File(mFolder.getRoot(), "torn.db");
+        MappedFileEngine engine = new MappedFileEngine(file);
+        engine.write(Collections.singletonMap("a", "first"), false, true);
+        int end = engine.getLogSize();
+        engine.write(Collections.singletonMap("a", "second"), false, true);
+        engine.close();
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.seek(end + 10);
+        randomAccessFile.write(0x7f);
+        randomAccessFile.close();
+
+        engine = new MappedFileEngine(file);
+        assertEquals("first", engine.getString("a", null));
+        assertEquals(end, engine.getLogSize());
+        engine.write(Collections.singletonMap("a", "third"), false, true);
+        engine.close();
+
+        engine = new MappedFileEngine(file);
+        assertEquals("third", engine.getString("a", null));
+        engine.close();
+    }
+
+    @Test
+    public void fullLogIsCompacted() throws IOException {
+        File file = new File(mFolder.getRoot(), "compact.db");
+        MappedFileEngine engine = new MappedFileEngine(file);
+        char[] chars = new char[1024];
+        java.util.Arrays.fill(chars, 'x');
+        String value = new String(chars);
+        for (int i = 0; i < 500; i++) {
+            engine.write(Collections.singletonMap("key", value + i), false, false);
+        }
+        assertTrue(engine.getCompactionCount() > 0);
+        assertTrue(engine.getLogSize() < 64 * 1024);
+        engine.close();
+
+        engine = new MappedFileEngine(file);
+        assertEquals(value + 499, engine.getString("key", null));
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+        engine.close();
+    }
+}
@@ -0,0 +1,97 @@
+package amazonite.android.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+
+public class MemoryCacheUnitTest {
+
+    private static class ByteCache extends MemoryCache<byte[]> {
+        final List<String> evicted = new ArrayList<String>();
+
+        ByteCache(long maxSize) {
+            super(maxSize);
+        }
+
+        @Override
+        protected int sizeOf(byte[] value) {
+            return value.length;
+        }
+
+        @Override
+        protected void onEvicted(String key, byte[] value) {
+            evicted.add(key);
+        }
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedBySize() {
+        ByteCache cache = new ByteCache(1000);
+        cache.put("a", new byte[400]);
+        cache.put("b", new byte[400]);
+        assertNotNull(cache.get("a"));
+        // 'b' is the least recently used
+        cache.put("c", new byte[400]);
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("c"));
+        assertEquals(800, cache.getSize());
+        assertEquals(2, cache.getCount());
+
+        // one large value pushes out several small ones
+        cache.put("d", new byte[900]);
+        assertEquals(900, cache.getSize());
+        assertEquals(1, cache.getCount());
+
+        assertEquals(3, cache.getEvictionCount());
+        assertEquals("[b, a, c]", cache.evicted.toString());
+        assertEquals(3, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void oversizedValuesAreNotCached() {
+        ByteCache cache = new ByteCache(100);
+        cache.put("a", new byte[50]);
+        cache.put("big", new byte[101]);
+        assertNull(cache.get("big"));
+        assertNotNull(cache.get("a"));
+        assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test
+    public void replaceAndRemoveKeepSize() {
+        ByteCache cache = new ByteCache(1000);
+        cache.put("a", new byte[100]);
+        cache.put("a", new byte[300]);
+        assertEquals(300, cache.getSize());
+        assertEquals("[a]", cache.evicted.toString());
+        assertEquals(300, cache.remove("a").length);
+        assertEquals(0, cache.getSize());
+        assertNull(cache.remove("a"));
+    }
+
+    @Test
+    public void trimToSize() {
+        ByteCache cache = new ByteCache(1000);
+        for (int i = 0; i < 10; i++) {
+            cache.put("k" + i, new byte[100]);
+        }
+        cache.trimToSize(500);
+        assertEquals(500, cache.getSize());
+        assertNull(cache.get("k4"));
+        assertNotNull(cache.get("k5"));
+        cache.trimToSize(0);
+        assertEquals(0, cache.getCount());
+        assertEquals(10, cache.getEvictionCount());
+
+        cache.put("a", new byte[10]);
+        cache.clear();
+        assertEquals(0, cache.getSize());
+        assertEquals(10, cache.evicted.size());
+    }
+}
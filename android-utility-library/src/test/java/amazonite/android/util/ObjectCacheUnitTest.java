@@ -0,0 +1,54 @@
+package amazonite.android.util;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+
+public class ObjectCacheUnitTest {
+
+    @Test
+    public void getReturnsCachedObjectOfSameType() {
+        ObjectCache cache = new ObjectCache(4);
+        cache.put("user", String.class, "Ann", cache.generation());
+        assertEquals("Ann", cache.get("user", String.class));
+        assertNull(cache.get("user", Integer.class));
+        assertEquals(1, cache.hitCount());
+        assertEquals(1, cache.missCount());
+    }
+
+    @Test
+    public void leastRecentlyUsedObjectIsEvicted() {
+        ObjectCache cache = new ObjectCache(2);
+        cache.put("a", String.class, "a", cache.generation());
+        cache.put("b", String.class, "b", cache.generation());
+        cache.get("a", String.class);
+        cache.put("c", String.class, "c", cache.generation());
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("a", String.class));
+        assertNull(cache.get("b", String.class));
+    }
+
+    @Test
+    public void invalidateRemovesKeys() {
+        ObjectCache cache = new ObjectCache(4);
+        cache.put("a", String.class, "a", cache.generation());
+        cache.put("b", String.class, "b", cache.generation());
+        cache.invalidate(Collections.singleton("a"));
+        assertNull(cache.get("a", String.class));
+        assertNotNull(cache.get("b", String.class));
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void putIsIgnoredAfterInvalidation() {
+        ObjectCache cache = new ObjectCache(4);
+        long generation = cache.generation();
+        cache.invalidate(Collections.singleton("a"));
+        cache.put("a", String.class, "stale", generation);
+        assertNull(cache.get("a", String.class));
+    }
+}
@@ -0,0 +1,142 @@
+package amazonite.android.util;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+
+public class ObjectSerializerUnitTest {
+    static class Profile {
+        String name;
+        int age;
+        List<String> tags;
+
+        Profile(String name, int age, List<String> tags) {
+            this.name = name;
+            this.age = age;
+            this.tags = tags;
+        }
+    }
+
+    static class Point {
+        int x;
+        int y;
+    }
+
+    @Test
+    public void getGsonReturnsSameInstance() {
+        assertSame(ObjectSerializer.getGson(), ObjectSerializer.getGson());
+    }
+
+    @Test
+    public void roundTripObjectAndStringList() {
+        Profile profile = ObjectSerializer.fromJson(ObjectSerializer.toJson(new Profile("Ann", 30, Arrays.asList("a", "b"))), Profile.class);
+        assertEquals("Ann", profile.name);
+        assertEquals(30, profile.age);
+        assertEquals(Arrays.asList("a", "b"), profile.tags);
+
+        List<String> list = ObjectSerializer.fromJson("[\"x\",\"y\"]", ObjectSerializer.STRING_LIST_TYPE);
+        assertEquals(Arrays.asList("x", "y"), list);
+    }
+
+    @Test
+    public void registeredTypeAdapterIsUsed() {
+        ObjectSerializer.registerTypeAdapter(Point.class, new TypeAdapter<Point>() {
+            @Override
+            public void write(JsonWriter out, Point value) throws IOException {
+                out.value(value.x + "," + value.y);
+            }
+
+            @Override
+            public Point read(JsonReader in) throws IOException {
+                String[] parts = in.nextString().split(",");
+                Point point = new Point();
+                point.x = Integer.parseInt(parts[0]);
+                point.y = Integer.parseInt(parts[1]);
+                return point;
+            }
+        });
+        Point point = new Point();
+        point.x = 3;
+        point.y = 4;
+        assertEquals("\"3,4\"", ObjectSerializer.toJson(point));
+        assertEquals(4, ObjectSerializer.fromJson("\"3,4\"", Point.class).y);
+    }
+
+    @Test
+    public void sharedInstanceParsesLikeNewGson() {
+        String json = ObjectSerializer.toJson(new Profile("Ann", 30, Arrays.asList("a", "b")));
+        ObjectSerializer.warmUp(Profile.class);
+        Profile expected = new Gson().fromJson(json, Profile.class);
+        for (int i = 0; i < 3; i++) {
+            Profile profile = ObjectSerializer.fromJson(json, Profile.class);
+            assertEquals(expected.name, profile.name);
+            assertEquals(expected.age, profile.age);
+            assertEquals(expected.tags, profile.tags);
+        }
+    }
+
+    @Test
+    public void fromJsonArrayReadsSingleAndDoubleEncodedLists() throws IOException {
+        List<Profile> profiles = profiles(3);
+        String json = ObjectSerializer.toJson(profiles);
+        String legacyJson = toLegacyJson(profiles);
+
+        List<Profile> parsed = ObjectSerializer.fromJsonArray(json, Profile.class);
+        List<Profile> legacyParsed = ObjectSerializer.fromJsonArray(legacyJson, Profile.class);
+        assertEquals(3, parsed.size());
+        assertEquals(3, legacyParsed.size());
+        assertEquals("name_2", parsed.get(2).name);
+        assertEquals("name_2", legacyParsed.get(2).name);
+        assertEquals(Arrays.asList(1, 2), ObjectSerializer.fromJsonArray("[\"1\",2]", Integer.class));
+        assertEquals(Arrays.asList("a", "b"), ObjectSerializer.fromJsonArray("[\"a\",\"b\"]", String.class));
+        assertTrue(ObjectSerializer.fromJsonArray(null, Profile.class).isEmpty());
+    }
+
+    @Test
+    public void fromJsonArrayReadsDoubleEncodedStringLists() throws IOException {
+        List<String> strings = Arrays.asList("a", "", "say \"hi\"", "1");
+        String legacyJson = toLegacyJson(strings);
+
+        assertEquals(strings, ObjectSerializer.fromJsonArray(legacyJson, String.class));
+        assertEquals(strings, ObjectSerializer.fromJsonArray(ObjectSerializer.toJson(strings), String.class));
+        assertEquals(Arrays.asList("\"a"), ObjectSerializer.fromJsonArray("[\"\\\"a\"]", String.class));
+    }
+
+    @Test
+    public void singleArrayFormatIsSmallerThanDoubleEncoded() throws IOException {
+        for (int count : new int[]{1000, 10000}) {
+            List<Profile> profiles = profiles(count);
+            String json = ObjectSerializer.toJson(profiles);
+            String legacyJson = toLegacyJson(profiles);
+            assertTrue(json.length() < legacyJson.length());
+            assertEquals(count, ObjectSerializer.fromJsonArray(json, Profile.class).size());
+        }
+    }
+
+    private static List<Profile> profiles(int count) {
+        List<Profile> profiles = new ArrayList<Profile>();
+        for (int i = 0; i < count; i++) {
+            profiles.add(new Profile("name_" + i, i, Arrays.asList("tag_" + i)));
+        }
+        return profiles;
+    }
+
+    private static String toLegacyJson(List<?> objects) {
+        List<String> strings = new ArrayList<String>();
+        for (Object obj : objects) {
+            strings.add(ObjectSerializer.toJson(obj));
+        }
+        return ObjectSerializer.toJson(strings);
+    }
+}
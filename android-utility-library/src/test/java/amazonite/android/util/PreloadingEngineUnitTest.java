@@ -0,0 +1,55 @@
+package amazonite.android.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+
+public class PreloadingEngineUnitTest {
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void readsWaitUntilLoaded() throws Exception {
+        final File file = new File(mFolder.getRoot(), "preload.db");
+        MappedFileEngine seed = new MappedFileEngine(file);
+        seed.write(Collections.singletonMap("dark_mode", true), false, true);
+        seed.close();
+
+        final CountDownLatch release = new CountDownLatch(1);
+        PreloadingEngine engine = new PreloadingEngine(new Callable<StorageEngine>() {
+            @Override
+            public StorageEngine call() throws Exception {
+                release.await();
+                return new MappedFileEngine(file);
+            }
+        });
+        assertFalse(engine.isLoaded());
+        assertEquals(-1, engine.getLoadDurationMillis());
+
+        release.countDown();
+        assertTrue(new AppDatabase(engine).getBoolean("dark_mode"));
+        assertTrue(engine.isLoaded());
+        assertTrue(engine.getLoadDurationMillis() >= 0);
+        ((MappedFileEngine) engine.await()).close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void loadingErrorIsThrownOnRead() {
+        PreloadingEngine engine = new PreloadingEngine(new Callable<StorageEngine>() {
+            @Override
+            public StorageEngine call() throws Exception {
+                throw new IOException("disk error");
+            }
+        });
+        engine.getBoolean("dark_mode", false);
+    }
+}
@@ -0,0 +1,46 @@
+package amazonite.android.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+
+public class ShardedEngineUnitTest {
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void keysAreSpreadOverShards() throws IOException {
+        MappedFileEngine[] shards = new MappedFileEngine[3];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new MappedFileEngine(new File(mFolder.getRoot(), "shard_" + i));
+        }
+        ShardedEngine engine = new ShardedEngine(shards);
+
+        Map<String, Object> changes = new HashMap<String, Object>();
+        for (int i = 0; i < 30; i++) {
+            changes.put("key_" + i, i);
+        }
+        assertTrue(engine.write(changes, false, true));
+
+        int total = 0;
+        for (MappedFileEngine shard : shards) {
+            assertTrue(shard.getAll().size() < 30);
+            total += shard.getAll().size();
+        }
+        assertEquals(30, total);
+        assertEquals(30, engine.getAll().size());
+        assertEquals(7, engine.getInt("key_7", -1));
+        assertTrue(engine.shardFor("key_7").contains("key_7"));
+
+        assertTrue(engine.write(new HashMap<String, Object>(), true, true));
+        assertTrue(engine.getAll().isEmpty());
+    }
+}
@@ -0,0 +1,147 @@
+package amazonite.android.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+
+public class SnapshotUnitTest {
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static final int ENTRY_COUNT = 100000;
+
+    @Test
+    public void exportAndImportLargeStore() throws IOException {
+        MappedFileEngine source = new MappedFileEngine(mFolder.newFile("source.db"));
+        AppDatabase database = new AppDatabase(source);
+        AppDatabase.Batch batch = database.batch();
+        for (int i = 0; i < ENTRY_COUNT; i++) {
+            batch.put("key" + i, "value " + i);
+        }
+        batch.put("int", 42).put("long", 1L << 40).put("float", 1.5f).put("flag", true)
+                .put("cached", "response").expireAfter("cached", 60000).commit();
+
+        File file = new File(mFolder.getRoot(), "backup.snapshot");
+        assertEquals(ENTRY_COUNT + 5, database.exportSnapshot(file));
+
+        MappedFileEngine target = new MappedFileEngine(mFolder.newFile("target.db"));
+        AppDatabase restored = new AppDatabase(target);
+        restored.put("stale", 1);
+        assertEquals(ENTRY_COUNT + 5, restored.importSnapshot(file, true));
+
+        assertEquals("value 99999", restored.getString("key99999"));
+        assertEquals(42, restored.getInt("int"));
+        assertEquals(1L << 40, restored.getLong("long"));
+        assertEquals(1.5f, restored.getFloat("float"), 0);
+        assertTrue(restored.getBoolean("flag"));
+        assertEquals(database.getExpiryTime("cached"), restored.getExpiryTime("cached"));
+        assertFalse(target.contains("stale"));
+        source.close();
+        target.close();
+    }
+
+    @Test
+    public void corruptSnapshotChangesNothing() throws IOException {
+        AppDatabase database = new AppDatabase(new MappedFileEngine(mFolder.newFile("source.db")));
+        AppDatabase.Batch batch = database.batch();
+        for (int i = 0; i < 1000; i++) {
+            batch.put("key" + i, i);
+        }
+        batch.commit();
+        File file = new File(mFolder.getRoot(), "backup.snapshot");
+        database.exportSnapshot(file);
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.setLength(file.length() - 10);
+        randomAccessFile.close();
+
+        AppDatabase restored = new AppDatabase(new MappedFileEngine(mFolder.newFile("target.db")));
+        restored.put("current", 1);
+        try {
+            restored.importSnapshot(file, true);
+            fail("truncated snapshot imported");
+        } catch (IOException expected) {
+        }
+        assertEquals(1, restored.getInt("current"));
+        assertEquals(-1, restored.getInt("key0"));
+    }
+
+    @Test
+    public void corruptLengthFailsWithoutLargeAllocation() throws IOException {
+        File file = new File(mFolder.getRoot(), "corrupt.snapshot");
+        DataOutputStream out = new DataOutputStream(new GZIPOutputStream(new FileOutputStream(file)));
+        out.writeInt(0x41445331);
+        out.writeByte(5);
+        // a key length of 2 GB with a few bytes behind it
+        out.writeInt(Integer.MAX_VALUE);
+        out.write(new byte[100]);
+        out.close();
+
+        AppDatabase restored = new AppDatabase(new MappedFileEngine(mFolder.newFile("target.db")));
+        try {
+            restored.importSnapshot(file, true);
+            fail("corrupt snapshot imported");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void encryptedStoreRefusesExport() throws IOException {
+        MappedFileEngine plain = new MappedFileEngine(mFolder.newFile("encrypted.db"));
+        AppDatabase database = new AppDatabase(new EncryptedEngine(plain, "0123456789abcdef".getBytes(), true));
+        database.put("token", "secret-token");
+        try {
+            database.exportSnapshot(new ByteArrayOutputStream());
+            fail("encrypted store exported in plain text");
+        } catch (IllegalStateException expected) {
+        }
+        plain.close();
+    }
+
+    @Test
+    public void wrappedEncryptedStoreRefusesExport() throws IOException {
+        MappedFileEngine plain = new MappedFileEngine(mFolder.newFile("encrypted.db"));
+        EncryptedEngine encrypted = new EncryptedEngine(plain, "0123456789abcdef".getBytes(), true);
+        AppDatabase database = new AppDatabase(new CompressingEngine(encrypted));
+        database.put("token", "secret-token");
+        File file = new File(mFolder.getRoot(), "backup.snapshot");
+        try {
+            database.exportSnapshot(file);
+            fail("encrypted store exported in plain text");
+        } catch (IllegalStateException expected) {
+        }
+        // nothing is left behind
+        assertFalse(file.exists());
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+        GroupCommitEngine groupCommit = new GroupCommitEngine(encrypted);
+        assertTrue(groupCommit.isEncrypted());
+        groupCommit.close();
+        plain.close();
+    }
+
+    @Test
+    public void copyToMovesNamespace() throws IOException {
+        AppDatabase source = new AppDatabase(new MappedFileEngine(mFolder.newFile("source.db")));
+        source.batch().put("v1.user", "Ann").put("v1.count", 3).put("other", true)
+                .put("v1.token", "abc").expireAfter("v1.token", 60000).commit();
+        AppDatabase target = new AppDatabase(new MappedFileEngine(mFolder.newFile("target.db")));
+
+        assertEquals(3, source.copyTo(target, "v1.", "v2."));
+        assertEquals("Ann", target.getString("v2.user"));
+        assertEquals(3, target.getInt("v2.count"));
+        assertEquals(source.getExpiryTime("v1.token"), target.getExpiryTime("v2.token"));
+        assertNull(target.getAll().get("other"));
+        assertNull(target.getAll().get("v2.other"));
+    }
+}
@@ -0,0 +1,45 @@
+package amazonite.android.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+
+public class TypedKeyUnitTest {
+    private static final TypedKey.IntKey LAUNCH_COUNT = new TypedKey.IntKey("launch_count", 0);
+    private static final TypedKey.LongKey LAST_SYNC = new TypedKey.LongKey("last_sync", -1L);
+    private static final TypedKey.FloatKey FONT_SCALE = new TypedKey.FloatKey("font_scale", 1f);
+    private static final TypedKey.BooleanKey DARK_MODE = new TypedKey.BooleanKey("dark_mode", false);
+    private static final TypedKey.StringKey LANGUAGE = new TypedKey.StringKey("language", "en");
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test(expected = NullPointerException.class)
+    public void emptyNameIsRejected() {
+        new TypedKey.IntKey("", 0);
+    }
+
+    @Test
+    public void defaultsAndStoredValues() throws IOException {
+        MappedFileEngine engine = new MappedFileEngine(new File(mFolder.getRoot(), "typed.db"));
+        AppDatabase database = new AppDatabase(engine);
+        assertEquals(0, database.get(LAUNCH_COUNT));
+        assertEquals("en", database.get(LANGUAGE));
+
+        assertTrue(database.batch().put(LAUNCH_COUNT, 3).put(LAST_SYNC, 42L).put(FONT_SCALE, 1.5f)
+                .put(DARK_MODE, true).put(LANGUAGE, "si").commit());
+        assertEquals(3, database.get(LAUNCH_COUNT));
+        assertEquals(42L, database.get(LAST_SYNC));
+        assertEquals(1.5f, database.get(FONT_SCALE), 0f);
+        assertTrue(database.get(DARK_MODE));
+        assertEquals("si", database.get(LANGUAGE));
+        assertEquals(3, database.getInt("launch_count"));
+        engine.close();
+    }
+}
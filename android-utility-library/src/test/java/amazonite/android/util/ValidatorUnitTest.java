@@ -2,6 +2,10 @@ package amazonite.android.util;
 
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.Random;
+import java.util.regex.Pattern;
+
 import static org.junit.Assert.*;
 
 
@@ -46,4 +50,79 @@ public class ValidatorUnitTest {
         assertFalse(Validator.isValidEmail("name@email"));
         assertFalse(Validator.isValidEmail("name_123@email.co..com"));
     }
+
+    @Test
+    public void isValidPhoneNumberTest() {
+        assertTrue(Validator.isValidPhoneNumber("+94 (11) 234-5678"));
+        assertTrue(Validator.isValidPhoneNumber("+12-3"));
+        assertTrue(Validator.isValidPhoneNumber("077 123 4567"));
+        assertFalse(Validator.isValidPhoneNumber("+12"));
+        assertFalse(Validator.isValidPhoneNumber("(11)"));
+        assertFalse(Validator.isValidPhoneNumber("077-123-"));
+    }
+
+    @Test
+    public void scannersMatchRegexFormats() {
+        Pattern userName = Pattern.compile(Validator.FORMAT_USER_NAME);
+        Pattern personName = Pattern.compile(Validator.FORMAT_PERSON_NAME);
+        Random random = new Random(42);
+        String emailChars = "ab9.-_+%@$ ";
+        String phoneChars = "0123+()- .a";
+        String nameChars = "aZ9_ !&'.,@-\n";
+        for (int i = 0; i < 200000; i++) {
+            String email = randomString(random, emailChars, 12);
+            assertEquals(email, Validator.EMAIL_ADDRESS.matcher(email).matches(), Validator.isValidEmail(email));
+            String phone = randomString(random, phoneChars, 10);
+            assertEquals(phone, Validator.PHONE.matcher(phone).matches(), Validator.isValidPhoneNumber(phone));
+            String name = randomString(random, nameChars, 6);
+            assertEquals(name, userName.matcher(name).matches(), Validator.isValidUserName(name));
+            assertEquals(name, personName.matcher(name).matches(), Validator.isValidPersonName(name));
+        }
+        String longLabel = "name@" + repeat('a', 65) + ".co";
+        assertEquals(Validator.EMAIL_ADDRESS.matcher(longLabel).matches(), Validator.isValidEmail(longLabel));
+        longLabel = "name@" + repeat('a', 66) + ".co";
+        assertEquals(Validator.EMAIL_ADDRESS.matcher(longLabel).matches(), Validator.isValidEmail(longLabel));
+        longLabel = "name@email." + repeat('a', 27);
+        assertEquals(Validator.EMAIL_ADDRESS.matcher(longLabel).matches(), Validator.isValidEmail(longLabel));
+    }
+
+    @Test
+    public void scannersMatchRegexOnSampleInputs() {
+        String[] inputs = {"name@email.co.uk", "John O'Neil", "+94 (11) 234-5678", "user_name@1", "name$%@email.co.uk"};
+        for (String input : inputs) {
+            assertEquals(input, legacyValidate(input), validate(input));
+        }
+    }
+
+    private static int legacyValidate(String input) {
+        int valid = 0;
+        if (Validator.EMAIL_ADDRESS.matcher(input).matches()) valid++;
+        if (Validator.PHONE.matcher(input).matches()) valid++;
+        if (input.matches(Validator.FORMAT_USER_NAME)) valid++;
+        if (input.matches(Validator.FORMAT_PERSON_NAME)) valid++;
+        return valid;
+    }
+
+    private static int validate(String input) {
+        int valid = 0;
+        if (Validator.isValidEmail(input)) valid++;
+        if (Validator.isValidPhoneNumber(input)) valid++;
+        if (Validator.isValidUserName(input)) valid++;
+        if (Validator.isValidPersonName(input)) valid++;
+        return valid;
+    }
+
+    private static String randomString(Random random, String chars, int maxLength) {
+        char[] value = new char[random.nextInt(maxLength + 1)];
+        for (int i = 0; i < value.length; i++) {
+            value[i] = chars.charAt(random.nextInt(chars.length()));
+        }
+        return new String(value);
+    }
+
+    private static String repeat(char c, int count) {
+        char[] value = new char[count];
+        Arrays.fill(value, c);
+        return new String(value);
+    }
 }